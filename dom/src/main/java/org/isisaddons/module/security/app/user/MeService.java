@@ -17,9 +17,13 @@
 package org.isisaddons.module.security.app.user;
 
 import java.util.List;
+import org.apache.shiro.SecurityUtils;
+import org.apache.shiro.authc.AuthenticationException;
 import org.isisaddons.module.security.SecurityModule;
 import org.isisaddons.module.security.dom.user.ApplicationUser;
 import org.isisaddons.module.security.dom.user.ApplicationUsers;
+import org.isisaddons.module.security.shiro.IsisModuleSecurityRealm;
+import org.isisaddons.module.security.shiro.ShiroUtils;
 import org.apache.isis.applib.AbstractFactoryAndRepository;
 import org.apache.isis.applib.Identifier;
 import org.apache.isis.applib.annotation.Action;
@@ -110,6 +114,53 @@ public ApplicationUser me() {
 
     //endregion
 
+    //region > sessionToken (action)
+    public static class SessionTokenDomainEvent extends ActionDomainEvent {
+        public SessionTokenDomainEvent(final MeService source, final Identifier identifier) {
+            super(source, identifier);
+        }
+        public SessionTokenDomainEvent(final MeService source, final Identifier identifier, final Object... arguments) {
+            super(source, identifier, arguments);
+        }
+        public SessionTokenDomainEvent(final MeService source, final Identifier identifier, final List<Object> arguments) {
+            super(source, identifier, arguments);
+        }
+    }
+
+    /**
+     * Issues a session token for the current user (see {@link IsisModuleSecurityRealm#issueSessionToken(org.apache.shiro.subject.PrincipalCollection)}),
+     * for example so that a client of the RestfulObjects viewer can present it instead of the user's password.
+     */
+    @Action(
+            domainEvent = SessionTokenDomainEvent.class,
+            semantics = SemanticsOf.SAFE
+    )
+    @ActionLayout(
+            cssClassFa = "fa-key",
+            describedAs = "Issues a token that can be presented instead of your password until it expires"
+    )
+    @MemberOrder(name = "Security", sequence = "100.1")
+    public String sessionToken() {
+        final IsisModuleSecurityRealm realm = getIsisModuleSecurityRealm();
+        return realm != null ? realm.issueSessionToken(SecurityUtils.getSubject().getPrincipals()) : null;
+    }
+
+    public boolean hideSessionToken() {
+        final IsisModuleSecurityRealm realm = getIsisModuleSecurityRealm();
+        return realm == null || !realm.isSessionTokensEnabled();
+    }
+
+    private static IsisModuleSecurityRealm getIsisModuleSecurityRealm() {
+        try {
+            return ShiroUtils.getIsisModuleSecurityRealm();
+        } catch(final AuthenticationException ex) {
+            // not authenticating using Shiro
+            return null;
+        }
+    }
+
+    //endregion
+
     //region  > services (injected)
     @javax.inject.Inject
     ApplicationUsers applicationUsers;
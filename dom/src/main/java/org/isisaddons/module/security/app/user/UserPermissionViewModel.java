@@ -191,7 +191,7 @@ private void parse(final String asString) {
         final String viewingEvaluationCauseFeatureIdType = iterator.next();
         final ApplicationFeatureType viewingEvaluationFeatureIdType =  !viewingEvaluationCauseFeatureIdType.isEmpty() ? ApplicationFeatureType.valueOf(viewingEvaluationCauseFeatureIdType) : null;
         final String viewingEvaluationFeatureFqn = iterator.next();
-        this.viewingFeatureId = viewingEvaluationFeatureIdType != null? new ApplicationFeatureId(viewingEvaluationFeatureIdType,viewingEvaluationFeatureFqn) : null;
+        this.viewingFeatureId = viewingEvaluationFeatureIdType != null? ApplicationFeatureId.newFeature(viewingEvaluationFeatureIdType, viewingEvaluationFeatureFqn) : null;
 
         final String viewingEvaluationCauseRule = iterator.next();
         this.viewingRule = !viewingEvaluationCauseRule.isEmpty()? ApplicationPermissionRule.valueOf(viewingEvaluationCauseRule): null;
@@ -203,7 +203,7 @@ private void parse(final String asString) {
         final String changingEvaluationCauseFeatureIdType = iterator.next();
         final ApplicationFeatureType changingEvaluationFeatureIdType =  !changingEvaluationCauseFeatureIdType.isEmpty() ? ApplicationFeatureType.valueOf(changingEvaluationCauseFeatureIdType) : null;
         final String changingEvaluationFeatureFqn = iterator.next();
-        this.changingFeatureId = changingEvaluationFeatureIdType != null? new ApplicationFeatureId(changingEvaluationFeatureIdType,changingEvaluationFeatureFqn) : null;
+        this.changingFeatureId = changingEvaluationFeatureIdType != null? ApplicationFeatureId.newFeature(changingEvaluationFeatureIdType, changingEvaluationFeatureFqn) : null;
 
         final String changingEvaluationCauseRule = iterator.next();
         this.changingRule = !changingEvaluationCauseRule.isEmpty()? ApplicationPermissionRule.valueOf(changingEvaluationCauseRule): null;
@@ -211,7 +211,7 @@ private void parse(final String asString) {
         this.changingMode = !changingEvaluationCauseMode.isEmpty()? ApplicationPermissionMode.valueOf(changingEvaluationCauseMode): null;
 
         final ApplicationFeatureType type = ApplicationFeatureType.valueOf(iterator.next());
-        this.featureId = new ApplicationFeatureId(type, iterator.next());
+        this.featureId = ApplicationFeatureId.newFeature(type, iterator.next());
     }
 
     // //////////////////////////////////////
@@ -25,6 +25,8 @@
 import org.isisaddons.module.security.dom.feature.ApplicationFeature;
 import org.isisaddons.module.security.dom.feature.ApplicationFeatureId;
 import org.isisaddons.module.security.dom.feature.ApplicationFeatures;
+import org.isisaddons.module.security.dom.permission.ApplicationPermissionMode;
+import org.isisaddons.module.security.dom.permission.ApplicationPermissionValueSet;
 import org.isisaddons.module.security.dom.user.ApplicationUser;
 import org.apache.isis.applib.DomainObjectContainer;
 import org.apache.isis.applib.Identifier;
@@ -190,14 +192,28 @@ public List<String> choices2FilterPermissions(
     // //////////////////////////////////////
 
     //region > helpers
+    /**
+     * Evaluates the user's permissions for all of the features {@link ApplicationPermissionValueSet#evaluateAll(java.util.Collection, ApplicationPermissionMode...) at once},
+     * rather than (as {@link UserPermissionViewModel.Functions#asViewModel(ApplicationUser, DomainObjectContainer)}
+     * would) each feature in turn.
+     */
     List<UserPermissionViewModel> asViewModels(
             final ApplicationUser user,
             final Iterable<ApplicationFeature> features) {
-        return Lists.newArrayList(
-                Iterables.transform(
-                        features,
-                        UserPermissionViewModel.Functions.asViewModel(user, container))
-        );
+        final List<ApplicationFeatureId> featureIds =
+                Lists.newArrayList(Iterables.transform(features, ApplicationFeature.Functions.GET_ID));
+        final ApplicationPermissionValueSet.Evaluations evaluations =
+                user.getPermissionSet().evaluateAll(
+                        featureIds, ApplicationPermissionMode.VIEWING, ApplicationPermissionMode.CHANGING);
+        final List<UserPermissionViewModel> viewModels = Lists.newArrayListWithCapacity(evaluations.size());
+        for (int i = 0; i < evaluations.size(); i++) {
+            viewModels.add(UserPermissionViewModel.newViewModel(
+                    featureIds.get(i), user,
+                    evaluations.get(i, ApplicationPermissionMode.VIEWING),
+                    evaluations.get(i, ApplicationPermissionMode.CHANGING),
+                    container));
+        }
+        return viewModels;
     }
     //endregion
 
@@ -0,0 +1,111 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.dom;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.jdo.JDOHelper;
+import javax.jdo.PersistenceManager;
+import javax.jdo.Transaction;
+import javax.transaction.Synchronization;
+
+/**
+ * Evicts entries from the module's process-wide caches (of accounts and of permission sets) when the entities they
+ * were built from are changed.
+ *
+ * <p>
+ *     Each eviction is performed immediately, and then again once the (JDO) transaction in which the change was made
+ *     has completed.  Until then, a concurrent lookup (in its own transaction) still reads the previous state of the
+ *     entity, and so could otherwise re-cache it.
+ * </p>
+ */
+public final class CacheEvictions {
+
+    private CacheEvictions(){}
+
+    /**
+     * Performs the eviction now, and (if the persistent object is enlisted in an active transaction) again once that
+     * transaction has committed or rolled back.
+     */
+    public static void evictNowAndAfterCompletion(final Object persistentObject, final Runnable eviction) {
+        eviction.run();
+        final Transaction transaction = activeTransactionOf(persistentObject);
+        if(transaction == null) {
+            // transient (or not a JDO entity at all, eg in unit tests)
+            return;
+        }
+        final Synchronization synchronization = transaction.getSynchronization();
+        final AfterCompletion afterCompletion;
+        if(synchronization instanceof AfterCompletion) {
+            afterCompletion = (AfterCompletion) synchronization;
+        } else {
+            afterCompletion = new AfterCompletion(synchronization);
+            transaction.setSynchronization(afterCompletion);
+        }
+        afterCompletion.add(eviction);
+    }
+
+    private static Transaction activeTransactionOf(final Object persistentObject) {
+        final PersistenceManager persistenceManager =
+                persistentObject != null ? JDOHelper.getPersistenceManager(persistentObject) : null;
+        if(persistenceManager == null || persistenceManager.isClosed()) {
+            return null;
+        }
+        final Transaction transaction = persistenceManager.currentTransaction();
+        return transaction.isActive() ? transaction : null;
+    }
+
+    /**
+     * Remains registered with the persistence manager's transaction (so is reused by subsequent transactions), but
+     * performs each eviction only once; chains to any synchronization that was already registered.
+     */
+    private static class AfterCompletion implements Synchronization {
+
+        private final Synchronization previous;
+        private final List<Runnable> evictions = new CopyOnWriteArrayList<Runnable>();
+
+        private AfterCompletion(final Synchronization previous) {
+            this.previous = previous;
+        }
+
+        void add(final Runnable eviction) {
+            evictions.add(eviction);
+        }
+
+        @Override
+        public void beforeCompletion() {
+            if(previous != null) {
+                previous.beforeCompletion();
+            }
+        }
+
+        @Override
+        public void afterCompletion(final int status) {
+            try {
+                if(previous != null) {
+                    previous.afterCompletion(status);
+                }
+            } finally {
+                for (final Runnable eviction : evictions) {
+                    evictions.remove(eviction);
+                    eviction.run();
+                }
+            }
+        }
+    }
+
+}
@@ -19,8 +19,10 @@
 import java.util.List;
 import java.util.SortedSet;
 import com.google.common.base.Function;
+import com.google.common.base.Objects;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 import org.isisaddons.module.security.SecurityModule;
 import org.apache.isis.applib.Identifier;
@@ -343,26 +345,28 @@ public boolean apply(final ApplicationFeature input) {
 
     //region > equals, hashCode, compareTo, toString
 
-    private final static String propertyNames = "featureId";
+    private static final Ordering<ApplicationFeatureId> FEATURE_ID_ORDER = Ordering.<ApplicationFeatureId>natural().nullsFirst();
 
     @Override
     public int compareTo(final ApplicationFeature other) {
-        return ObjectContracts.compare(this, other, propertyNames);
+        return FEATURE_ID_ORDER.compare(getFeatureId(), other.getFeatureId());
     }
 
     @Override
     public boolean equals(final Object obj) {
-        return ObjectContracts.equals(this, obj, propertyNames);
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        return Objects.equal(getFeatureId(), ((ApplicationFeature) obj).getFeatureId());
     }
 
     @Override
     public int hashCode() {
-        return ObjectContracts.hashCode(this, propertyNames);
+        return getFeatureId() != null ? getFeatureId().hashCode() : 0;
     }
 
     @Override
     public String toString() {
-        return ObjectContracts.toString(this, propertyNames);
+        return ObjectContracts.toString(this, "featureId");
     }
 
     //endregion
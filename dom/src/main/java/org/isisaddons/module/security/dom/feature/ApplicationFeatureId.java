@@ -18,7 +18,6 @@
 
 import java.io.Serializable;
 import java.nio.charset.Charset;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
@@ -26,7 +25,11 @@
 import com.google.common.base.Joiner;
 import com.google.common.base.Predicate;
 import com.google.common.base.Splitter;
-import com.google.common.collect.Lists;
+import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Ordering;
 import com.google.common.io.BaseEncoding;
 import org.apache.isis.applib.annotation.Programmatic;
 import org.apache.isis.applib.util.ObjectContracts;
@@ -39,6 +42,12 @@
  *     This value is {@link java.lang.Comparable}, the implementation of which considers {@link #getType() (feature) type},
  *     {@link #getPackageName() package name}, {@link #getClassName() class name} and {@link #getMemberName() member name}.
  * </p>
+ *
+ * <p>
+ *     Instances are immutable.  Those obtained from the factory methods (and by deserialization) are canonical, that
+ *     is, interned, so that equal ids are (usually) the same instance; ids that are no longer referenced are garbage
+ *     collected.  The fully qualified name, hash code and path (parent ids) of each id are computed only once.
+ * </p>
  */
 public class ApplicationFeatureId implements Comparable<ApplicationFeatureId>, Serializable {
 
@@ -71,66 +80,109 @@ public static ApplicationFeatureId newFeature(
     }
 
     public static ApplicationFeatureId newPackage(final String packageFqn) {
-        final ApplicationFeatureId featureId = new ApplicationFeatureId(ApplicationFeatureType.PACKAGE);
-        featureId.setPackageName(packageFqn);
-        return featureId;
+        return intern(new ApplicationFeatureId(ApplicationFeatureType.PACKAGE, packageFqn, null));
     }
 
     public static ApplicationFeatureId newClass(final String classFqn) {
-        final ApplicationFeatureId featureId = new ApplicationFeatureId(ApplicationFeatureType.CLASS);
-        featureId.type.init(featureId, classFqn);
-        return featureId;
+        return intern(new ApplicationFeatureId(ApplicationFeatureType.CLASS, classFqn, null));
     }
 
     public static ApplicationFeatureId newMember(final String classFqn, final String memberName) {
-        final ApplicationFeatureId featureId = new ApplicationFeatureId(ApplicationFeatureType.MEMBER);
-        ApplicationFeatureType.CLASS.init(featureId, classFqn);
-        featureId.type = ApplicationFeatureType.MEMBER;
-        featureId.setMemberName(memberName);
-        return featureId;
+        return intern(new ApplicationFeatureId(ApplicationFeatureType.MEMBER, classFqn, memberName));
     }
 
     public static ApplicationFeatureId newMember(final String fullyQualifiedName) {
-        final ApplicationFeatureId featureId = new ApplicationFeatureId(ApplicationFeatureType.MEMBER);
-        featureId.type.init(featureId, fullyQualifiedName);
-        return featureId;
+        return intern(new ApplicationFeatureId(ApplicationFeatureType.MEMBER, fullyQualifiedName));
     }
 
     /**
      * Round-trip with {@link #asString()}
      */
     public static ApplicationFeatureId parse(final String asString) {
-        return new ApplicationFeatureId(asString);
+        return intern(fromString(asString));
     }
 
     /**
      * Round-trip with {@link #asEncodedString()}
      */
     public static ApplicationFeatureId parseEncoded(final String encodedString) {
-        return new ApplicationFeatureId(base64UrlDecode(encodedString));
+        return intern(fromString(base64UrlDecode(encodedString)));
+    }
+
+    private static ApplicationFeatureId fromString(final String asString) {
+        final Iterator<String> iterator = Splitter.on(":").split(asString).iterator();
+        final ApplicationFeatureType type = ApplicationFeatureType.valueOf(iterator.next());
+        return new ApplicationFeatureId(type, iterator.next());
     }
     //endregion
 
     // //////////////////////////////////////
 
+    //region > intern
+
+    private static final Interner<ApplicationFeatureId> INTERNER = Interners.newWeakInterner();
+
+    /**
+     * The canonical instance equal to the feature id.
+     *
+     * <p>
+     *     Ids are immutable (all of their fields are set by the constructor), so are always fully initialized by the
+     *     time they are interned.
+     * </p>
+     */
+    private static ApplicationFeatureId intern(final ApplicationFeatureId featureId) {
+        return INTERNER.intern(featureId);
+    }
+
+    private Object readResolve() {
+        return intern(this);
+    }
+
+    //endregion
+
+    // //////////////////////////////////////
+
     //region > constructor
 
-    private ApplicationFeatureId(final String asString) {
-        final Iterator<String> iterator = Splitter.on(":").split(asString).iterator();
-        final ApplicationFeatureType type = ApplicationFeatureType.valueOf(iterator.next());
-        type.init(this, iterator.next());
+    public ApplicationFeatureId(final ApplicationFeatureType type, final String fullyQualifiedName) {
+        this(type, ownerFqnOf(type, fullyQualifiedName), memberNameOf(type, fullyQualifiedName));
     }
 
     /**
-     * Must be called by {@link org.isisaddons.module.security.dom.feature.ApplicationFeatureType#init(ApplicationFeatureId, String)} immediately afterwards
-     * to fully initialize.
+     * @param ownerFqn - the fully qualified name of the package (if a package) or otherwise of the class.
+     * @param memberName - the name of the member (if a member), otherwise <tt>null</tt>.
      */
-    ApplicationFeatureId(final ApplicationFeatureType type) {
+    private ApplicationFeatureId(final ApplicationFeatureType type, final String ownerFqn, final String memberName) {
         this.type = type;
+        if(type == ApplicationFeatureType.PACKAGE) {
+            this.packageName = ownerFqn;
+            this.className = null;
+        } else {
+            final int i = ownerFqn.lastIndexOf(".");
+            this.packageName = i != -1 ? ownerFqn.substring(0, i) : "";
+            this.className = i != -1 ? ownerFqn.substring(i + 1) : ownerFqn;
+        }
+        this.memberName = memberName;
     }
 
-    public ApplicationFeatureId(final ApplicationFeatureType type, final String fullyQualifiedName) {
-        type.init(this, fullyQualifiedName);
+    private static String ownerFqnOf(final ApplicationFeatureType type, final String fullyQualifiedName) {
+        return type == ApplicationFeatureType.MEMBER
+                ? fullyQualifiedName.substring(0, memberSeparatorIndexOf(fullyQualifiedName))
+                : fullyQualifiedName;
+    }
+
+    private static String memberNameOf(final ApplicationFeatureType type, final String fullyQualifiedName) {
+        return type == ApplicationFeatureType.MEMBER
+                ? fullyQualifiedName.substring(memberSeparatorIndexOf(fullyQualifiedName) + 1)
+                : null;
+    }
+
+    private static int memberSeparatorIndexOf(final String fullyQualifiedName) {
+        final int i = fullyQualifiedName.lastIndexOf("#");
+        if(i == -1) {
+            throw new IllegalArgumentException("Malformed, expected a '#': " + fullyQualifiedName);
+        }
+        return i;
     }
 
     //endregion
@@ -153,15 +205,25 @@ public String title() {
 
     //region > fullyQualifiedName (property)
 
+    private transient String fullyQualifiedName;
+
     @Programmatic
     public String getFullyQualifiedName() {
+        String fullyQualifiedName = this.fullyQualifiedName;
+        if(fullyQualifiedName == null) {
+            this.fullyQualifiedName = fullyQualifiedName = fullyQualifiedNameOf(this);
+        }
+        return fullyQualifiedName;
+    }
+
+    private static String fullyQualifiedNameOf(final ApplicationFeatureId featureId) {
         final StringBuilder buf = new StringBuilder();
-        buf.append(getPackageName());
-        if(getClassName() != null) {
-            buf.append(".").append(getClassName());
+        buf.append(featureId.getPackageName());
+        if(featureId.getClassName() != null) {
+            buf.append(".").append(featureId.getClassName());
         }
-        if(getMemberName() != null) {
-            buf.append("#").append(getMemberName());
+        if(featureId.getMemberName() != null) {
+            buf.append("#").append(featureId.getMemberName());
         }
         return buf.toString();
     }
@@ -171,7 +233,7 @@ public String getFullyQualifiedName() {
     // //////////////////////////////////////
 
     //region > type (property)
-    ApplicationFeatureType type;
+    private final ApplicationFeatureType type;
 
     public ApplicationFeatureType getType() {
         return type;
@@ -181,47 +243,35 @@ public ApplicationFeatureType getType() {
     // //////////////////////////////////////
 
     //region > packageName (property)
-    private String packageName;
+    private final String packageName;
 
     @Programmatic
     public String getPackageName() {
         return packageName;
     }
-
-    void setPackageName(final String packageName) {
-        this.packageName = packageName;
-    }
     //endregion
 
     // //////////////////////////////////////
 
     //region > className (property, optional)
 
-    private String className;
+    private final String className;
 
     @Programmatic
     public String getClassName() {
         return className;
     }
-
-    void setClassName(final String className) {
-        this.className = className;
-    }
     //endregion
 
     // //////////////////////////////////////
 
     //region > memberName (property, optional)
-    private String memberName;
+    private final String memberName;
 
     @Programmatic
     public String getMemberName() {
         return memberName;
     }
-
-    void setMemberName(final String memberName) {
-        this.memberName = memberName;
-    }
     //endregion
 
     // //////////////////////////////////////
@@ -235,24 +285,7 @@ void setMemberName(final String memberName) {
     @Programmatic
     public ApplicationFeatureId getParentPackageId() {
         ApplicationFeatureType.ensurePackageOrClass(this);
-
-        if(type == ApplicationFeatureType.CLASS) {
-            return ApplicationFeatureId.newPackage(getPackageName());
-        } else {
-            final String packageName = getPackageName(); // eg aaa.bbb.ccc
-
-            if(!packageName.contains(".")) {
-                return null; // parent is root
-            }
-
-            final Iterable<String> split = Splitter.on(".").split(packageName);
-            final List<String> parts = Lists.newArrayList(split); // eg [aaa,bbb,ccc]
-            parts.remove(parts.size()-1); // remove last, eg [aaa,bbb]
-
-            final String parentPackageName = Joiner.on(".").join(parts); // eg aaa.bbb
-
-            return newPackage(parentPackageName);
-        }
+        return getParentId();
     }
 
     //endregion
@@ -266,8 +299,7 @@ public ApplicationFeatureId getParentPackageId() {
      */
     public ApplicationFeatureId getParentClassId() {
         ApplicationFeatureType.ensureMember(this);
-        final String classFqn = this.getPackageName() + "." + getClassName();
-        return newClass(classFqn);
+        return getParentId();
     }
     //endregion
 
@@ -382,31 +414,72 @@ public int compare(final ApplicationFeatureId o1, final ApplicationFeatureId o2)
 
     //region > pathIds, parentIds
 
+    /**
+     * This feature followed by each of its parents in turn; computed once (sharing the path of the parent).
+     */
+    private transient ImmutableList<ApplicationFeatureId> pathIds;
+
     @Programmatic
     public List<ApplicationFeatureId> getPathIds() {
-        return pathIds(this);
+        ImmutableList<ApplicationFeatureId> pathIds = this.pathIds;
+        if(pathIds == null) {
+            final ApplicationFeatureId parentId = parentIdOf(this);
+            this.pathIds = pathIds =
+                    parentId != null
+                        ? ImmutableList.<ApplicationFeatureId>builder().add(this).addAll(parentId.getPathIds()).build()
+                        : ImmutableList.of(this);
+        }
+        return pathIds;
     }
 
     @Programmatic
     public List<ApplicationFeatureId> getParentIds() {
-        return pathIds(getParentId());
+        final List<ApplicationFeatureId> pathIds = getPathIds();
+        return pathIds.subList(1, pathIds.size());
     }
 
     private ApplicationFeatureId getParentId() {
-        return type == ApplicationFeatureType.MEMBER? getParentClassId(): getParentPackageId();
+        final List<ApplicationFeatureId> pathIds = getPathIds();
+        return pathIds.size() > 1 ? pathIds.get(1) : null;
     }
 
-    private static List<ApplicationFeatureId> pathIds(final ApplicationFeatureId id) {
-        final List<ApplicationFeatureId> featureIds = Lists.newArrayList();
-        return Collections.unmodifiableList(appendParents(id, featureIds));
+    private static ApplicationFeatureId parentIdOf(final ApplicationFeatureId featureId) {
+        switch (featureId.type) {
+            case MEMBER:
+                return newClass(featureId.getPackageName() + "." + featureId.getClassName());
+            case CLASS:
+                return newPackage(featureId.getPackageName());
+            case PACKAGE:
+                final String packageName = featureId.getPackageName(); // eg aaa.bbb.ccc
+                final int i = packageName.lastIndexOf('.');
+                return i != -1
+                        ? newPackage(packageName.substring(0, i)) // eg aaa.bbb
+                        : null; // parent is root
+        }
+        throw new IllegalStateException("Unknown feature type " + featureId.type);
     }
 
-    private static List<ApplicationFeatureId> appendParents(final ApplicationFeatureId featureId, final List<ApplicationFeatureId> parentIds) {
-        if(featureId != null) {
-            parentIds.add(featureId);
-            appendParents(featureId.getParentId(), parentIds);
+    /**
+     * Whether this feature is the specified feature or one of its parents; equivalent to
+     * <tt>featureId.getPathIds().contains(this)</tt>, but without searching the path.
+     */
+    @Programmatic
+    public boolean isOnPathOf(final ApplicationFeatureId featureId) {
+        switch (type) {
+            case MEMBER:
+                return equals(featureId);
+            case CLASS:
+                return featureId.type != ApplicationFeatureType.PACKAGE
+                        && className.equals(featureId.className)
+                        && packageName.equals(featureId.packageName);
+            case PACKAGE:
+                // the same package, or a package within it
+                final String otherPackageName = featureId.packageName;
+                return otherPackageName.startsWith(packageName)
+                        && (otherPackageName.length() == packageName.length()
+                            || otherPackageName.charAt(packageName.length()) == '.');
         }
-        return parentIds;
+        throw new IllegalStateException("Unknown feature type " + type);
     }
     //endregion
 
@@ -414,19 +487,24 @@ private static List<ApplicationFeatureId> appendParents(final ApplicationFeature
 
     //region > equals, hashCode, compareTo, toString
 
-    private final static String propertyNames = "type, packageName, className, memberName";
+    // same ordering as ObjectContracts.compare(this, other, "type, packageName, className, memberName"), without reflection
+
+    private static final Ordering<ApplicationFeatureType> TYPE_ORDER = Ordering.<ApplicationFeatureType>natural().nullsFirst();
+    private static final Ordering<String> NAME_ORDER = Ordering.<String>natural().nullsFirst();
 
     @Override
     public int compareTo(final ApplicationFeatureId other) {
-        return ObjectContracts.compare(this, other, propertyNames);
+        if (this == other) return 0;
+        return ComparisonChain.start()
+                .compare(type, other.type, TYPE_ORDER)
+                .compare(packageName, other.packageName, NAME_ORDER)
+                .compare(className, other.className, NAME_ORDER)
+                .compare(memberName, other.memberName, NAME_ORDER)
+                .result();
     }
 
     @Override
     public boolean equals(final Object o) {
-
-        // not using our ObjectContracts helper because trying to be efficient.  Premature optimization?
-        // return ObjectContracts.equals(this, obj, propertyNames);
-
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
 
@@ -439,10 +517,19 @@ public boolean equals(final Object o) {
 
     }
 
+    private transient int hashCode;
+
     @Override
     public int hashCode() {
-        // not using because trying to be efficient.  Premature optimization?
-        // return ObjectContracts.hashCode(this, propertyNames);
+        // computed once (as for String); zero means not yet computed
+        int hashCode = this.hashCode;
+        if(hashCode == 0) {
+            this.hashCode = hashCode = hashCodeOf();
+        }
+        return hashCode;
+    }
+
+    private int hashCodeOf() {
         int result = type != null ? type.hashCode() : 0;
         result = 31 * result + (packageName != null ? packageName.hashCode() : 0);
         result = 31 * result + (className != null ? className.hashCode() : 0);
@@ -458,7 +545,7 @@ public String toString() {
             case CLASS:
                 return ObjectContracts.toString(this, "type, packageName, className");
             case MEMBER:
-                return ObjectContracts.toString(this, propertyNames);
+                return ObjectContracts.toString(this, "type, packageName, className, memberName");
         }
         throw new IllegalStateException("Unknown feature type " + type);
     }
@@ -0,0 +1,85 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.dom.feature;
+
+import java.util.List;
+import java.util.Map;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import org.apache.isis.applib.annotation.Programmatic;
+
+/**
+ * Immutable assignment of a dense <tt>int</tt> ordinal to each {@link ApplicationFeatureType#MEMBER member} feature,
+ * so that (for example) {@link org.isisaddons.module.security.dom.permission.ApplicationPermissionValueSet}s can be
+ * compiled into bitsets indexed by ordinal.
+ *
+ * <p>
+ *     The ordinals of the application's members are {@link ApplicationFeatures#getOrdinals() owned} by
+ *     {@link ApplicationFeatures}, assigned once its features have been {@link ApplicationFeatures#init() created}.
+ * </p>
+ */
+public final class ApplicationFeatureOrdinals {
+
+    //region > constructor
+
+    private final List<ApplicationFeatureId> memberIds;
+    private final Map<ApplicationFeatureId, Integer> ordinalByMemberId;
+
+    /**
+     * Assigns ordinals to the provided member features (in the order provided).
+     */
+    public ApplicationFeatureOrdinals(final Iterable<ApplicationFeatureId> memberIds) {
+        this.memberIds = ImmutableList.copyOf(memberIds);
+        this.ordinalByMemberId = Maps.newHashMapWithExpectedSize(this.memberIds.size());
+        for (int i = 0; i < this.memberIds.size(); i++) {
+            final ApplicationFeatureId memberId = this.memberIds.get(i);
+            if(memberId.getType() != ApplicationFeatureType.MEMBER) {
+                throw new IllegalArgumentException("Not a member: " + memberId);
+            }
+            ordinalByMemberId.put(memberId, i);
+        }
+    }
+
+    //endregion
+
+    //region > size, ordinalOf, memberIdOf
+
+    /**
+     * The number of members; ordinals range from 0 to one less than this.
+     */
+    @Programmatic
+    public int size() {
+        return memberIds.size();
+    }
+
+    /**
+     * The ordinal of the member, or <tt>-1</tt> if not a (known) member.
+     */
+    @Programmatic
+    public int ordinalOf(final ApplicationFeatureId featureId) {
+        final Integer ordinal = ordinalByMemberId.get(featureId);
+        return ordinal != null ? ordinal : -1;
+    }
+
+    @Programmatic
+    public ApplicationFeatureId memberIdOf(final int ordinal) {
+        return memberIds.get(ordinal);
+    }
+
+    //endregion
+
+}
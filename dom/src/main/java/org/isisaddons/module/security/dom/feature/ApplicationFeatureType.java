@@ -19,44 +19,9 @@
 import org.apache.isis.core.commons.lang.StringExtensions;
 
 public enum ApplicationFeatureType {
-    PACKAGE {
-        @Override
-        void init(final ApplicationFeatureId feature, final String fullyQualifiedName) {
-            feature.setPackageName(fullyQualifiedName);
-            feature.setClassName(null);
-            feature.setMemberName(null);
-            feature.type = this;
-        }
-    },
-    CLASS {
-        @Override
-        void init(final ApplicationFeatureId feature, final String fullyQualifiedName) {
-            final int i = fullyQualifiedName.lastIndexOf(".");
-            if(i != -1) {
-                feature.setPackageName(fullyQualifiedName.substring(0, i));
-                feature.setClassName(fullyQualifiedName.substring(i+1));
-            } else {
-                feature.setPackageName("");
-                feature.setClassName(fullyQualifiedName);
-            }
-            feature.setMemberName(null);
-            feature.type = this;
-        }
-    },
-    MEMBER {
-        @Override
-        void init(final ApplicationFeatureId feature, final String fullyQualifiedName) {
-            final int i = fullyQualifiedName.lastIndexOf("#");
-            if(i == -1) {
-                throw new IllegalArgumentException("Malformed, expected a '#': " + fullyQualifiedName);
-            }
-            final String className = fullyQualifiedName.substring(0, i);
-            final String memberName = fullyQualifiedName.substring(i+1);
-            CLASS.init(feature, className);
-            feature.setMemberName(memberName);
-            feature.type = this;
-        }
-    };
+    PACKAGE,
+    CLASS,
+    MEMBER;
 
     public boolean hideClassName() {
         return this == ApplicationFeatureType.PACKAGE;
@@ -65,28 +30,26 @@ public boolean hideMember() {
         return this == ApplicationFeatureType.PACKAGE || this == ApplicationFeatureType.CLASS;
     }
 
-    abstract void init(ApplicationFeatureId applicationFeatureId, String fullyQualifiedName);
-
     static void ensurePackage(final ApplicationFeatureId feature) {
-        if(feature.type != ApplicationFeatureType.PACKAGE) {
+        if(feature.getType() != ApplicationFeatureType.PACKAGE) {
             throw new IllegalStateException("Can only be called for a package; " + feature.toString());
         }
     }
 
     static void ensurePackageOrClass(final ApplicationFeatureId applicationFeatureId) {
-        if(applicationFeatureId.type != ApplicationFeatureType.PACKAGE && applicationFeatureId.type != ApplicationFeatureType.CLASS) {
+        if(applicationFeatureId.getType() != ApplicationFeatureType.PACKAGE && applicationFeatureId.getType() != ApplicationFeatureType.CLASS) {
             throw new IllegalStateException("Can only be called for a package or a class; " + applicationFeatureId.toString());
         }
     }
 
     static void ensureClass(final ApplicationFeatureId feature) {
-        if(feature.type != ApplicationFeatureType.CLASS) {
+        if(feature.getType() != ApplicationFeatureType.CLASS) {
             throw new IllegalStateException("Can only be called for a class; " + feature.toString());
         }
     }
 
     static void ensureMember(final ApplicationFeatureId feature) {
-        if(feature.type != ApplicationFeatureType.MEMBER) {
+        if(feature.getType() != ApplicationFeatureType.MEMBER) {
             throw new IllegalStateException("Can only be called for a member; " + feature.toString());
         }
     }
@@ -116,6 +116,22 @@ public String iconName() {
 
     // //////////////////////////////////////
 
+    //region > ordinals
+
+    private volatile ApplicationFeatureOrdinals ordinals;
+
+    /**
+     * The ordinals of the application's members, or <tt>null</tt> if not yet {@link #init() initialized}.
+     */
+    @Programmatic
+    public ApplicationFeatureOrdinals getOrdinals() {
+        return ordinals;
+    }
+
+    //endregion
+
+    // //////////////////////////////////////
+
     //region > init
     @Programmatic
     @PostConstruct
@@ -125,6 +141,7 @@ public void init() {
         }
         final Collection<ObjectSpecification> specifications = primeMetaModel();
         createApplicationFeaturesFor(specifications);
+        ordinals = new ApplicationFeatureOrdinals(memberFeatures.keySet());
     }
 
     private Collection<ObjectSpecification> primeMetaModel() {
@@ -0,0 +1,167 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.dom.password;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.PostConstruct;
+import com.google.common.collect.ImmutableList;
+
+import org.apache.isis.applib.annotation.Programmatic;
+
+/**
+ * Encrypts passwords using a primary {@link PasswordHashingAlgorithm}, but verifies passwords encrypted by any of the
+ * known algorithms, selecting the algorithm from the prefix of the encrypted password.
+ *
+ * <p>
+ *     By default BCrypt is primary, and PBKDF2 is also known (if {@link PasswordHashingAlgorithmPbkdf2#isSupported()
+ *     supported} by the JDK, that is, on Java 8 or later).  The primary algorithm can be specified using the
+ *     <tt>isisaddons.module.security.passwordEncryption.primary</tt> configuration property (<tt>bcrypt</tt> or
+ *     <tt>pbkdf2</tt>); the BCrypt cost factor using <tt>isisaddons.module.security.jbcrypt.logRounds</tt>; and the
+ *     number of PBKDF2 iterations using <tt>isisaddons.module.security.pbkdf2.iterations</tt>.  Specifying PBKDF2 as
+ *     primary on Java 7 fails (when the service is initialized) with an {@link IllegalStateException}.
+ * </p>
+ *
+ * <p>
+ *     Passwords encrypted using any other algorithm than the primary (or with different parameters) are reported as
+ *     {@link #needsRehash(String) needing rehash}, and are therefore migrated when the user next logs in.
+ * </p>
+ */
+public class PasswordEncryptionServiceComposite implements RehashablePasswordEncryptionService {
+
+    public static final String KEY_PRIMARY = "isisaddons.module.security.passwordEncryption.primary";
+    public static final String KEY_PBKDF2_ITERATIONS = "isisaddons.module.security.pbkdf2.iterations";
+
+    private PasswordHashingAlgorithm primary;
+    private List<PasswordHashingAlgorithm> algorithms;
+
+    public PasswordEncryptionServiceComposite() {
+        this(new PasswordHashingAlgorithmBCrypt(), pbkdf2IfSupported(null));
+    }
+
+    /**
+     * @param primary - used to encrypt passwords.
+     * @param others - (in addition to the primary) used to verify passwords.
+     */
+    public PasswordEncryptionServiceComposite(
+            final PasswordHashingAlgorithm primary,
+            final PasswordHashingAlgorithm... others) {
+        setAlgorithms(primary, Arrays.asList(others));
+    }
+
+    //region > init
+
+    @Programmatic
+    @PostConstruct
+    public void init(final Map<String,String> properties) {
+        final String logRounds = properties.get(PasswordEncryptionServiceUsingJBcrypt.KEY_LOG_ROUNDS);
+        final String iterations = properties.get(KEY_PBKDF2_ITERATIONS);
+        final PasswordHashingAlgorithm bcrypt = logRounds != null
+                ? new PasswordHashingAlgorithmBCrypt(Integer.parseInt(logRounds.trim()))
+                : new PasswordHashingAlgorithmBCrypt();
+
+        final String primaryName = properties.get(KEY_PRIMARY);
+        if(primaryName == null || PasswordHashingAlgorithmBCrypt.NAME.equals(primaryName.trim())) {
+            setAlgorithms(bcrypt, Arrays.asList(pbkdf2IfSupported(iterations)));
+        } else if(PasswordHashingAlgorithmPbkdf2.NAME.equals(primaryName.trim())) {
+            // fails fast (with an explanation) if not supported by the JDK
+            setAlgorithms(pbkdf2(iterations), Arrays.<PasswordHashingAlgorithm>asList(bcrypt));
+        } else {
+            throw new IllegalArgumentException("Unknown password hashing algorithm '" + primaryName + "'");
+        }
+    }
+
+    private static PasswordHashingAlgorithm pbkdf2(final String iterations) {
+        return iterations != null
+                ? new PasswordHashingAlgorithmPbkdf2(Integer.parseInt(iterations.trim()))
+                : new PasswordHashingAlgorithmPbkdf2();
+    }
+
+    /**
+     * As a secondary algorithm, PBKDF2 is simply omitted if not supported by the JDK.
+     */
+    private static PasswordHashingAlgorithm[] pbkdf2IfSupported(final String iterations) {
+        return PasswordHashingAlgorithmPbkdf2.isSupported()
+                ? new PasswordHashingAlgorithm[] { pbkdf2(iterations) }
+                : new PasswordHashingAlgorithm[0];
+    }
+
+    private void setAlgorithms(final PasswordHashingAlgorithm primary, final List<PasswordHashingAlgorithm> others) {
+        this.primary = primary;
+        this.algorithms = ImmutableList.<PasswordHashingAlgorithm>builder().add(primary).addAll(others).build();
+    }
+
+    //endregion
+
+    //region > primary
+
+    @Programmatic
+    public PasswordHashingAlgorithm getPrimary() {
+        return primary;
+    }
+
+    //endregion
+
+    //region > encrypt, matches, needsRehash
+
+    @Programmatic
+    @Override
+    public String encrypt(final String password) {
+        return password == null ? null : primary.encrypt(password);
+    }
+
+    @Programmatic
+    @Override
+    public boolean matches(final String candidate, final String encrypted) {
+        if (candidate == null && encrypted == null) {
+            return true;
+        }
+        if (candidate == null || encrypted == null) {
+            return false;
+        }
+        final PasswordHashingAlgorithm algorithm = algorithmFor(encrypted);
+        return algorithm != null && algorithm.matches(candidate, encrypted);
+    }
+
+    @Programmatic
+    @Override
+    public boolean needsRehash(final String encrypted) {
+        if (encrypted == null) {
+            return false;
+        }
+        final PasswordHashingAlgorithm algorithm = algorithmFor(encrypted);
+        return algorithm != null && (algorithm != primary || algorithm.needsRehash(encrypted));
+    }
+
+    /**
+     * The algorithm whose prefix the encrypted password starts with, or <tt>null</tt> if none.
+     */
+    PasswordHashingAlgorithm algorithmFor(final String encrypted) {
+        final List<PasswordHashingAlgorithm> algorithms = this.algorithms;
+        for (int i = 0; i < algorithms.size(); i++) {
+            final PasswordHashingAlgorithm algorithm = algorithms.get(i);
+            if(encrypted.startsWith(algorithm.getPrefix())) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+
+    //endregion
+
+}
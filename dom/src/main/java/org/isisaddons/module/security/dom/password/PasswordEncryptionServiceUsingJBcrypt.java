@@ -16,19 +16,140 @@
  */
 package org.isisaddons.module.security.dom.password;
 
+import java.util.Arrays;
+import java.util.Map;
+import javax.annotation.PostConstruct;
 import org.mindrot.jbcrypt.BCrypt;
 
 import org.apache.isis.applib.annotation.Programmatic;
 
-public class PasswordEncryptionServiceUsingJBcrypt implements PasswordEncryptionService {
+/**
+ * Encrypts passwords using BCrypt.
+ *
+ * <p>
+ *     The cost factor (log2 of the number of rounds) can be specified using the
+ *     <tt>isisaddons.module.security.jbcrypt.logRounds</tt> configuration property.  Alternatively, the
+ *     <tt>isisaddons.module.security.jbcrypt.calibrationTargetMillis</tt> property causes the cost factor to be
+ *     calibrated at startup, as the lowest for which an encryption (the median of several, after warming up) takes
+ *     at least that long on the current hardware.
+ * </p>
+ *
+ * <p>
+ *     In a cluster, the cost factor should be specified rather than calibrated: nodes on different hardware (or
+ *     under different load at startup) may otherwise calibrate differently, and each would then report passwords
+ *     encrypted by the others as needing rehash.
+ * </p>
+ *
+ * <p>
+ *     Passwords encrypted with any other cost factor continue to match, but are reported as
+ *     {@link #needsRehash(String) needing rehash}.
+ * </p>
+ */
+public class PasswordEncryptionServiceUsingJBcrypt implements RehashablePasswordEncryptionService {
+
+    public static final String KEY_LOG_ROUNDS = "isisaddons.module.security.jbcrypt.logRounds";
+    public static final String KEY_CALIBRATION_TARGET_MILLIS = "isisaddons.module.security.jbcrypt.calibrationTargetMillis";
+
+    static final int DEFAULT_LOG_ROUNDS = 10;
+    static final int MIN_LOG_ROUNDS = 4;
+    static final int MAX_CALIBRATED_LOG_ROUNDS = 16;
+    static final int CALIBRATION_WARMUPS = 5;
+    static final int CALIBRATION_SAMPLES = 5;
+
+    //region > init
+
+    @Programmatic
+    @PostConstruct
+    public void init(final Map<String,String> properties) {
+        final String calibrationTargetMillis = properties.get(KEY_CALIBRATION_TARGET_MILLIS);
+        if(calibrationTargetMillis != null) {
+            setLogRounds(calibrate(Long.parseLong(calibrationTargetMillis.trim())));
+            return;
+        }
+        final String logRounds = properties.get(KEY_LOG_ROUNDS);
+        if(logRounds != null) {
+            setLogRounds(Integer.parseInt(logRounds.trim()));
+        }
+    }
+
+    /**
+     * The lowest cost factor (up to {@link #MAX_CALIBRATED_LOG_ROUNDS}) for which the median time of
+     * {@link #CALIBRATION_SAMPLES several} encryptions is at least the target time.
+     *
+     * <p>
+     *     The encryption is first {@link #CALIBRATION_WARMUPS warmed up} (at the lowest cost factor), so that class
+     *     loading and compilation are not mistaken for the cost of encrypting; the median discounts any remaining
+     *     outliers (such as garbage collection pauses).
+     * </p>
+     */
+    static int calibrate(final long targetMillis) {
+        final long targetNanos = targetMillis * 1000000L;
+        for (int i = 0; i < CALIBRATION_WARMUPS; i++) {
+            encryptForCalibration(MIN_LOG_ROUNDS);
+        }
+        int logRounds = MIN_LOG_ROUNDS;
+        for (; logRounds < MAX_CALIBRATED_LOG_ROUNDS; logRounds++) {
+            final long[] sampleNanos = new long[CALIBRATION_SAMPLES];
+            for (int i = 0; i < sampleNanos.length; i++) {
+                sampleNanos[i] = encryptForCalibration(logRounds);
+            }
+            if(median(sampleNanos) >= targetNanos) {
+                break;
+            }
+        }
+        return logRounds;
+    }
+
+    /**
+     * The time taken (in nanoseconds) to encrypt with the specified cost factor.
+     */
+    private static long encryptForCalibration(final int logRounds) {
+        final long start = System.nanoTime();
+        BCrypt.hashpw("calibration", BCrypt.gensalt(logRounds));
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * The median of the (non-empty) samples, which are sorted in place.
+     */
+    static long median(final long[] samples) {
+        Arrays.sort(samples);
+        final int mid = samples.length / 2;
+        return samples.length % 2 == 1
+                ? samples[mid]
+                : (samples[mid - 1] + samples[mid]) / 2;
+    }
+
+    //endregion
+
+    //region > logRounds
 
+    private int logRounds = DEFAULT_LOG_ROUNDS;
+
+    @Programmatic
+    public int getLogRounds() {
+        return logRounds;
+    }
+
+    @Programmatic
+    public void setLogRounds(final int logRounds) {
+        if(logRounds < MIN_LOG_ROUNDS || logRounds > 31) {
+            throw new IllegalArgumentException("logRounds must be between " + MIN_LOG_ROUNDS + " and 31");
+        }
+        this.logRounds = logRounds;
+    }
+
+    //endregion
+
+    //region > encrypt, matches, needsRehash
+
+    /**
+     * If set, is used for every password (rather than a newly generated salt for each).
+     */
     String salt;
 
     private String getSalt() {
-        if (salt == null) {
-            salt = BCrypt.gensalt();
-        }
-        return salt;
+        return salt != null ? salt : BCrypt.gensalt(logRounds);
     }
 
     @Programmatic
@@ -48,4 +169,37 @@ public boolean matches(String candidate, String encrypted) {
         }
         return BCrypt.checkpw(candidate, encrypted);
     }
+
+    /**
+     * Whether the password was encrypted (by BCrypt) with a cost factor other than the {@link #getLogRounds() current}
+     * one.
+     */
+    @Programmatic
+    @Override
+    public boolean needsRehash(final String encrypted) {
+        final int encryptedLogRounds = logRoundsOf(encrypted);
+        return encryptedLogRounds != -1 && encryptedLogRounds != logRounds;
+    }
+
+    /**
+     * The cost factor of a BCrypt hash (<tt>$2a$NN$...</tt>), or -1 if not recognized.
+     */
+    static int logRoundsOf(final String encrypted) {
+        if(encrypted == null || encrypted.length() < 7 || !encrypted.startsWith("$2")) {
+            return -1;
+        }
+        final int offset = encrypted.charAt(3) == '$' ? 4 : 3;
+        if(encrypted.length() < offset + 3 || encrypted.charAt(offset + 2) != '$') {
+            return -1;
+        }
+        final char tens = encrypted.charAt(offset);
+        final char units = encrypted.charAt(offset + 1);
+        if(!Character.isDigit(tens) || !Character.isDigit(units)) {
+            return -1;
+        }
+        return (tens - '0') * 10 + (units - '0');
+    }
+
+    //endregion
+
 }
@@ -0,0 +1,52 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.dom.password;
+
+/**
+ * One of the algorithms available to {@link PasswordEncryptionServiceComposite}.
+ *
+ * <p>
+ *     Every password encrypted by an algorithm starts with its {@link #getPrefix() prefix}, so that the composite can
+ *     determine which algorithm to verify a password with.
+ * </p>
+ */
+public interface PasswordHashingAlgorithm {
+
+    /**
+     * Used to select the primary algorithm through configuration, eg <tt>bcrypt</tt>.
+     */
+    String getName();
+
+    /**
+     * The prefix of every password encrypted by this algorithm; must not be a prefix of that of any other algorithm.
+     */
+    String getPrefix();
+
+    String encrypt(final String password);
+
+    /**
+     * @param encrypted - starts with the {@link #getPrefix() prefix}.
+     */
+    boolean matches(final String candidate, final String encrypted);
+
+    /**
+     * Whether the password was encrypted with parameters (eg cost factor) other than the current ones.
+     *
+     * @param encrypted - starts with the {@link #getPrefix() prefix}.
+     */
+    boolean needsRehash(final String encrypted);
+}
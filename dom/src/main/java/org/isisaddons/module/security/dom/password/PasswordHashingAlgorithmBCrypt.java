@@ -0,0 +1,66 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.dom.password;
+
+import org.mindrot.jbcrypt.BCrypt;
+
+/**
+ * BCrypt (<tt>$2a$NN$...</tt>), with a configurable cost factor.
+ */
+public class PasswordHashingAlgorithmBCrypt implements PasswordHashingAlgorithm {
+
+    public static final String NAME = "bcrypt";
+
+    private final int logRounds;
+
+    public PasswordHashingAlgorithmBCrypt() {
+        this(PasswordEncryptionServiceUsingJBcrypt.DEFAULT_LOG_ROUNDS);
+    }
+
+    public PasswordHashingAlgorithmBCrypt(final int logRounds) {
+        this.logRounds = logRounds;
+    }
+
+    public int getLogRounds() {
+        return logRounds;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getPrefix() {
+        return "$2";
+    }
+
+    @Override
+    public String encrypt(final String password) {
+        return BCrypt.hashpw(password, BCrypt.gensalt(logRounds));
+    }
+
+    @Override
+    public boolean matches(final String candidate, final String encrypted) {
+        return BCrypt.checkpw(candidate, encrypted);
+    }
+
+    @Override
+    public boolean needsRehash(final String encrypted) {
+        return PasswordEncryptionServiceUsingJBcrypt.logRoundsOf(encrypted) != logRounds;
+    }
+}
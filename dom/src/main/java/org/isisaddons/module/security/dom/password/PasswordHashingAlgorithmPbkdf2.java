@@ -0,0 +1,140 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.dom.password;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.List;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * PBKDF2 with HMAC-SHA256, as provided by the JDK (<tt>{pbkdf2}iterations$salt$hash</tt>, salt and hash being Base64
+ * encoded), with a configurable number of iterations.
+ *
+ * <p>
+ *     Requires Java 8 or later (the <tt>PBKDF2WithHmacSHA256</tt> algorithm is not provided by Java 7); on an earlier
+ *     JDK this class cannot be instantiated (see {@link #isSupported()}).
+ * </p>
+ */
+public class PasswordHashingAlgorithmPbkdf2 implements PasswordHashingAlgorithm {
+
+    public static final String NAME = "pbkdf2";
+    public static final int DEFAULT_ITERATIONS = 64000;
+
+    private static final String PREFIX = "{pbkdf2}";
+    private static final String JCA_ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private static final BaseEncoding BASE64 = BaseEncoding.base64();
+    private static final Splitter DOLLAR = Splitter.on('$');
+
+    private final int iterations;
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    public PasswordHashingAlgorithmPbkdf2() {
+        this(DEFAULT_ITERATIONS);
+    }
+
+    /**
+     * @throws IllegalStateException - if not {@link #isSupported() supported} by this JDK.
+     */
+    public PasswordHashingAlgorithmPbkdf2(final int iterations) {
+        if(iterations <= 0) {
+            throw new IllegalArgumentException("iterations must be positive");
+        }
+        if(!isSupported()) {
+            throw new IllegalStateException(
+                    "The " + JCA_ALGORITHM + " algorithm (required for " + NAME + " password hashing) is not " +
+                    "provided by this JDK (" + System.getProperty("java.version") + "); Java 8 or later is required");
+        }
+        this.iterations = iterations;
+    }
+
+    /**
+     * Whether the JDK provides the <tt>PBKDF2WithHmacSHA256</tt> algorithm (Java 8 or later).
+     */
+    public static boolean isSupported() {
+        try {
+            SecretKeyFactory.getInstance(JCA_ALGORITHM);
+            return true;
+        } catch (final GeneralSecurityException ex) {
+            return false;
+        }
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public String getPrefix() {
+        return PREFIX;
+    }
+
+    @Override
+    public String encrypt(final String password) {
+        final byte[] salt = new byte[SALT_BYTES];
+        secureRandom.nextBytes(salt);
+        final byte[] hash = hash(password, salt, iterations);
+        return PREFIX + iterations + "$" + BASE64.encode(salt) + "$" + BASE64.encode(hash);
+    }
+
+    @Override
+    public boolean matches(final String candidate, final String encrypted) {
+        final List<String> parts = Lists.newArrayList(DOLLAR.split(encrypted.substring(PREFIX.length())));
+        if(parts.size() != 3) {
+            return false;
+        }
+        try {
+            final int iterations = Integer.parseInt(parts.get(0));
+            final byte[] salt = BASE64.decode(parts.get(1));
+            final byte[] hash = BASE64.decode(parts.get(2));
+            return iterations > 0 && MessageDigest.isEqual(hash, hash(candidate, salt, iterations));
+        } catch(final IllegalArgumentException ex) {
+            // includes NumberFormatException
+            return false;
+        }
+    }
+
+    @Override
+    public boolean needsRehash(final String encrypted) {
+        final int end = encrypted.indexOf('$', PREFIX.length());
+        return end == -1 || !encrypted.substring(PREFIX.length(), end).equals(Integer.toString(iterations));
+    }
+
+    private static byte[] hash(final String password, final byte[] salt, final int iterations) {
+        final PBEKeySpec keySpec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(JCA_ALGORITHM).generateSecret(keySpec).getEncoded();
+        } catch (final GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        } finally {
+            keySpec.clearPassword();
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.dom.password;
+
+import org.apache.isis.applib.annotation.Programmatic;
+
+/**
+ * A {@link PasswordEncryptionService} whose configuration (for example, its cost factor) may change over time, and
+ * which can therefore identify passwords that were encrypted under a previous configuration.
+ *
+ * <p>
+ *     On a successful login of a local user, the <tt>IsisModuleSecurityRealm</tt> uses this to upgrade (in the
+ *     background) the stored encrypted password.
+ * </p>
+ */
+public interface RehashablePasswordEncryptionService extends PasswordEncryptionService {
+
+    /**
+     * Whether the encrypted password should be re-encrypted (from the clear text password) using the current
+     * configuration.
+     */
+    @Programmatic
+    public boolean needsRehash(final String encrypted);
+}
@@ -23,6 +23,8 @@
 import javax.jdo.annotations.InheritanceStrategy;
 import javax.jdo.annotations.VersionStrategy;
 import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.Ordering;
 import org.isisaddons.module.security.SecurityModule;
 import org.isisaddons.module.security.dom.feature.ApplicationFeature;
@@ -103,6 +105,11 @@
                         + "FROM org.isisaddons.module.security.dom.permission.ApplicationPermission "
                         + "WHERE (u.roles.contains(role) && u.username == :username) "
                         + "VARIABLES org.isisaddons.module.security.dom.user.ApplicationUser u"),
+        @javax.jdo.annotations.Query(
+                name = "findByRoleNames", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.isisaddons.module.security.dom.permission.ApplicationPermission "
+                        + "WHERE :roleNames.contains(role.name)"),
         @javax.jdo.annotations.Query(
                 name = "findByFeature", language = "JDOQL",
                 value = "SELECT "
@@ -264,6 +271,7 @@ public UpdateRoleDomainEvent(final ApplicationPermission source, final Identifie
     @MemberOrder(name="Role", sequence = "1")
     public ApplicationPermission updateRole(final ApplicationRole applicationRole) {
         setRole(applicationRole);
+        invalidateCachedPermissionSets();
         return this;
     }
 
@@ -317,6 +325,7 @@ public AllowDomainEvent(final ApplicationPermission source, final Identifier ide
     @MemberOrder(name = "Rule", sequence = "1")
     public ApplicationPermission allow() {
         setRule(ApplicationPermissionRule.ALLOW);
+        invalidateCachedPermissionSets();
         return this;
     }
     public String disableAllow() {
@@ -339,6 +348,7 @@ public VetoDomainEvent(final ApplicationPermission source, final Identifier iden
     @MemberOrder(name = "Rule", sequence = "1")
     public ApplicationPermission veto() {
         setRule(ApplicationPermissionRule.VETO);
+        invalidateCachedPermissionSets();
         return this;
     }
     public String disableVeto() {
@@ -391,6 +401,7 @@ public ViewingDomainEvent(final ApplicationPermission source, final Identifier i
     @MemberOrder(name = "Mode", sequence = "1")
     public ApplicationPermission viewing() {
         setMode(ApplicationPermissionMode.VIEWING);
+        invalidateCachedPermissionSets();
         return this;
     }
     public String disableViewing() {
@@ -414,6 +425,7 @@ public ChangingDomainEvent(final ApplicationPermission source, final Identifier
     @MemberOrder(name = "Mode", sequence = "2")
     public ApplicationPermission changing() {
         setMode(ApplicationPermissionMode.CHANGING);
+        invalidateCachedPermissionSets();
         return this;
     }
     public String disableChanging() {
@@ -544,6 +556,7 @@ public ApplicationRole delete(
             @ParameterLayout(named="Are you sure?")
             final Boolean areYouSure) {
         final ApplicationRole owningRole = getRole();
+        invalidateCachedPermissionSets();
         container.removeIfNotAlready(this);
         return owningRole;
     }
@@ -556,27 +569,56 @@ static boolean not(final Boolean areYouSure) {
     }
     //endregion
     
+    //region > helpers
+
+    /**
+     * So that users do not share {@link ApplicationPermissionValueSetCache cached permission sets} that no longer
+     * reflect their roles' permissions (neither now, nor once this change has been committed).
+     */
+    private void invalidateCachedPermissionSets() {
+        ApplicationPermissionValueSetCache.invalidateAllNowAndAfterCompletion(this);
+    }
+    //endregion
+
     //region > equals, hashCode, compareTo, toString
-    private final static String propertyNames = "role, featureType, featureFqn, mode";
+    private static final Ordering<ApplicationRole> ROLE_ORDER = Ordering.<ApplicationRole>natural().nullsFirst();
+    private static final Ordering<ApplicationFeatureType> FEATURE_TYPE_ORDER = Ordering.<ApplicationFeatureType>natural().nullsFirst();
+    private static final Ordering<String> FEATURE_FQN_ORDER = Ordering.<String>natural().nullsFirst();
+    private static final Ordering<ApplicationPermissionMode> MODE_ORDER = Ordering.<ApplicationPermissionMode>natural().nullsFirst();
 
     @Override
     public int compareTo(final ApplicationPermission other) {
-        return ObjectContracts.compare(this, other, propertyNames);
+        return ComparisonChain.start()
+                .compare(getRole(), other.getRole(), ROLE_ORDER)
+                .compare(getFeatureType(), other.getFeatureType(), FEATURE_TYPE_ORDER)
+                .compare(getFeatureFqn(), other.getFeatureFqn(), FEATURE_FQN_ORDER)
+                .compare(getMode(), other.getMode(), MODE_ORDER)
+                .result();
     }
 
     @Override
     public boolean equals(final Object obj) {
-        return ObjectContracts.equals(this, obj, propertyNames);
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        final ApplicationPermission that = (ApplicationPermission) obj;
+        return Objects.equal(getRole(), that.getRole())
+                && getFeatureType() == that.getFeatureType()
+                && Objects.equal(getFeatureFqn(), that.getFeatureFqn())
+                && getMode() == that.getMode();
     }
 
     @Override
     public int hashCode() {
-        return ObjectContracts.hashCode(this, propertyNames);
+        int result = getRole() != null ? getRole().hashCode() : 0;
+        result = 31 * result + (getFeatureType() != null ? getFeatureType().hashCode() : 0);
+        result = 31 * result + (getFeatureFqn() != null ? getFeatureFqn().hashCode() : 0);
+        result = 31 * result + (getMode() != null ? getMode().hashCode() : 0);
+        return result;
     }
 
     @Override
     public String toString() {
-        return ObjectContracts.toString(this, propertyNames);
+        return ObjectContracts.toString(this, "role, featureType, featureFqn, mode");
     }
 
     public static class DefaultComparator implements Comparator<ApplicationPermission> {
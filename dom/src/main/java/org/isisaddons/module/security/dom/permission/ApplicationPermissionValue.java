@@ -18,7 +18,8 @@
 
 import java.io.Serializable;
 import java.util.Comparator;
-import java.util.List;
+import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.Ordering;
 import org.isisaddons.module.security.dom.feature.ApplicationFeatureId;
 import org.apache.isis.applib.annotation.Programmatic;
 import org.apache.isis.applib.util.ObjectContracts;
@@ -100,15 +101,27 @@ public boolean refutes(final ApplicationFeatureId featureId, final ApplicationPe
     }
 
     private boolean onPathOf(final ApplicationFeatureId featureId) {
+        return getFeatureId().isOnPathOf(featureId);
+    }
 
-        final List<ApplicationFeatureId> pathIds = featureId.getPathIds();
-        for (final ApplicationFeatureId pathId : pathIds) {
-            if(getFeatureId().equals(pathId)) {
-                return true;
-            }
-        }
+    //endregion
 
-        return false;
+    //region > evaluation
+
+    private transient ApplicationPermissionValueSet.Evaluation evaluation;
+
+    /**
+     * The outcome of this permission being the first to {@link #implies(ApplicationFeatureId, ApplicationPermissionMode) imply}
+     * or {@link #refutes(ApplicationFeatureId, ApplicationPermissionMode) refute} a feature; created once and then shared.
+     */
+    ApplicationPermissionValueSet.Evaluation getEvaluation() {
+        ApplicationPermissionValueSet.Evaluation evaluation = this.evaluation;
+        if(evaluation == null) {
+            // benign race; Evaluation is immutable
+            this.evaluation = evaluation =
+                    new ApplicationPermissionValueSet.Evaluation(this, getRule() == ApplicationPermissionRule.ALLOW);
+        }
+        return evaluation;
     }
 
     //endregion
@@ -131,17 +144,23 @@ public int compare(final ApplicationPermissionValue o1, final ApplicationPermiss
 
     //region > equals, hashCode, compareTo, toString
 
-    private final static String propertyNames = "rule, mode, featureId";
+    // ordered by rule, then mode, then feature (as previously by ObjectContracts, natural order with nulls first)
+
+    private static final Ordering<ApplicationPermissionRule> RULE_ORDER = Ordering.<ApplicationPermissionRule>natural().nullsFirst();
+    private static final Ordering<ApplicationPermissionMode> MODE_ORDER = Ordering.<ApplicationPermissionMode>natural().nullsFirst();
+    private static final Ordering<ApplicationFeatureId> FEATURE_ID_ORDER = Ordering.<ApplicationFeatureId>natural().nullsFirst();
 
     @Override
     public int compareTo(final ApplicationPermissionValue o) {
-        return ObjectContracts.compare(this, o, propertyNames);
+        return ComparisonChain.start()
+                .compare(rule, o.rule, RULE_ORDER)
+                .compare(mode, o.mode, MODE_ORDER)
+                .compare(featureId, o.featureId, FEATURE_ID_ORDER)
+                .result();
     }
 
     @Override
     public boolean equals(final Object o) {
-        // not using because trying to be efficient.  Premature optimization?
-        // return ObjectContracts.equals(this, obj, propertyNames);
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
 
@@ -156,8 +175,6 @@ public boolean equals(final Object o) {
 
     @Override
     public int hashCode() {
-        // not using because trying to be efficient.  Premature optimization?
-        // return ObjectContracts.hashCode(this, propertyNames);
         int result = featureId != null ? featureId.hashCode() : 0;
         result = 31 * result + (rule != null ? rule.hashCode() : 0);
         result = 31 * result + (mode != null ? mode.hashCode() : 0);
@@ -166,7 +183,7 @@ public int hashCode() {
 
     @Override
     public String toString() {
-            return ObjectContracts.toString(this, propertyNames);
+        return ObjectContracts.toString(this, "rule, mode, featureId");
     }
 
     //endregion
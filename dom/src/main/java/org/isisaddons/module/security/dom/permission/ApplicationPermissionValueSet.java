@@ -18,14 +18,18 @@
 
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.TreeMultimap;
 import org.isisaddons.module.security.SecurityModule;
 import org.isisaddons.module.security.dom.feature.ApplicationFeatureId;
+import org.isisaddons.module.security.dom.feature.ApplicationFeatureOrdinals;
+import org.isisaddons.module.security.dom.feature.ApplicationFeatureType;
 import org.apache.isis.applib.Identifier;
 import org.apache.isis.applib.annotation.Programmatic;
 
@@ -77,46 +81,51 @@ public ActionDomainEvent(final ApplicationPermissionValueSet source, final Ident
     //region > values
     private final List<ApplicationPermissionValue> values;
     /**
-     * Partitions the {@link ApplicationPermissionValue permissions} by feature and within that orders according to their
+     * Indexes the {@link ApplicationPermissionValue permissions} by feature and within that orders according to their
      * evaluation precedence.
      *
      * <p>
      *     The following sketches out what is stored:
      * </p>
      * <pre>
-     *     com.foo.Bar#bip -> ALLOW, CHANGING
-     *                     -> ALLOW, VIEWING
-     *                     -> VETO, VIEWING
-     *                     -> VETO, CHANGING
-     *     com.foo.Bar     -> ALLOW, CHANGING
-     *                     -> ALLOW, VIEWING
-     *                     -> VETO, VIEWING
-     *                     -> VETO, CHANGING
-     *     com.foo         -> ALLOW, CHANGING
-     *                     -> ALLOW, VIEWING
-     *                     -> VETO, VIEWING
-     *                     -> VETO, CHANGING
-     *     com             -> ALLOW, CHANGING
-     *                     -> ALLOW, VIEWING
-     *                     -> VETO, VIEWING
-     *                     -> VETO, CHANGING
+     *     com                   -> ALLOW, CHANGING
+     *                           -> ALLOW, VIEWING
+     *                           -> VETO, VIEWING
+     *                           -> VETO, CHANGING
+     *       foo                 -> ALLOW, CHANGING
+     *                           -> ...
+     *         (class) Bar       -> ALLOW, CHANGING
+     *                           -> ...
+     *           (member) bip    -> ALLOW, CHANGING
+     *                           -> ...
      * </pre>
-     * 
+     *
      * <p>
      *     Note that {@link org.isisaddons.module.security.dom.permission.ApplicationPermissionRule#ALLOW allow} rule
      *     is ordered before {@link org.isisaddons.module.security.dom.permission.ApplicationPermissionRule#VETO veto} rule
      *     meaning that it is checked first and therefore also takes precedence.
      * </p>
      */
-    private final Multimap<ApplicationFeatureId, ApplicationPermissionValue> permissionsByFeature = TreeMultimap.create(
-            Collections.reverseOrder(ApplicationFeatureId.Comparators.natural()),
-            ApplicationPermissionValue.Comparators.natural());
+    private final ApplicationPermissionValueTrie permissionsByFeature;
 
     /**
      * Note that we require PermissionsEvaluationService to be serializable.
      */
     private final PermissionsEvaluationService permissionsEvaluationService;
 
+    /**
+     * The ordinals (if any) for which this set is {@link #grants(ApplicationFeatureId, ApplicationPermissionMode)
+     * compiled}; not serialized.
+     */
+    private final transient ApplicationFeatureOrdinals ordinals;
+
+    /**
+     * The permissions (in the order provided).
+     */
+    @Programmatic
+    public List<ApplicationPermissionValue> getValues() {
+        return values;
+    }
 
     //endregion
 
@@ -128,21 +137,32 @@ public ApplicationPermissionValueSet(final Iterable<ApplicationPermissionValue>
         this(permissionValues, null);
     }
     public ApplicationPermissionValueSet(final Iterable<ApplicationPermissionValue> permissionValues, final PermissionsEvaluationService permissionsEvaluationService) {
+        this(permissionValues, permissionsEvaluationService, null);
+    }
+    public ApplicationPermissionValueSet(
+            final Iterable<ApplicationPermissionValue> permissionValues,
+            final PermissionsEvaluationService permissionsEvaluationService,
+            final ApplicationFeatureOrdinals ordinals) {
         this.values = Collections.unmodifiableList(Lists.newArrayList(permissionValues));
-        for (final ApplicationPermissionValue permissionValue : permissionValues) {
-            final ApplicationFeatureId featureId = permissionValue.getFeatureId();
-            permissionsByFeature.put(featureId, permissionValue);
-        }
+        this.permissionsByFeature = new ApplicationPermissionValueTrie(values);
         this.permissionsEvaluationService =
                 permissionsEvaluationService != null
                         ? permissionsEvaluationService
                         : PermissionsEvaluationService.DEFAULT;
+        this.ordinals = ordinals;
+        this.checksUntilCompiled = new AtomicInteger(CHECKS_BEFORE_COMPILING);
     }
     //endregion
 
     //region > grants, evaluate
 
     public static class Evaluation {
+
+        /**
+         * Shared by all evaluations where no permission applies.
+         */
+        public static final Evaluation NOT_GRANTED = new Evaluation(null, false);
+
         private final ApplicationPermissionValue permissionValue;
         private final boolean granted;
 
@@ -160,8 +180,24 @@ public boolean isGranted() {
         }
     }
 
+    /**
+     * If this set has been {@link #isCompiled() compiled} and the feature is a member with an
+     * {@link ApplicationFeatureOrdinals ordinal}, then this is a single bit test; otherwise the permissions are
+     * {@link #evaluate(ApplicationFeatureId, ApplicationPermissionMode) evaluated}.
+     */
     @Programmatic
     public boolean grants(final ApplicationFeatureId featureId, final ApplicationPermissionMode mode) {
+        if(ordinals != null && featureId.getType() == ApplicationFeatureType.MEMBER) {
+            final Compiled compiled = this.compiled;
+            if(compiled != null) {
+                final int ordinal = ordinals.ordinalOf(featureId);
+                if(ordinal >= 0) {
+                    return compiled.grants(ordinal, mode);
+                }
+            } else {
+                compileIfDue();
+            }
+        }
         return evaluate(featureId, mode).isGranted();
     }
 
@@ -169,20 +205,219 @@ public boolean grants(final ApplicationFeatureId featureId, final ApplicationPer
     public Evaluation evaluate(
             final ApplicationFeatureId featureId,
             final ApplicationPermissionMode mode) {
-        final List<ApplicationFeatureId> pathIds = featureId.getPathIds();
-        for (final ApplicationFeatureId pathId : pathIds) {
-            final Collection<ApplicationPermissionValue> permissionValues = permissionsByFeature.get(pathId);
-            final Evaluation evaluation = permissionsEvaluationService.evaluate(featureId, mode, permissionValues);
-            if(evaluation != null) {
-                return evaluation;
+        final Evaluation evaluation = permissionsByFeature.evaluate(featureId, mode, permissionsEvaluationService);
+        return evaluation != null
+                ? evaluation
+                : Evaluation.NOT_GRANTED;
+    }
+
+    //endregion
+
+    //region > evaluateAll
+
+    /**
+     * The {@link ApplicationPermissionValueSet#evaluateAll(Collection, ApplicationPermissionMode...) evaluations} of
+     * a number of features, for one or more modes.
+     */
+    public static class Evaluations {
+
+        private final List<ApplicationFeatureId> featureIds;
+        /**
+         * Indexed by {@link ApplicationPermissionMode#ordinal() mode}, then by feature; <tt>null</tt> for any mode not
+         * evaluated.
+         */
+        private final Evaluation[][] evaluationsByMode;
+
+        private Evaluations(final List<ApplicationFeatureId> featureIds, final Evaluation[][] evaluationsByMode) {
+            this.featureIds = featureIds;
+            this.evaluationsByMode = evaluationsByMode;
+        }
+
+        /**
+         * The features evaluated (in the order provided).
+         */
+        public List<ApplicationFeatureId> getFeatureIds() {
+            return featureIds;
+        }
+
+        public int size() {
+            return featureIds.size();
+        }
+
+        /**
+         * The evaluation of the feature at the index (as per {@link #getFeatureIds()}), for the mode.
+         *
+         * @throws IllegalArgumentException if the mode was not evaluated.
+         */
+        public Evaluation get(final int index, final ApplicationPermissionMode mode) {
+            final Evaluation[] evaluations = evaluationsByMode[mode.ordinal()];
+            if(evaluations == null) {
+                throw new IllegalArgumentException("Mode " + mode + " was not evaluated");
             }
+            return evaluations[index];
+        }
+    }
+
+    /**
+     * Number of features evaluated by each task when {@link #evaluateAll(Collection, ForkJoinPool, ApplicationPermissionMode...) evaluating in parallel}.
+     */
+    private static final int FEATURES_PER_TASK = 1024;
+
+    /**
+     * Equivalent to {@link #evaluate(ApplicationFeatureId, ApplicationPermissionMode) evaluating} each of the
+     * features for each of the modes, but (for the built-in {@link PermissionsEvaluationService policies}) evaluating
+     * the permissions of each package and class only once, rather than once for every feature beneath it.
+     */
+    @Programmatic
+    public Evaluations evaluateAll(
+            final Collection<ApplicationFeatureId> featureIds,
+            final ApplicationPermissionMode... modes) {
+        return evaluateAll(featureIds, null, modes);
+    }
+
+    /**
+     * As {@link #evaluateAll(Collection, ApplicationPermissionMode...)}, but with the features divided between tasks
+     * run in the pool (if any); only worthwhile for very large numbers of features.
+     */
+    @Programmatic
+    public Evaluations evaluateAll(
+            final Collection<ApplicationFeatureId> featureIds,
+            final ForkJoinPool pool,
+            final ApplicationPermissionMode... modes) {
+        final ApplicationFeatureId[] targetIds = featureIds.toArray(new ApplicationFeatureId[featureIds.size()]);
+        final Evaluation[][] evaluationsByMode = new Evaluation[ApplicationPermissionMode.values().length][];
+        for (final ApplicationPermissionMode mode : modes) {
+            final Evaluation[] evaluations = new Evaluation[targetIds.length];
+            if(!ApplicationPermissionValueTrie.canEvaluateAll(permissionsEvaluationService)) {
+                for (int i = 0; i < targetIds.length; i++) {
+                    evaluations[i] = evaluate(targetIds[i], mode);
+                }
+            } else if(pool != null && targetIds.length > FEATURES_PER_TASK) {
+                pool.invoke(new EvaluateAllTask(
+                        targetIds, 0, targetIds.length, mode, evaluations, new ApplicationPermissionValueTrie.Outcomes(true)));
+            } else {
+                permissionsByFeature.evaluateAll(
+                        targetIds, 0, targetIds.length, mode, permissionsEvaluationService, evaluations,
+                        new ApplicationPermissionValueTrie.Outcomes(false));
+            }
+            evaluationsByMode[mode.ordinal()] = evaluations;
+        }
+        return new Evaluations(Collections.unmodifiableList(Arrays.asList(targetIds)), evaluationsByMode);
+    }
+
+    private class EvaluateAllTask extends RecursiveAction {
+
+        private final ApplicationFeatureId[] targetIds;
+        private final int from;
+        private final int to;
+        private final ApplicationPermissionMode mode;
+        private final Evaluation[] evaluations;
+        private final ApplicationPermissionValueTrie.Outcomes outcomes;
+
+        private EvaluateAllTask(
+                final ApplicationFeatureId[] targetIds,
+                final int from,
+                final int to,
+                final ApplicationPermissionMode mode,
+                final Evaluation[] evaluations,
+                final ApplicationPermissionValueTrie.Outcomes outcomes) {
+            this.targetIds = targetIds;
+            this.from = from;
+            this.to = to;
+            this.mode = mode;
+            this.evaluations = evaluations;
+            this.outcomes = outcomes;
+        }
+
+        @Override
+        protected void compute() {
+            if(to - from <= FEATURES_PER_TASK) {
+                permissionsByFeature.evaluateAll(
+                        targetIds, from, to, mode, permissionsEvaluationService, evaluations, outcomes);
+                return;
+            }
+            final int mid = (from + to) >>> 1;
+            invokeAll(
+                    new EvaluateAllTask(targetIds, from, mid, mode, evaluations, outcomes),
+                    new EvaluateAllTask(targetIds, mid, to, mode, evaluations, outcomes));
         }
-        return new Evaluation(null, false);
     }
 
     //endregion
 
+    //region > compile
+
+    /**
+     * The outcome of {@link #evaluate(ApplicationFeatureId, ApplicationPermissionMode) evaluating} every member, for
+     * each mode, as bitsets indexed by member ordinal.
+     */
+    private static class Compiled {
+        private final BitSet viewing;
+        private final BitSet changing;
+
+        private Compiled(final BitSet viewing, final BitSet changing) {
+            this.viewing = viewing;
+            this.changing = changing;
+        }
+
+        private boolean grants(final int ordinal, final ApplicationPermissionMode mode) {
+            return (mode == ApplicationPermissionMode.CHANGING ? changing : viewing).get(ordinal);
+        }
+    }
+
+    /**
+     * The number of member checks after which the set is compiled; compiling evaluates every member of the
+     * application, so is only worthwhile for sets that are checked often (typically those shared, via the
+     * {@link ApplicationPermissionValueSetCache}, by many users).
+     */
+    static final int CHECKS_BEFORE_COMPILING = 256;
+
+    /**
+     * Counts down the member checks until {@link #CHECKS_BEFORE_COMPILING compiled}; not serialized (as for
+     * {@link #ordinals}).
+     */
+    private final transient AtomicInteger checksUntilCompiled;
+
+    private transient volatile Compiled compiled;
+
+    /**
+     * Whether member checks are bit tests; only once (if ever) there have been
+     * {@link #CHECKS_BEFORE_COMPILING sufficient} checks.
+     */
+    @Programmatic
+    public boolean isCompiled() {
+        return compiled != null;
+    }
+
+    /**
+     * Compiles the set if this is the check that reaches the threshold; exactly one caller does so, while any others
+     * continue to evaluate until it has done.
+     */
+    private void compileIfDue() {
+        if(checksUntilCompiled.decrementAndGet() == 0) {
+            compiled = compile(ordinals);
+        }
+    }
+
+    private Compiled compile(final ApplicationFeatureOrdinals ordinals) {
+        final BitSet viewing = new BitSet(ordinals.size());
+        final BitSet changing = new BitSet(ordinals.size());
+        if(!values.isEmpty()) {
+            final List<ApplicationFeatureId> memberIds = Lists.newArrayListWithCapacity(ordinals.size());
+            for (int ordinal = 0; ordinal < ordinals.size(); ordinal++) {
+                memberIds.add(ordinals.memberIdOf(ordinal));
+            }
+            final Evaluations evaluations =
+                    evaluateAll(memberIds, ApplicationPermissionMode.VIEWING, ApplicationPermissionMode.CHANGING);
+            for (int ordinal = 0; ordinal < ordinals.size(); ordinal++) {
+                viewing.set(ordinal, evaluations.get(ordinal, ApplicationPermissionMode.VIEWING).isGranted());
+                changing.set(ordinal, evaluations.get(ordinal, ApplicationPermissionMode.CHANGING).isGranted());
+            }
+        }
+        return new Compiled(viewing, changing);
+    }
 
+    //endregion
 
     //region > equals, hashCode, toString
     @Override
@@ -0,0 +1,172 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.dom.permission;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.isisaddons.module.security.dom.CacheEvictions;
+
+/**
+ * Bounded, time-limited, process-wide cache of {@link ApplicationPermissionValueSet permission set}s, keyed by the
+ * names of the roles they were built from and by the {@link PermissionsEvaluationService evaluation policy}.
+ *
+ * <p>
+ *     Since a user's permissions are exactly those of their roles, all users with the same roles can share the same
+ *     (immutable) permission set, rather than each querying for and holding their own copy.  The set is built at most
+ *     once per combination of roles (concurrent requests for the same combination wait for the first).
+ * </p>
+ *
+ * <p>
+ *     All entries are evicted (through {@link #invalidateAllNowAndAfterCompletion(Object)}) whenever any permission is
+ *     created, changed or deleted, or whenever any role is renamed or deleted; both immediately and again once the
+ *     transaction making the change has completed.  A permission set whose build started before an eviction is not
+ *     cached (though is still returned to the caller that built it).  Any change made by another process is only
+ *     picked up once the entry has expired.
+ * </p>
+ *
+ * <p>
+ *     Disabled (that is, caches nothing) until {@link #configure(long, long) configured}, normally by
+ *     <code>IsisModuleSecurityRealm</code>.  As the cache is process-wide, only one realm may configure it at a time
+ *     (enforced by the realm, see <code>AuthenticationCaches</code>).
+ * </p>
+ */
+public final class ApplicationPermissionValueSetCache {
+
+    private ApplicationPermissionValueSetCache(){}
+
+    private static volatile Cache<String, ApplicationPermissionValueSet> cache;
+
+    /**
+     * Incremented by every eviction, so that a permission set built concurrently (from permissions read before the
+     * eviction) is not cached.
+     */
+    private static final AtomicLong generation = new AtomicLong();
+
+    /**
+     * @param maxSize - maximum number of role combinations to hold; if not positive then the cache is disabled.
+     * @param timeToLiveMillis - how long a permission set may be shared after it was built; if not positive then the cache is disabled.
+     */
+    public static void configure(final long maxSize, final long timeToLiveMillis) {
+        generation.incrementAndGet();
+        if(maxSize <= 0 || timeToLiveMillis <= 0) {
+            cache = null;
+            return;
+        }
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(timeToLiveMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    public static boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * The permission set shared by all users with exactly the specified roles (under the specified policy), obtained
+     * from the supplier only if not already cached (or if the cache is disabled).
+     */
+    public static ApplicationPermissionValueSet get(
+            final Iterable<String> roleNames,
+            final PermissionsEvaluationService permissionsEvaluationService,
+            final Supplier<ApplicationPermissionValueSet> supplier) {
+        final Cache<String, ApplicationPermissionValueSet> cache = ApplicationPermissionValueSetCache.cache;
+        if(cache == null) {
+            return supplier.get();
+        }
+        final String key = keyFor(roleNames, permissionsEvaluationService);
+        final long buildGeneration = generation.get();
+        final ApplicationPermissionValueSet permissionSet;
+        try {
+            permissionSet = cache.get(key, new Callable<ApplicationPermissionValueSet>() {
+                @Override
+                public ApplicationPermissionValueSet call() throws Exception {
+                    return supplier.get();
+                }
+            });
+        } catch (final ExecutionException | UncheckedExecutionException ex) {
+            throw Throwables.propagate(ex.getCause());
+        }
+        if(generation.get() != buildGeneration) {
+            // evicted meanwhile, so may have been built from permissions since changed
+            cache.asMap().remove(key, permissionSet);
+        }
+        return permissionSet;
+    }
+
+    /**
+     * The permission set shared by all users with exactly the specified roles (under the specified policy), or
+     * <tt>null</tt> if not cached (or if the cache is disabled).
+     */
+    public static ApplicationPermissionValueSet getIfPresent(
+            final Iterable<String> roleNames,
+            final PermissionsEvaluationService permissionsEvaluationService) {
+        final Cache<String, ApplicationPermissionValueSet> cache = ApplicationPermissionValueSetCache.cache;
+        return cache != null ? cache.getIfPresent(keyFor(roleNames, permissionsEvaluationService)) : null;
+    }
+
+    /**
+     * The policy (by class) and the role names (sorted), separated by a character that cannot appear in either.
+     */
+    static String keyFor(
+            final Iterable<String> roleNames,
+            final PermissionsEvaluationService permissionsEvaluationService) {
+        final PermissionsEvaluationService policy =
+                permissionsEvaluationService != null
+                        ? permissionsEvaluationService
+                        : PermissionsEvaluationService.DEFAULT;
+        final StringBuilder buf = new StringBuilder(policy.getClass().getName());
+        final Set<String> sortedRoleNames = Sets.newTreeSet(roleNames);
+        for (final String roleName : sortedRoleNames) {
+            buf.append('\u0000').append(roleName);
+        }
+        return buf.toString();
+    }
+
+    public static void invalidateAll() {
+        generation.incrementAndGet();
+        final Cache<String, ApplicationPermissionValueSet> cache = ApplicationPermissionValueSetCache.cache;
+        if(cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * {@link #invalidateAll() Invalidates all} entries now and again once the transaction in which the (changed)
+     * permission or role is enlisted has completed.
+     */
+    public static void invalidateAllNowAndAfterCompletion(final Object permissionOrRole) {
+        CacheEvictions.evictNowAndAfterCompletion(permissionOrRole, INVALIDATE_ALL);
+    }
+
+    private static final Runnable INVALIDATE_ALL = new Runnable() {
+        @Override
+        public void run() {
+            invalidateAll();
+        }
+    };
+
+}
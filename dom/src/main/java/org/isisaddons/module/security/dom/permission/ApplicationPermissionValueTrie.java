@@ -0,0 +1,371 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.dom.permission;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.isisaddons.module.security.dom.feature.ApplicationFeatureId;
+import org.isisaddons.module.security.dom.feature.ApplicationFeatureType;
+
+/**
+ * Index of {@link ApplicationPermissionValue permission}s by feature, as a trie over package name segments, then
+ * class name, then member name.
+ *
+ * <p>
+ *     A feature is evaluated with a single descent, matching each segment in place (without splitting the package
+ *     name), and then, as the descent unwinds, evaluating the permissions of each feature on its path, most specific
+ *     first.  Lookups are therefore proportional to the depth of the feature, and no intermediate
+ *     {@link ApplicationFeatureId}s are created.
+ * </p>
+ *
+ * <p>
+ *     The permissions of each feature are held in their natural order (as required by
+ *     {@link PermissionsEvaluationService}), with any duplicates removed, and also
+ *     in reverse order; the two built-in policies are thereby evaluated without copying or reordering.
+ * </p>
+ */
+class ApplicationPermissionValueTrie implements Serializable {
+
+    private static class Node implements Serializable {
+
+        private final String segment;
+
+        private final List<Node> packages = Lists.newArrayList();
+        private final List<Node> classes = Lists.newArrayList();
+        private final List<Node> members = Lists.newArrayList();
+
+        private SortedSet<ApplicationPermissionValue> valueSet;
+        /**
+         * Populated from {@link #valueSet} once the trie is complete.
+         */
+        private List<ApplicationPermissionValue> values = Collections.emptyList();
+        /**
+         * {@link #values} in reverse, as required by {@link PermissionsEvaluationServiceVetoBeatsAllow}.
+         */
+        private List<ApplicationPermissionValue> reversedValues = Collections.emptyList();
+
+        private Node(final String segment) {
+            this.segment = segment;
+        }
+
+        //region > find, findOrAdd
+
+        /**
+         * The child whose segment equals <tt>str.substring(start, end)</tt>, if any.
+         */
+        private static Node find(final List<Node> children, final String str, final int start, final int end) {
+            final int length = end - start;
+            for (int i = 0; i < children.size(); i++) {
+                final Node child = children.get(i);
+                if(child.segment.length() == length && str.regionMatches(start, child.segment, 0, length)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        private static Node findOrAdd(final List<Node> children, final String segment) {
+            Node child = find(children, segment, 0, segment.length());
+            if(child == null) {
+                child = new Node(segment);
+                children.add(child);
+            }
+            return child;
+        }
+
+        //endregion
+
+        //region > add, freeze, evaluate
+
+        private void add(final ApplicationPermissionValue permissionValue) {
+            if(valueSet == null) {
+                valueSet = Sets.newTreeSet(ApplicationPermissionValue.Comparators.natural());
+            }
+            valueSet.add(permissionValue);
+        }
+
+        private void freeze() {
+            if(valueSet != null) {
+                final ImmutableList<ApplicationPermissionValue> values = ImmutableList.copyOf(valueSet);
+                this.values = values;
+                this.reversedValues = ImmutableList.copyOf(values.reverse());
+                valueSet = null;
+            }
+            for (final Node node : packages) {
+                node.freeze();
+            }
+            for (final Node node : classes) {
+                node.freeze();
+            }
+            for (final Node node : members) {
+                node.freeze();
+            }
+        }
+
+        private ApplicationPermissionValueSet.Evaluation evaluate(
+                final ApplicationFeatureId targetId,
+                final ApplicationPermissionMode mode,
+                final PermissionsEvaluationService permissionsEvaluationService) {
+            if(values.isEmpty()) {
+                return null;
+            }
+            // the built-in policies are evaluated against the precomputed orderings, without allocating
+            final Class<?> policy = permissionsEvaluationService.getClass();
+            if(policy == PermissionsEvaluationServiceAllowBeatsVeto.class) {
+                return ((PermissionsEvaluationServiceAbstract) permissionsEvaluationService)
+                        .evaluateOrdered(targetId, mode, values);
+            }
+            if(policy == PermissionsEvaluationServiceVetoBeatsAllow.class) {
+                return ((PermissionsEvaluationServiceAbstract) permissionsEvaluationService)
+                        .evaluateOrdered(targetId, mode, reversedValues);
+            }
+            return permissionsEvaluationService.evaluate(targetId, mode, values);
+        }
+
+        //endregion
+    }
+
+    private final Node root = new Node("");
+
+    //region > constructor
+
+    ApplicationPermissionValueTrie(final Iterable<ApplicationPermissionValue> permissionValues) {
+        for (final ApplicationPermissionValue permissionValue : permissionValues) {
+            nodeFor(permissionValue.getFeatureId()).add(permissionValue);
+        }
+        root.freeze();
+    }
+
+    private Node nodeFor(final ApplicationFeatureId featureId) {
+        final String packageName = featureId.getPackageName();
+        Node node = root;
+        int start = 0;
+        while(true) {
+            final int end = endOfSegment(packageName, start);
+            node = Node.findOrAdd(node.packages, packageName.substring(start, end));
+            if(end == packageName.length()) {
+                break;
+            }
+            start = end + 1;
+        }
+        if(featureId.getType() == ApplicationFeatureType.PACKAGE) {
+            return node;
+        }
+        node = Node.findOrAdd(node.classes, featureId.getClassName());
+        if(featureId.getType() == ApplicationFeatureType.CLASS) {
+            return node;
+        }
+        return Node.findOrAdd(node.members, featureId.getMemberName());
+    }
+
+    private static int endOfSegment(final String packageName, final int start) {
+        final int end = packageName.indexOf('.', start);
+        return end >= 0 ? end : packageName.length();
+    }
+
+    //endregion
+
+    //region > evaluate
+
+    /**
+     * Evaluates the permissions of the feature and then of each of its parents in turn (as per
+     * {@link ApplicationFeatureId#getPathIds()}), returning the first evaluation (if any).
+     */
+    ApplicationPermissionValueSet.Evaluation evaluate(
+            final ApplicationFeatureId targetId,
+            final ApplicationPermissionMode mode,
+            final PermissionsEvaluationService permissionsEvaluationService) {
+        return evaluatePackage(root, 0, targetId, mode, permissionsEvaluationService);
+    }
+
+    private static ApplicationPermissionValueSet.Evaluation evaluatePackage(
+            final Node parent,
+            final int start,
+            final ApplicationFeatureId targetId,
+            final ApplicationPermissionMode mode,
+            final PermissionsEvaluationService permissionsEvaluationService) {
+        final String packageName = targetId.getPackageName();
+        final int end = endOfSegment(packageName, start);
+        final Node node = Node.find(parent.packages, packageName, start, end);
+        if(node == null) {
+            return null;
+        }
+        final ApplicationPermissionValueSet.Evaluation evaluation =
+                end < packageName.length()
+                    ? evaluatePackage(node, end + 1, targetId, mode, permissionsEvaluationService)
+                    : targetId.getType() != ApplicationFeatureType.PACKAGE
+                        ? evaluateClass(node, targetId, mode, permissionsEvaluationService)
+                        : null;
+        return evaluation != null
+                ? evaluation
+                : node.evaluate(targetId, mode, permissionsEvaluationService);
+    }
+
+    private static ApplicationPermissionValueSet.Evaluation evaluateClass(
+            final Node packageNode,
+            final ApplicationFeatureId targetId,
+            final ApplicationPermissionMode mode,
+            final PermissionsEvaluationService permissionsEvaluationService) {
+        final String className = targetId.getClassName();
+        final Node node = Node.find(packageNode.classes, className, 0, className.length());
+        if(node == null) {
+            return null;
+        }
+        if(targetId.getType() == ApplicationFeatureType.MEMBER) {
+            final String memberName = targetId.getMemberName();
+            final Node memberNode = Node.find(node.members, memberName, 0, memberName.length());
+            if(memberNode != null) {
+                final ApplicationPermissionValueSet.Evaluation evaluation =
+                        memberNode.evaluate(targetId, mode, permissionsEvaluationService);
+                if(evaluation != null) {
+                    return evaluation;
+                }
+            }
+        }
+        return node.evaluate(targetId, mode, permissionsEvaluationService);
+    }
+
+    //endregion
+
+    //region > evaluateAll
+
+    /**
+     * Whether the evaluation of a feature's permissions is the same for every feature beneath it, as is the case for
+     * the two built-in policies (since every permission of a feature is on the path of each of its descendants);
+     * only then can {@link #evaluateAll(ApplicationFeatureId[], int, int, ApplicationPermissionMode, PermissionsEvaluationService, ApplicationPermissionValueSet.Evaluation[], Outcomes) evaluateAll}
+     * be used.
+     */
+    static boolean canEvaluateAll(final PermissionsEvaluationService permissionsEvaluationService) {
+        final Class<?> policy = permissionsEvaluationService.getClass();
+        return policy == PermissionsEvaluationServiceAllowBeatsVeto.class
+                || policy == PermissionsEvaluationServiceVetoBeatsAllow.class;
+    }
+
+    /**
+     * The outcome (for a single mode and policy) of each package and class evaluated so far: its own evaluation,
+     * else that of its parent.
+     */
+    static class Outcomes {
+        private final Map<Node, ApplicationPermissionValueSet.Evaluation> byNode;
+
+        /**
+         * @param concurrent - whether the outcomes are to be shared by concurrent calls.
+         */
+        Outcomes(final boolean concurrent) {
+            this.byNode = concurrent
+                    ? new ConcurrentHashMap<Node, ApplicationPermissionValueSet.Evaluation>()
+                    : new IdentityHashMap<Node, ApplicationPermissionValueSet.Evaluation>();
+        }
+    }
+
+    /**
+     * Evaluates each of <tt>targetIds[from]</tt> to <tt>targetIds[to - 1]</tt> into the corresponding element of
+     * <tt>results</tt>, as {@link #evaluate(ApplicationFeatureId, ApplicationPermissionMode, PermissionsEvaluationService) evaluate}
+     * would (but never returning <tt>null</tt>).
+     *
+     * <p>
+     *     Rather than evaluating the permissions of every package and class on each target's path, the outcome for
+     *     each package and class is evaluated just once and held in the supplied {@link Outcomes}, to be reused by
+     *     all of the targets beneath it; these may be shared by several calls (if concurrent, then they must have
+     *     been created as such) provided that all are for the same mode and policy.
+     * </p>
+     */
+    void evaluateAll(
+            final ApplicationFeatureId[] targetIds,
+            final int from,
+            final int to,
+            final ApplicationPermissionMode mode,
+            final PermissionsEvaluationService permissionsEvaluationService,
+            final ApplicationPermissionValueSet.Evaluation[] results,
+            final Outcomes outcomes) {
+        for (int i = from; i < to; i++) {
+            results[i] = evaluateUsing(targetIds[i], mode, permissionsEvaluationService, outcomes);
+        }
+    }
+
+    private ApplicationPermissionValueSet.Evaluation evaluateUsing(
+            final ApplicationFeatureId targetId,
+            final ApplicationPermissionMode mode,
+            final PermissionsEvaluationService permissionsEvaluationService,
+            final Outcomes outcomes) {
+        ApplicationPermissionValueSet.Evaluation outcome = ApplicationPermissionValueSet.Evaluation.NOT_GRANTED;
+        Node node = root;
+
+        final String packageName = targetId.getPackageName();
+        int start = 0;
+        while(true) {
+            final int end = endOfSegment(packageName, start);
+            node = Node.find(node.packages, packageName, start, end);
+            if(node == null) {
+                return outcome;
+            }
+            outcome = outcomeOf(node, outcome, targetId, mode, permissionsEvaluationService, outcomes);
+            if(end == packageName.length()) {
+                break;
+            }
+            start = end + 1;
+        }
+        if(targetId.getType() == ApplicationFeatureType.PACKAGE) {
+            return outcome;
+        }
+
+        final String className = targetId.getClassName();
+        node = Node.find(node.classes, className, 0, className.length());
+        if(node == null) {
+            return outcome;
+        }
+        outcome = outcomeOf(node, outcome, targetId, mode, permissionsEvaluationService, outcomes);
+        if(targetId.getType() == ApplicationFeatureType.CLASS) {
+            return outcome;
+        }
+
+        // members have no descendants, so are not worth remembering
+        final String memberName = targetId.getMemberName();
+        node = Node.find(node.members, memberName, 0, memberName.length());
+        final ApplicationPermissionValueSet.Evaluation evaluation =
+                node != null ? node.evaluate(targetId, mode, permissionsEvaluationService) : null;
+        return evaluation != null ? evaluation : outcome;
+    }
+
+    private static ApplicationPermissionValueSet.Evaluation outcomeOf(
+            final Node node,
+            final ApplicationPermissionValueSet.Evaluation parentOutcome,
+            final ApplicationFeatureId targetId,
+            final ApplicationPermissionMode mode,
+            final PermissionsEvaluationService permissionsEvaluationService,
+            final Outcomes outcomes) {
+        ApplicationPermissionValueSet.Evaluation outcome = outcomes.byNode.get(node);
+        if(outcome == null) {
+            final ApplicationPermissionValueSet.Evaluation evaluation =
+                    node.evaluate(targetId, mode, permissionsEvaluationService);
+            outcome = evaluation != null ? evaluation : parentOutcome;
+            outcomes.byNode.put(node, outcome);
+        }
+        return outcome;
+    }
+
+    //endregion
+
+}
@@ -16,11 +16,15 @@
  */
 package org.isisaddons.module.security.dom.permission;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import com.google.common.base.Supplier;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
 import org.isisaddons.module.security.SecurityModule;
 import org.isisaddons.module.security.dom.feature.ApplicationFeature;
@@ -131,6 +135,49 @@ private List<ApplicationPermission> findByUser(final String username) {
     }
     //endregion
 
+    //region > findByRoleNames, permissionSetForRoleNames (programmatic)
+    @Programmatic
+    public List<ApplicationPermission> findByRoleNames(final Collection<String> roleNames) {
+        if(roleNames.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return container.allMatches(
+                new QueryDefault<>(
+                        ApplicationPermission.class, "findByRoleNames",
+                        "roleNames", roleNames));
+    }
+
+    /**
+     * The permissions of the roles with the specified names, as shared by all users with exactly those roles (if the
+     * {@link ApplicationPermissionValueSetCache permission set cache} is configured).
+     */
+    @Programmatic
+    public ApplicationPermissionValueSet permissionSetForRoleNames(final Collection<String> roleNames) {
+        return ApplicationPermissionValueSetCache.get(
+                roleNames,
+                permissionsEvaluationService,
+                new Supplier<ApplicationPermissionValueSet>() {
+                    @Override
+                    public ApplicationPermissionValueSet get() {
+                        return asPermissionSet(findByRoleNames(roleNames));
+                    }
+                });
+    }
+
+    /**
+     * The permissions as a set, evaluated according to the {@link PermissionsEvaluationService} and compiled (once
+     * checked often enough) against the {@link ApplicationFeatures#getOrdinals() ordinals} of the application's
+     * members.
+     */
+    @Programmatic
+    public ApplicationPermissionValueSet asPermissionSet(final List<ApplicationPermission> permissions) {
+        return new ApplicationPermissionValueSet(
+                Iterables.transform(permissions, ApplicationPermission.Functions.AS_VALUE),
+                permissionsEvaluationService,
+                applicationFeatures != null ? applicationFeatures.getOrdinals() : null);
+    }
+    //endregion
+
     //region > findByUserAndPermissionValue (programmatic)
     /**
      * Uses the {@link org.apache.isis.applib.services.queryresultscache.QueryResultsCache} in order to support
@@ -229,6 +276,7 @@ public ApplicationPermission newPermissionNoCheck(
         permission.setFeatureType(featureType);
         permission.setFeatureFqn(featureFqn);
         container.persistIfNotAlready(permission);
+        ApplicationPermissionValueSetCache.invalidateAllNowAndAfterCompletion(permission);
         return permission;
     }
 
@@ -257,6 +305,7 @@ public ApplicationPermission newPermission(
         permission.setFeatureType(featureType);
         permission.setFeatureFqn(featureFqn);
         container.persistIfNotAlready(permission);
+        ApplicationPermissionValueSetCache.invalidateAllNowAndAfterCompletion(permission);
 
         return permission;
     }
@@ -297,5 +346,13 @@ public List<ApplicationPermission> allPermissions() {
      */
     @Inject
     ApplicationPermissionFactory applicationPermissionFactory;
+
+    /**
+     * Optional service, if configured then is used to evaluate permissions within
+     * {@link ApplicationPermissionValueSet#evaluate(ApplicationFeatureId, ApplicationPermissionMode)},
+     * else will fallback to a {@link PermissionsEvaluationService#DEFAULT default} implementation.
+     */
+    @Inject
+    PermissionsEvaluationService permissionsEvaluationService;
     //endregion
 }
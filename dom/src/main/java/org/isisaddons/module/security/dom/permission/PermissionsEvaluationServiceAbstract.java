@@ -17,6 +17,7 @@
 package org.isisaddons.module.security.dom.permission;
 
 import java.util.Collection;
+import java.util.List;
 import org.isisaddons.module.security.dom.feature.ApplicationFeatureId;
 import org.apache.isis.applib.annotation.Programmatic;
 
@@ -32,10 +33,32 @@ public ApplicationPermissionValueSet.Evaluation evaluate(
         final Iterable<ApplicationPermissionValue> ordered = ordered(permissionValues);
 
         for (final ApplicationPermissionValue permissionValue : ordered) {
-            if(permissionValue.implies(targetMemberId, mode)) {
-                return new ApplicationPermissionValueSet.Evaluation(permissionValue, true);
-            } else if(permissionValue.refutes(targetMemberId, mode)) {
-                return new ApplicationPermissionValueSet.Evaluation(permissionValue, false);
+            if(permissionValue.implies(targetMemberId, mode) || permissionValue.refutes(targetMemberId, mode)) {
+                return permissionValue.getEvaluation();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * As {@link #evaluate(ApplicationFeatureId, ApplicationPermissionMode, Collection)}, but for permission values
+     * that are already {@link #ordered(Collection) ordered} and held in a random access list; does not allocate.
+     *
+     * <p>
+     *     Used by {@link ApplicationPermissionValueSet}, which holds the permissions of each feature in both the
+     *     orders required by the {@link PermissionsEvaluationServiceAllowBeatsVeto allow beats veto} and
+     *     {@link PermissionsEvaluationServiceVetoBeatsAllow veto beats allow} policies.
+     * </p>
+     */
+    ApplicationPermissionValueSet.Evaluation evaluateOrdered(
+            final ApplicationFeatureId targetMemberId,
+            final ApplicationPermissionMode mode,
+            final List<ApplicationPermissionValue> orderedPermissionValues) {
+
+        for (int i = 0; i < orderedPermissionValues.size(); i++) {
+            final ApplicationPermissionValue permissionValue = orderedPermissionValues.get(i);
+            if(permissionValue.implies(targetMemberId, mode) || permissionValue.refutes(targetMemberId, mode)) {
+                return permissionValue.getEvaluation();
             }
         }
         return null;
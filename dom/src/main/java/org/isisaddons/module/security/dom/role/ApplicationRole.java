@@ -23,8 +23,10 @@
 import javax.jdo.annotations.IdentityType;
 import javax.jdo.annotations.InheritanceStrategy;
 import com.google.common.base.Function;
+import com.google.common.base.Objects;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
 import org.isisaddons.module.security.SecurityModule;
 import org.isisaddons.module.security.dom.feature.ApplicationFeature;
 import org.isisaddons.module.security.dom.feature.ApplicationFeatureType;
@@ -33,10 +35,12 @@
 import org.isisaddons.module.security.dom.permission.ApplicationPermission;
 import org.isisaddons.module.security.dom.permission.ApplicationPermissionMode;
 import org.isisaddons.module.security.dom.permission.ApplicationPermissionRule;
+import org.isisaddons.module.security.dom.permission.ApplicationPermissionValueSetCache;
 import org.isisaddons.module.security.dom.permission.ApplicationPermissions;
 import org.isisaddons.module.security.dom.user.ApplicationUser;
 import org.isisaddons.module.security.dom.user.ApplicationUsers;
 import org.isisaddons.module.security.seed.scripts.IsisModuleSecurityAdminRoleAndPermissions;
+import org.isisaddons.module.security.shiro.AuthenticationCaches;
 import org.apache.isis.applib.DomainObjectContainer;
 import org.apache.isis.applib.Identifier;
 import org.apache.isis.applib.annotation.Action;
@@ -193,6 +197,9 @@ public ApplicationRole updateName(
             @Parameter(maxLength = MAX_LENGTH_NAME) @ParameterLayout(named="Name", typicalLength = TYPICAL_LENGTH_NAME)
             final String name) {
         setName(name);
+        // cached accounts hold the names of their roles, and cached permission sets are keyed by them
+        invalidateCachedAccountsOfUsers();
+        ApplicationPermissionValueSetCache.invalidateAllNowAndAfterCompletion(this);
         return this;
     }
 
@@ -618,6 +625,7 @@ public ApplicationRole removePermission(
             final String featureFqn) {
         final ApplicationPermission permission = applicationPermissions.findByRoleAndRuleAndFeature(this, rule, type, featureFqn);
         if(permission != null) {
+            ApplicationPermissionValueSetCache.invalidateAllNowAndAfterCompletion(permission);
             container.removeIfNotAlready(permission);
         }
         return this;
@@ -781,7 +789,11 @@ public List<ApplicationRole> delete(
             @Parameter(optionality = Optionality.OPTIONAL)
             @ParameterLayout(named="Are you sure?")
             final Boolean areYouSure) {
+        // so that the realm does not authenticate against the role
+        invalidateCachedAccountsOfUsers();
         getUsers().clear();
+        // whether or not the role has any permissions, cached permission sets are keyed by role name
+        ApplicationPermissionValueSetCache.invalidateAllNowAndAfterCompletion(this);
         final List<ApplicationPermission> permissions = getPermissions();
         for (final ApplicationPermission permission : permissions) {
             permission.delete(areYouSure);
@@ -803,6 +815,12 @@ public String validateDelete(final Boolean areYouSure) {
     static boolean not(final Boolean areYouSure) {
         return areYouSure == null || !areYouSure;
     }
+
+    private void invalidateCachedAccountsOfUsers() {
+        for (final ApplicationUser user : getUsers()) {
+            AuthenticationCaches.invalidateNowAndAfterCompletion(this, user.getUsername());
+        }
+    }
     //endregion
 
     //region > isAdminRole (programmatic)
@@ -828,26 +846,28 @@ public String apply(final ApplicationRole input) {
     //endregion
 
     //region > equals, hashCode, compareTo, toString
-    private final static String propertyNames = "name";
+    private static final Ordering<String> NAME_ORDER = Ordering.<String>natural().nullsFirst();
 
     @Override
     public int compareTo(final ApplicationRole o) {
-        return ObjectContracts.compare(this, o, propertyNames);
+        return NAME_ORDER.compare(getName(), o.getName());
     }
 
     @Override
     public boolean equals(final Object obj) {
-        return ObjectContracts.equals(this, obj, propertyNames);
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        return Objects.equal(getName(), ((ApplicationRole) obj).getName());
     }
 
     @Override
     public int hashCode() {
-        return ObjectContracts.hashCode(this, propertyNames);
+        return getName() != null ? getName().hashCode() : 0;
     }
 
     @Override
     public String toString() {
-        return ObjectContracts.toString(this, propertyNames);
+        return ObjectContracts.toString(this, "name");
     }
 
     //endregion
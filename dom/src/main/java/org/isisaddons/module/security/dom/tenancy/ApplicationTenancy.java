@@ -24,6 +24,7 @@
 import javax.jdo.annotations.InheritanceStrategy;
 import javax.jdo.annotations.VersionStrategy;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
 import org.isisaddons.module.security.SecurityModule;
 import org.isisaddons.module.security.dom.user.ApplicationUser;
 import org.isisaddons.module.security.dom.user.ApplicationUsers;
@@ -525,6 +526,8 @@ static boolean not(final Boolean areYouSure) {
     //region > compareTo
 
 
+    private static final Ordering<String> PATH_ORDER = Ordering.<String>natural().nullsFirst();
+
     @Override
     public String toString() {
         return ObjectContracts.toString(this, "path,name");
@@ -532,7 +535,7 @@ public String toString() {
 
     @Override
     public int compareTo(final ApplicationTenancy o) {
-        return ObjectContracts.compare(this, o, "path");
+        return PATH_ORDER.compare(getPath(), o.getPath());
     }
     //endregion
 
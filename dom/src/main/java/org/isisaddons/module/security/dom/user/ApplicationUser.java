@@ -16,28 +16,30 @@
  */
 package org.isisaddons.module.security.dom.user;
 
+import java.sql.Timestamp;
 import java.util.List;
-import java.util.Objects;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import javax.jdo.annotations.IdGeneratorStrategy;
 import javax.jdo.annotations.IdentityType;
 import javax.jdo.annotations.InheritanceStrategy;
 import javax.jdo.annotations.VersionStrategy;
+import com.google.common.base.Objects;
 import com.google.common.base.Strings;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 import org.isisaddons.module.security.SecurityModule;
 import org.isisaddons.module.security.dom.password.PasswordEncryptionService;
-import org.isisaddons.module.security.dom.permission.ApplicationPermission;
 import org.isisaddons.module.security.dom.permission.ApplicationPermissionValueSet;
 import org.isisaddons.module.security.dom.permission.ApplicationPermissions;
-import org.isisaddons.module.security.dom.permission.PermissionsEvaluationService;
 import org.isisaddons.module.security.dom.role.ApplicationRole;
 import org.isisaddons.module.security.dom.role.ApplicationRoles;
 import org.isisaddons.module.security.dom.tenancy.ApplicationTenancy;
 import org.isisaddons.module.security.seed.scripts.IsisModuleSecurityAdminRoleAndPermissions;
 import org.isisaddons.module.security.seed.scripts.IsisModuleSecurityAdminUser;
+import org.isisaddons.module.security.shiro.AuthenticationCaches;
 import org.apache.isis.applib.DomainObjectContainer;
 import org.apache.isis.applib.Identifier;
 import org.apache.isis.applib.annotation.Action;
@@ -260,7 +262,13 @@ public ApplicationUser updateUsername(
             @Parameter(maxLength = MAX_LENGTH_USERNAME)
             @ParameterLayout(named="Username")
             final String username) {
+        final ApplicationUserActivity activity = getActivity();
+        invalidateCachedAccount();
         setUsername(username);
+        invalidateCachedAccount();
+        if(activity != null) {
+            activity.setUsername(username);
+        }
         return this;
     }
 
@@ -709,6 +717,7 @@ public UpdateAccountTypeDomainEvent(final ApplicationUser source, final Identifi
     public ApplicationUser updateAccountType(
             final AccountType accountType) {
         setAccountType(accountType);
+        invalidateCachedAccount();
         return this;
     }
     public String disableUpdateAccountType(final AccountType accountType) {
@@ -759,6 +768,91 @@ public void setStatus(final ApplicationUserStatus status) {
 
     //endregion
 
+    //region > lastLoginAt (derived property)
+
+    public static class LastLoginAtDomainEvent extends PropertyDomainEvent<Timestamp> {
+        public LastLoginAtDomainEvent(final ApplicationUser source, final Identifier identifier) {
+            super(source, identifier);
+        }
+        public LastLoginAtDomainEvent(final ApplicationUser source, final Identifier identifier, final Timestamp oldValue, final Timestamp newValue) {
+            super(source, identifier, oldValue, newValue);
+        }
+    }
+
+    /**
+     * When the user last successfully logged in, if known.
+     *
+     * <p>
+     *     Only maintained if the {@link org.isisaddons.module.security.shiro.IsisModuleSecurityRealm} is configured to
+     *     track user activity; written in the background (to the user's {@link ApplicationUserActivity activity}
+     *     rather than to the user itself), so may lag slightly behind.
+     * </p>
+     *
+     * <p>
+     *     Not shown in tables, as each row would require its own query; to show the activity of many users, use
+     *     {@link ApplicationUsers#findActivitiesByUsernames(java.util.Collection)}.
+     * </p>
+     */
+    @javax.jdo.annotations.NotPersistent
+    @Property(
+            domainEvent = LastLoginAtDomainEvent.class,
+            editing = Editing.DISABLED
+    )
+    @PropertyLayout(
+            hidden=Where.ALL_TABLES
+    )
+    @MemberOrder(name="Status", sequence = "5")
+    public Timestamp getLastLoginAt() {
+        final ApplicationUserActivity activity = getActivity();
+        return activity != null ? activity.getLastLoginAt() : null;
+    }
+
+    //endregion
+
+    //region > lastActivityAt (derived property)
+
+    public static class LastActivityAtDomainEvent extends PropertyDomainEvent<Timestamp> {
+        public LastActivityAtDomainEvent(final ApplicationUser source, final Identifier identifier) {
+            super(source, identifier);
+        }
+        public LastActivityAtDomainEvent(final ApplicationUser source, final Identifier identifier, final Timestamp oldValue, final Timestamp newValue) {
+            super(source, identifier, oldValue, newValue);
+        }
+    }
+
+    /**
+     * When the user was last active (logged in, or was authorized to access some object or member), if known.
+     *
+     * <p>
+     *     As for {@link #getLastLoginAt()}, only maintained if configured, may lag slightly behind, and is not shown
+     *     in tables.
+     * </p>
+     */
+    @javax.jdo.annotations.NotPersistent
+    @Property(
+            domainEvent = LastActivityAtDomainEvent.class,
+            editing = Editing.DISABLED
+    )
+    @PropertyLayout(
+            hidden=Where.ALL_TABLES
+    )
+    @MemberOrder(name="Status", sequence = "6")
+    public Timestamp getLastActivityAt() {
+        final ApplicationUserActivity activity = getActivity();
+        return activity != null ? activity.getLastActivityAt() : null;
+    }
+
+    //endregion
+
+    //region > activity (programmatic)
+
+    @Programmatic
+    public ApplicationUserActivity getActivity() {
+        return applicationUsers.findActivityByUsername(getUsername());
+    }
+
+    //endregion
+
     //region > unlock (action)
 
     public static class UnlockDomainEvent extends ActionDomainEvent {
@@ -775,6 +869,7 @@ public UnlockDomainEvent(final ApplicationUser source, final Identifier identifi
     @MemberOrder(name = "Status", sequence = "1")
     public ApplicationUser unlock() {
         setStatus(ApplicationUserStatus.ENABLED);
+        invalidateCachedAccount();
         return this;
     }
     public String disableUnlock() {
@@ -799,6 +894,7 @@ public LockDomainEvent(final ApplicationUser source, final Identifier identifier
     @MemberOrder(name = "Status", sequence = "2")
     public ApplicationUser lock() {
         setStatus(ApplicationUserStatus.DISABLED);
+        invalidateCachedAccount();
         return this;
     }
     public String disableLock() {
@@ -932,6 +1028,7 @@ public void updatePassword(final String password) {
         }
         final String encryptedPassword = passwordEncryptionService.encrypt(password);
         setEncryptedPassword(encryptedPassword);
+        invalidateCachedAccount();
     }
 
     //endregion
@@ -984,7 +1081,7 @@ boolean match(final Password newPassword, final Password newPasswordRepeat) {
         if (newPassword == null || newPasswordRepeat == null) {
             return false;
         }
-        return Objects.equals(newPassword.getPassword(), newPasswordRepeat.getPassword());
+        return Objects.equal(newPassword.getPassword(), newPasswordRepeat.getPassword());
     }
 
     //endregion
@@ -1025,11 +1122,13 @@ public void setRoles(final SortedSet<ApplicationRole> roles) {
     // (in integration tests) is ambiguous.
     public void addToRoles(final ApplicationRole applicationRole) {
         getRoles().add(applicationRole);
+        invalidateCachedAccount();
     }
     // necessary only because otherwise call to getRoles() through wrapped object
     // (in integration tests) is ambiguous.
     public void removeFromRoles(final ApplicationRole applicationRole) {
         getRoles().remove(applicationRole);
+        invalidateCachedAccount();
     }
     //endregion
 
@@ -1127,8 +1226,13 @@ public List<ApplicationUser> delete(
             @Parameter(optionality = Optionality.OPTIONAL)
             @ParameterLayout(named="Are you sure?")
             final Boolean areYouSure) {
+        final ApplicationUserActivity activity = getActivity();
+        if(activity != null) {
+            container.removeIfNotAlready(activity);
+        }
         container.removeIfNotAlready(this);
         container.flush();
+        invalidateCachedAccount();
         return applicationUsers.allUsers();
     }
 
@@ -1157,11 +1261,10 @@ public ApplicationPermissionValueSet getPermissionSet() {
         if(cachedPermissionSet != null) {
             return cachedPermissionSet;
         }
-        final List<ApplicationPermission> permissions = applicationPermissions.findByUser(this);
-        return cachedPermissionSet =
-                new ApplicationPermissionValueSet(
-                        Iterables.transform(permissions, ApplicationPermission.Functions.AS_VALUE),
-                        permissionsEvaluationService);
+        // shared with all other users with the same roles (if so configured); the permissions are looked up by the
+        // same role names as the set is cached under
+        return cachedPermissionSet = applicationPermissions.permissionSetForRoleNames(
+                Lists.newArrayList(Iterables.transform(getRoles(), ApplicationRole.Functions.GET_NAME)));
     }
     //endregion
 
@@ -1180,7 +1283,7 @@ boolean isForSelfOrRunAsAdministrator() {
 
     boolean isForSelf() {
         final String currentUserName = container.getUser().getName();
-        return Objects.equals(getUsername(), currentUserName);
+        return Objects.equal(getUsername(), currentUserName);
     }
     boolean isRunAsAdministrator() {
         final UserMemento currentUser = container.getUser();
@@ -1196,29 +1299,39 @@ boolean isRunAsAdministrator() {
         }
         return false;
     }
+
+    /**
+     * So that the {@link org.isisaddons.module.security.shiro.IsisModuleSecurityRealm} does not authenticate against
+     * stale information.
+     */
+    private void invalidateCachedAccount() {
+        AuthenticationCaches.invalidateNowAndAfterCompletion(this, getUsername());
+    }
     //endregion
 
     //region > equals, hashCode, compareTo, toString
-    private final static String propertyNames = "username";
+    private static final Ordering<String> USERNAME_ORDER = Ordering.<String>natural().nullsFirst();
 
     @Override
     public int compareTo(final ApplicationUser o) {
-        return ObjectContracts.compare(this, o, propertyNames);
+        return USERNAME_ORDER.compare(getUsername(), o.getUsername());
     }
 
     @Override
     public boolean equals(final Object obj) {
-        return ObjectContracts.equals(this, obj, propertyNames);
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        return Objects.equal(getUsername(), ((ApplicationUser) obj).getUsername());
     }
 
     @Override
     public int hashCode() {
-        return ObjectContracts.hashCode(this, propertyNames);
+        return getUsername() != null ? getUsername().hashCode() : 0;
     }
 
     @Override
     public String toString() {
-        return ObjectContracts.toString(this, propertyNames);
+        return ObjectContracts.toString(this, "username");
     }
 
     //endregion
@@ -1234,14 +1347,5 @@ public String toString() {
     PasswordEncryptionService passwordEncryptionService;
     @javax.inject.Inject
     DomainObjectContainer container;
-
-    /**
-     * Optional service, if configured then is used to evaluate permissions within
-     * {@link org.isisaddons.module.security.dom.permission.ApplicationPermissionValueSet#evaluate(org.isisaddons.module.security.dom.feature.ApplicationFeatureId, org.isisaddons.module.security.dom.permission.ApplicationPermissionMode)},
-     * else will fallback to a {@link org.isisaddons.module.security.dom.permission.PermissionsEvaluationService#DEFAULT default}
-     * implementation.
-     */
-    @javax.inject.Inject
-    PermissionsEvaluationService permissionsEvaluationService;
     //endregion
 }
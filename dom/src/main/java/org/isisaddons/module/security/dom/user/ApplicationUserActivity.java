@@ -0,0 +1,147 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.dom.user;
+
+import java.sql.Timestamp;
+import javax.jdo.annotations.IdGeneratorStrategy;
+import javax.jdo.annotations.IdentityType;
+import javax.jdo.annotations.InheritanceStrategy;
+import org.apache.isis.applib.annotation.DomainObject;
+import org.apache.isis.applib.annotation.Editing;
+import org.apache.isis.applib.annotation.MemberOrder;
+import org.apache.isis.applib.annotation.Programmatic;
+import org.apache.isis.applib.annotation.Property;
+import org.apache.isis.applib.annotation.Title;
+
+/**
+ * The last login and last activity of an {@link ApplicationUser}, as tracked by the
+ * {@link org.isisaddons.module.security.shiro.IsisModuleSecurityRealm} (if configured to do so).
+ *
+ * <p>
+ *     Held separately from the user (and, unlike the user, not versioned), so that these frequent background writes
+ *     neither load the user nor conflict with (or fail because of) concurrent changes to it.
+ * </p>
+ */
+@javax.jdo.annotations.PersistenceCapable(
+        identityType = IdentityType.DATASTORE,
+        schema = "isissecurity",
+        table = "ApplicationUserActivity")
+@javax.jdo.annotations.Inheritance(
+        strategy = InheritanceStrategy.NEW_TABLE)
+@javax.jdo.annotations.DatastoreIdentity(
+        strategy = IdGeneratorStrategy.NATIVE, column = "id")
+@javax.jdo.annotations.Uniques({
+        @javax.jdo.annotations.Unique(
+                name = "ApplicationUserActivity_username_UNQ", members = { "username" })
+})
+@javax.jdo.annotations.Queries( {
+        @javax.jdo.annotations.Query(
+                name = "findByUsername", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.isisaddons.module.security.dom.user.ApplicationUserActivity "
+                        + "WHERE username == :username"),
+        @javax.jdo.annotations.Query(
+                name = "findByUsernames", language = "JDOQL",
+                value = "SELECT "
+                        + "FROM org.isisaddons.module.security.dom.user.ApplicationUserActivity "
+                        + "WHERE :usernames.contains(username)")
+})
+@DomainObject(
+        objectType = "isissecurity.ApplicationUserActivity"
+)
+public class ApplicationUserActivity {
+
+    //region > username (property)
+
+    private String username;
+
+    @javax.jdo.annotations.Column(allowsNull="false", length = ApplicationUser.MAX_LENGTH_USERNAME)
+    @Title
+    @Property(
+            editing = Editing.DISABLED
+    )
+    @MemberOrder(sequence = "1")
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(final String username) {
+        this.username = username;
+    }
+
+    //endregion
+
+    //region > lastLoginAt (property)
+
+    private Timestamp lastLoginAt;
+
+    @javax.jdo.annotations.Column(allowsNull="true")
+    @Property(
+            editing = Editing.DISABLED
+    )
+    @MemberOrder(sequence = "2")
+    public Timestamp getLastLoginAt() {
+        return lastLoginAt;
+    }
+
+    public void setLastLoginAt(final Timestamp lastLoginAt) {
+        this.lastLoginAt = lastLoginAt;
+    }
+
+    //endregion
+
+    //region > lastActivityAt (property)
+
+    private Timestamp lastActivityAt;
+
+    @javax.jdo.annotations.Column(allowsNull="true")
+    @Property(
+            editing = Editing.DISABLED
+    )
+    @MemberOrder(sequence = "3")
+    public Timestamp getLastActivityAt() {
+        return lastActivityAt;
+    }
+
+    public void setLastActivityAt(final Timestamp lastActivityAt) {
+        this.lastActivityAt = lastActivityAt;
+    }
+
+    //endregion
+
+    //region > merge (programmatic)
+
+    /**
+     * Advances the timestamps to those provided (as millis, 0 if none), if later.
+     */
+    @Programmatic
+    public void merge(final long loginAt, final long activityAt) {
+        if(loginAt > millisOf(getLastLoginAt())) {
+            setLastLoginAt(new Timestamp(loginAt));
+        }
+        if(activityAt > millisOf(getLastActivityAt())) {
+            setLastActivityAt(new Timestamp(activityAt));
+        }
+    }
+
+    private static long millisOf(final Timestamp timestamp) {
+        return timestamp != null ? timestamp.getTime() : 0;
+    }
+
+    //endregion
+
+}
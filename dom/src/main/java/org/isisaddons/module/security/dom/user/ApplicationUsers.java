@@ -16,6 +16,7 @@
  */
 package org.isisaddons.module.security.dom.user;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Callable;
 
@@ -39,11 +40,13 @@
 import org.apache.isis.applib.services.queryresultscache.QueryResultsCache;
 import org.apache.isis.applib.value.Password;
 
+import org.apache.shiro.authc.AuthenticationException;
 import org.isisaddons.module.security.SecurityModule;
 import org.isisaddons.module.security.dom.password.PasswordEncryptionService;
 import org.isisaddons.module.security.dom.role.ApplicationRole;
 import org.isisaddons.module.security.dom.role.ApplicationRoles;
 import org.isisaddons.module.security.seed.scripts.IsisModuleSecurityRegularUserRoleAndPermissions;
+import org.isisaddons.module.security.shiro.AuthenticationCaches;
 import org.isisaddons.module.security.shiro.IsisModuleSecurityRealm;
 import org.isisaddons.module.security.shiro.ShiroUtils;
 
@@ -120,12 +123,25 @@ public void init() {
      * multiple lookups from <code>org.isisaddons.module.security.app.user.UserPermissionViewModel</code>.
      *
      * <p>
-     *     If the user does not exist, it will be automatically created.
+     *     If the user does not exist, it will be automatically created, as a (disabled) delegated user with the
+     *     {@link IsisModuleSecurityRealm#setProvisionedDelegateUserRoleName(String) initial role configured for the realm}
+     *     (if any).
      * </p>
      */
     @Programmatic
     public ApplicationUser findOrCreateUserByUsername(
             final String username) {
+        return findOrCreateUserByUsername(username, provisionedDelegateUserRoleName());
+    }
+
+    /**
+     * As {@link #findOrCreateUserByUsername(String)}, but if the user does not exist then it will be created with the
+     * {@link #findProvisionedDelegateUserRole(String) role of the specified name} (if any).
+     */
+    @Programmatic
+    public ApplicationUser findOrCreateUserByUsername(
+            final String username,
+            final String initialRoleName) {
         return queryResultsCache.execute(new Callable<ApplicationUser>() {
             @Override
             public ApplicationUser call() throws Exception {
@@ -133,9 +149,31 @@ public ApplicationUser call() throws Exception {
                 if (applicationUser != null) {
                     return applicationUser;
                 }
-                return newDelegateUser(username, null, null);
+                return newDelegateUser(username, findProvisionedDelegateUserRole(initialRoleName), null);
             }
-        }, ApplicationUsers.class, "findOrCreateUserByUsername", username );
+        }, ApplicationUsers.class, "findOrCreateUserByUsername", username, initialRoleName );
+    }
+
+    /**
+     * The initial role of a delegated user that is {@link #findOrCreateUserByUsername(String, String) automatically
+     * created}: the role of the specified name, if there is one; otherwise (or if no name is specified) none.
+     */
+    @Programmatic
+    public ApplicationRole findProvisionedDelegateUserRole(final String initialRoleName) {
+        return initialRoleName != null
+                ? applicationRoles.findRoleByName(initialRoleName)
+                : null;
+    }
+
+    private static String provisionedDelegateUserRoleName() {
+        final IsisModuleSecurityRealm realm;
+        try {
+            realm = ShiroUtils.getIsisModuleSecurityRealm();
+        } catch(final AuthenticationException ex) {
+            // no security manager
+            return null;
+        }
+        return realm != null ? realm.getProvisionedDelegateUserRoleName() : null;
     }
 
     //endregion
@@ -167,6 +205,40 @@ public ApplicationUser findUserByUsername(
 
     //endregion
 
+    //region > findActivityByUsername, findActivitiesByUsernames, newActivity (programmatic)
+
+    @Programmatic
+    public ApplicationUserActivity findActivityByUsername(
+            final String username) {
+        return queryResultsCache.execute(new Callable<ApplicationUserActivity>() {
+            @Override
+            public ApplicationUserActivity call() throws Exception {
+                return uniqueMatch(new QueryDefault<>(
+                        ApplicationUserActivity.class,
+                        "findByUsername", "username", username));
+            }
+        }, ApplicationUsers.class, "findActivityByUsername", username );
+    }
+
+    @Programmatic
+    public List<ApplicationUserActivity> findActivitiesByUsernames(
+            final Collection<String> usernames) {
+        return allMatches(new QueryDefault<>(
+                ApplicationUserActivity.class,
+                "findByUsernames", "usernames", usernames));
+    }
+
+    @Programmatic
+    public ApplicationUserActivity newActivity(
+            final String username) {
+        final ApplicationUserActivity activity = newTransientInstance(ApplicationUserActivity.class);
+        activity.setUsername(username);
+        persist(activity);
+        return activity;
+    }
+
+    //endregion
+
     //region > findUserByEmail (programmatic)
 
     @Programmatic
@@ -237,6 +309,7 @@ public ApplicationUser newDelegateUser(
             user.addRole(initialRole);
         }
         persistIfNotAlready(user);
+        AuthenticationCaches.invalidateNowAndAfterCompletion(user, username);
         return user;
     }
 
@@ -305,6 +378,7 @@ public ApplicationUser newLocalUser(
             user.updateEmailAddress(emailAddress);
         }
         persistIfNotAlready(user);
+        AuthenticationCaches.invalidateNowAndAfterCompletion(user, username);
         return user;
     }
 
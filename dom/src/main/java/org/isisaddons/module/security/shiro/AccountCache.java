@@ -0,0 +1,118 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Bounded, time-limited cache of {@link AccountRecord account}s, keyed by the username used to log in.
+ *
+ * <p>
+ *     Used by {@link IsisModuleSecurityRealm} so that repeat logins do not need to look up the user.  Only the
+ *     account is held; the user's permissions are obtained separately (by the names of their roles, normally from the
+ *     {@link org.isisaddons.module.security.dom.permission.ApplicationPermissionValueSetCache permission set cache}),
+ *     so changes to the permissions of a role are not masked by this cache.
+ * </p>
+ *
+ * <p>
+ *     Entries are evicted (through {@link AuthenticationCaches#invalidate(String)}) whenever the user's status,
+ *     password, account type or roles are changed, or one of their roles is renamed or deleted; both immediately and again once
+ *     the transaction making the change has completed.  So that a lookup that read the previous state (concurrently
+ *     with the change) does not re-cache it, an account is only {@link #put(String, AccountRecord, long) put} if there
+ *     has been no eviction since the lookup started.
+ * </p>
+ *
+ * <p>
+ *     Disabled (that is, caches nothing) until {@link #configure(long, long) configured}.
+ * </p>
+ */
+class AccountCache {
+
+    private volatile Cache<String, AccountRecord> cache;
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * @param maxSize - maximum number of accounts to hold; if not positive then the cache is disabled.
+     * @param timeToLiveMillis - how long an account may be held after it was looked up; if not positive then the cache is disabled.
+     */
+    void configure(final long maxSize, final long timeToLiveMillis) {
+        generation.incrementAndGet();
+        if(maxSize <= 0 || timeToLiveMillis <= 0) {
+            cache = null;
+            return;
+        }
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(timeToLiveMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * The cached account, or <tt>null</tt> if none (or if disabled).
+     */
+    AccountRecord get(final String username) {
+        final Cache<String, AccountRecord> cache = this.cache;
+        return cache != null && username != null ? cache.getIfPresent(username) : null;
+    }
+
+    /**
+     * To be obtained before looking up an account, and then passed to {@link #put(String, AccountRecord, long)}.
+     */
+    long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Caches the account, unless there has been any eviction since the specified {@link #generation() generation}
+     * was obtained.
+     */
+    void put(final String username, final AccountRecord account, final long lookupGeneration) {
+        final Cache<String, AccountRecord> cache = this.cache;
+        if(cache == null || username == null || account == null) {
+            return;
+        }
+        cache.put(username, account);
+        if(generation.get() != lookupGeneration) {
+            // evicted concurrently; the account may be stale
+            cache.invalidate(username);
+        }
+    }
+
+    void invalidate(final String username) {
+        generation.incrementAndGet();
+        final Cache<String, AccountRecord> cache = this.cache;
+        if(cache != null && username != null) {
+            cache.invalidate(username);
+        }
+    }
+
+    void invalidateAll() {
+        generation.incrementAndGet();
+        final Cache<String, AccountRecord> cache = this.cache;
+        if(cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import java.util.Collections;
+import java.util.Set;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import org.isisaddons.module.security.dom.role.ApplicationRole;
+import org.isisaddons.module.security.dom.user.AccountType;
+import org.isisaddons.module.security.dom.user.ApplicationUser;
+import org.isisaddons.module.security.dom.user.ApplicationUserStatus;
+
+/**
+ * Immutable snapshot of the parts of an {@link ApplicationUser} needed to authenticate them: their name, password,
+ * account type, status and the names of their roles.
+ *
+ * <p>
+ *     This (rather than the {@link PrincipalForApplicationUser principal}, which also holds the user's permissions) is
+ *     what is held in the {@link AccountCache account cache}; the permissions are obtained separately, by role name.
+ * </p>
+ */
+class AccountRecord {
+
+    static AccountRecord from(final ApplicationUser applicationUser) {
+        if(applicationUser == null) {
+            return null;
+        }
+        final Set<String> roles = Sets.newTreeSet(Lists.newArrayList(Iterables.transform(applicationUser.getRoles(), ApplicationRole.Functions.GET_NAME)));
+        return new AccountRecord(
+                applicationUser.getUsername(), applicationUser.getName(), applicationUser.getEncryptedPassword(),
+                applicationUser.getAccountType(), applicationUser.getStatus(), roles);
+    }
+
+    /**
+     * The account of a {@link AccountType#DELEGATED delegated} user that is yet to be created (in the background),
+     * equivalent to that of a user as created by
+     * {@link org.isisaddons.module.security.dom.user.ApplicationUsers#findOrCreateUserByUsername(String, String)}, that
+     * is, disabled and with the initial role (if any) that it is to be given, as
+     * {@link org.isisaddons.module.security.dom.user.ApplicationUsers#findProvisionedDelegateUserRole(String) found}.
+     */
+    static AccountRecord forNewDelegateUser(final String username, final ApplicationRole initialRole) {
+        final Set<String> roles = initialRole != null
+                ? Collections.singleton(initialRole.getName())
+                : Collections.<String>emptySet();
+        return new AccountRecord(
+                username, username, null, AccountType.DELEGATED, ApplicationUserStatus.DISABLED, roles);
+    }
+
+    private final String loginUsername;
+    private final String username;
+    private final String encryptedPassword;
+    private final AccountType accountType;
+    private final ApplicationUserStatus status;
+    private final Set<String> roles;
+    private final long loadedAt;
+
+    AccountRecord(
+            final String loginUsername,
+            final String username,
+            final String encryptedPassword,
+            final AccountType accountType,
+            final ApplicationUserStatus status,
+            final Set<String> roles) {
+        this.loginUsername = loginUsername;
+        this.username = username;
+        this.encryptedPassword = encryptedPassword;
+        this.accountType = accountType;
+        this.status = status;
+        this.roles = Collections.unmodifiableSet(roles);
+        this.loadedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * The username used to log in (as opposed to the {@link #getUsername() username}, which is the user's name).
+     */
+    String getLoginUsername() {
+        return loginUsername;
+    }
+
+    String getUsername() {
+        return username;
+    }
+
+    String getEncryptedPassword() {
+        return encryptedPassword;
+    }
+
+    AccountType getAccountType() {
+        return accountType;
+    }
+
+    ApplicationUserStatus getStatus() {
+        return status;
+    }
+
+    boolean isDisabled() {
+        return status == ApplicationUserStatus.DISABLED;
+    }
+
+    /**
+     * The names of the user's roles.
+     */
+    Set<String> getRoles() {
+        return roles;
+    }
+
+    /**
+     * When this account was looked up from the database.
+     */
+    long getLoadedAt() {
+        return loadedAt;
+    }
+
+    @Override
+    public String toString() {
+        return loginUsername;
+    }
+}
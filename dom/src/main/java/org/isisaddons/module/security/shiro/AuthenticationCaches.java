@@ -0,0 +1,123 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import org.isisaddons.module.security.dom.CacheEvictions;
+import org.isisaddons.module.security.dom.permission.ApplicationPermissionValueSetCache;
+
+/**
+ * Process-wide caches used by {@link IsisModuleSecurityRealm} to avoid database lookups when authenticating.
+ *
+ * <p>
+ *     The caches are configured through the realm (in <tt>shiro.ini</tt>), but are held statically so that the domain
+ *     entities can evict stale entries without requiring access to the Shiro security manager.
+ * </p>
+ *
+ * <p>
+ *     Because they are held statically (as is the
+ *     {@link ApplicationPermissionValueSetCache permission set cache}), there can be only one configuration per class
+ *     loader.  The first realm to configure them (or to be initialized) {@link #claim(Object) claims} them, and any
+ *     other realm that tries to do so fails fast, until the first has been destroyed (for example, when the
+ *     application is redeployed into the same class loader).  Destroying the realm {@link #release(Object) releases}
+ *     the caches, disabling and emptying them, so that no entries are shared with the next realm.
+ * </p>
+ */
+public final class AuthenticationCaches {
+
+    private AuthenticationCaches(){}
+
+    static final AccountCache ACCOUNTS = new AccountCache();
+    static final VerifiedCredentialsCache CREDENTIALS = new VerifiedCredentialsCache();
+    static final UnknownUsernameCache UNKNOWN_USERNAMES = new UnknownUsernameCache();
+    static final DelegateAuthenticationCache DELEGATE_AUTHENTICATIONS = new DelegateAuthenticationCache();
+
+    private static Object owner;
+
+    /**
+     * Called by the realm before it configures any of the caches (and when it is initialized).
+     *
+     * @throws IllegalStateException - if the caches are already claimed by another realm that has not been destroyed.
+     */
+    static synchronized void claim(final Object realm) {
+        if(owner != null && owner != realm) {
+            throw new IllegalStateException(
+                    "The authentication and permission set caches are process-wide, and are already configured by "
+                    + "another IsisModuleSecurityRealm; only one such realm may be in use at a time");
+        }
+        owner = realm;
+    }
+
+    /**
+     * Called by the realm when it is destroyed; disables (and so empties) all of the caches, if claimed by that realm.
+     */
+    static synchronized void release(final Object realm) {
+        if(owner != realm) {
+            return;
+        }
+        owner = null;
+        ACCOUNTS.configure(0, 0);
+        CREDENTIALS.configure(0, 0);
+        UNKNOWN_USERNAMES.configure(0, 0);
+        DELEGATE_AUTHENTICATIONS.configure(0, 0, 0);
+        ApplicationPermissionValueSetCache.configure(0, 0);
+    }
+
+    /**
+     * Evicts any cached information about the user with the specified username.
+     *
+     * <p>
+     *     Called by <code>ApplicationUser</code> whenever its status, password, account type or roles are changed, and
+     *     by <code>ApplicationUsers</code> whenever a user is created.
+     * </p>
+     */
+    public static void invalidate(final String username) {
+        ACCOUNTS.invalidate(username);
+        CREDENTIALS.invalidate(username);
+        UNKNOWN_USERNAMES.invalidate(username);
+        DELEGATE_AUTHENTICATIONS.invalidate(username);
+    }
+
+    /**
+     * As {@link #invalidate(String)}, both immediately and again once the transaction in which the persistent object
+     * was changed has completed (see {@link CacheEvictions}).
+     *
+     * <p>
+     *     Called by <code>ApplicationUser</code> whenever its status, password, account type or roles are changed, by
+     *     <code>ApplicationUsers</code> whenever a user is created, and by <code>ApplicationRole</code> (for each of
+     *     its users) whenever a role is renamed or deleted.
+     * </p>
+     */
+    public static void invalidateNowAndAfterCompletion(final Object persistentObject, final String username) {
+        CacheEvictions.evictNowAndAfterCompletion(persistentObject, new Runnable() {
+            @Override
+            public void run() {
+                invalidate(username);
+            }
+        });
+    }
+
+    /**
+     * Evicts all cached information.
+     */
+    public static void invalidateAll() {
+        ACCOUNTS.invalidateAll();
+        CREDENTIALS.invalidateAll();
+        UNKNOWN_USERNAMES.invalidateAll();
+        DELEGATE_AUTHENTICATIONS.invalidateAll();
+    }
+
+}
@@ -0,0 +1,197 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import java.util.concurrent.TimeUnit;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.io.BaseEncoding;
+import org.apache.shiro.authc.AuthenticationException;
+import org.apache.shiro.authc.AuthenticationInfo;
+import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authc.UsernamePasswordToken;
+import org.apache.shiro.realm.AuthenticatingRealm;
+
+/**
+ * Caches the outcome of authenticating with the delegate authentication realm, keyed by the username and an
+ * {@link PasswordHmac HMAC} of the password.
+ *
+ * <p>
+ *     Successful authentications are held for one (short) period, and failed authentications for another (typically
+ *     shorter) period.  Entries for a user are evicted (through {@link AuthenticationCaches#invalidate(String)})
+ *     whenever the user's status, password, account type or roles are changed.
+ * </p>
+ *
+ * <p>
+ *     Disabled (that is, caches nothing) until {@link #configure(long, long, long) configured}.
+ * </p>
+ */
+class DelegateAuthenticationCache {
+
+    private static final char SEPARATOR = '\u0000';
+    private static final BaseEncoding BASE64 = BaseEncoding.base64();
+
+    private final PasswordHmac passwordHmac = new PasswordHmac();
+
+    private volatile Cache<String, AuthenticationInfo> successes;
+    private volatile Cache<String, Boolean> failures;
+
+    /**
+     * @param maxSize - maximum number of successes (and, separately, failures) to hold.
+     * @param successTimeToLiveMillis - how long a success is held; if not positive then successes are not cached.
+     * @param failureTimeToLiveMillis - how long a failure is held; if not positive then failures are not cached.
+     */
+    void configure(final long maxSize, final long successTimeToLiveMillis, final long failureTimeToLiveMillis) {
+        successes = maxSize > 0 && successTimeToLiveMillis > 0
+                ? CacheBuilder.newBuilder()
+                    .maximumSize(maxSize)
+                    .expireAfterWrite(successTimeToLiveMillis, TimeUnit.MILLISECONDS)
+                    .<String, AuthenticationInfo>build()
+                : null;
+        failures = maxSize > 0 && failureTimeToLiveMillis > 0
+                ? CacheBuilder.newBuilder()
+                    .maximumSize(maxSize)
+                    .expireAfterWrite(failureTimeToLiveMillis, TimeUnit.MILLISECONDS)
+                    .<String, Boolean>build()
+                : null;
+    }
+
+    boolean isEnabled() {
+        return successes != null || failures != null;
+    }
+
+    //region > authenticate
+
+    /**
+     * Authenticates the token with the realm, unless the outcome for the same username and password is cached.
+     *
+     * @param stats - records the time taken by the realm (that is, if not cached).
+     * @return <tt>null</tt> if not authenticated.
+     */
+    AuthenticationInfo authenticate(
+            final AuthenticatingRealm realm,
+            final AuthenticationToken token,
+            final LatencyStats stats) {
+        final String key = keyFor(token);
+        final Optional<AuthenticationInfo> cached = key != null ? get(key) : null;
+        if(cached != null) {
+            return cached.orNull();
+        }
+
+        AuthenticationInfo authenticationInfo = null;
+        final long start = System.nanoTime();
+        try {
+            authenticationInfo = realm.getAuthenticationInfo(token);
+        } catch (final AuthenticationException ex) {
+            // not authenticated
+        } finally {
+            stats.recordSince(start);
+        }
+
+        if(key != null) {
+            put(key, authenticationInfo);
+        }
+        return authenticationInfo;
+    }
+
+    /**
+     * @return <tt>null</tt> if not cached, {@link Optional#absent() absent} if a failure is cached.
+     */
+    private Optional<AuthenticationInfo> get(final String key) {
+        final Cache<String, AuthenticationInfo> successes = this.successes;
+        final AuthenticationInfo authenticationInfo = successes != null ? successes.getIfPresent(key) : null;
+        if(authenticationInfo != null) {
+            return Optional.of(authenticationInfo);
+        }
+        final Cache<String, Boolean> failures = this.failures;
+        return failures != null && failures.getIfPresent(key) != null
+                ? Optional.<AuthenticationInfo>absent()
+                : null;
+    }
+
+    private void put(final String key, final AuthenticationInfo authenticationInfo) {
+        if(authenticationInfo != null) {
+            final Cache<String, AuthenticationInfo> successes = this.successes;
+            if(successes != null) {
+                successes.put(key, authenticationInfo);
+            }
+        } else {
+            final Cache<String, Boolean> failures = this.failures;
+            if(failures != null) {
+                failures.put(key, Boolean.TRUE);
+            }
+        }
+    }
+
+    /**
+     * <tt>null</tt> (not cacheable) unless a {@link UsernamePasswordToken} with username and password, or if disabled.
+     */
+    private String keyFor(final AuthenticationToken token) {
+        if(!isEnabled() || !(token instanceof UsernamePasswordToken)) {
+            return null;
+        }
+        final UsernamePasswordToken usernamePasswordToken = (UsernamePasswordToken) token;
+        final String username = usernamePasswordToken.getUsername();
+        final char[] password = usernamePasswordToken.getPassword();
+        if(username == null || password == null) {
+            return null;
+        }
+        return username + SEPARATOR + BASE64.encode(passwordHmac.of(password));
+    }
+
+    //endregion
+
+    //region > invalidate, invalidateAll
+
+    void invalidate(final String username) {
+        if(username == null) {
+            return;
+        }
+        final String prefix = username + SEPARATOR;
+        final Cache<String, AuthenticationInfo> successes = this.successes;
+        if(successes != null) {
+            invalidateKeysStartingWith(successes, prefix);
+        }
+        final Cache<String, Boolean> failures = this.failures;
+        if(failures != null) {
+            invalidateKeysStartingWith(failures, prefix);
+        }
+    }
+
+    private static void invalidateKeysStartingWith(final Cache<String, ?> cache, final String prefix) {
+        for (final String key : cache.asMap().keySet()) {
+            if(key.startsWith(prefix)) {
+                cache.invalidate(key);
+            }
+        }
+    }
+
+    void invalidateAll() {
+        final Cache<String, AuthenticationInfo> successes = this.successes;
+        if(successes != null) {
+            successes.invalidateAll();
+        }
+        final Cache<String, Boolean> failures = this.failures;
+        if(failures != null) {
+            failures.invalidateAll();
+        }
+    }
+
+    //endregion
+
+}
@@ -16,15 +16,52 @@
  */
 package org.isisaddons.module.security.shiro;
 
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.inject.Inject;
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.shiro.authc.*;
 import org.apache.shiro.authz.AuthorizationInfo;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.UnauthorizedException;
 import org.apache.shiro.realm.AuthenticatingRealm;
 import org.apache.shiro.realm.AuthorizingRealm;
 import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.util.Destroyable;
 import org.isisaddons.module.security.dom.password.PasswordEncryptionService;
+import org.isisaddons.module.security.dom.password.RehashablePasswordEncryptionService;
+import org.isisaddons.module.security.dom.permission.ApplicationPermissionValueSet;
+import org.isisaddons.module.security.dom.permission.ApplicationPermissionValueSetCache;
+import org.isisaddons.module.security.dom.permission.ApplicationPermissions;
+import org.isisaddons.module.security.dom.permission.PermissionsEvaluationService;
+import org.isisaddons.module.security.dom.role.ApplicationRole;
 import org.isisaddons.module.security.dom.user.AccountType;
 import org.isisaddons.module.security.dom.user.ApplicationUser;
+import org.isisaddons.module.security.dom.user.ApplicationUserActivity;
 import org.isisaddons.module.security.dom.user.ApplicationUsers;
 import org.apache.isis.core.runtime.system.context.IsisContext;
 import org.apache.isis.core.runtime.system.internal.InitialisationSession;
@@ -33,7 +70,7 @@
 import org.apache.isis.core.runtime.system.transaction.TransactionalClosureWithReturn;
 import org.apache.isis.core.runtime.system.transaction.TransactionalClosureWithReturnAbstract;
 
-public class IsisModuleSecurityRealm extends AuthorizingRealm {
+public class IsisModuleSecurityRealm extends AuthorizingRealm implements Destroyable {
 
 
     //region > constructor
@@ -44,7 +81,7 @@ public class IsisModuleSecurityRealm extends AuthorizingRealm {
      * {@link org.apache.isis.core.runtime.authorization.standard.Authorizor} for Shiro.
      */
     public IsisModuleSecurityRealm() {
-        setPermissionResolver(new PermissionResolverForIsisShiroAuthorizor());
+        setPermissionResolver(permissionResolver);
     }
     //endregion
 
@@ -57,6 +94,17 @@ public IsisModuleSecurityRealm() {
      * few (or no) details in their exception message.  Similarly, the generic
      * {@link org.apache.shiro.authc.CredentialsException} is thrown for both a non-existent user and also an
      * invalid password.
+     *
+     * <p>
+     *     If {@link #setLoginThrottleMaxFailuresPerUsername(int) login throttling} is configured, then an
+     *     {@link ExcessiveAttemptsException} is thrown (without any database lookup or password verification) for a
+     *     username or host with too many recent failed logins.
+     * </p>
+     *
+     * <p>
+     *     If the {@link #setPasswordVerificationThreads(int) password verification threads} are saturated, then a
+     *     {@link PasswordVerificationUnavailableException} is thrown (and not counted as a failed login).
+     * </p>
      */
     @Override
     protected AuthenticationInfo doGetAuthenticationInfo(AuthenticationToken token) throws AuthenticationException {
@@ -66,12 +114,51 @@ protected AuthenticationInfo doGetAuthenticationInfo(AuthenticationToken token)
         }
 
         final UsernamePasswordToken usernamePasswordToken = (UsernamePasswordToken) token;
-        String username = usernamePasswordToken.getUsername();
-        char[] password = usernamePasswordToken.getPassword();
+        final String username = usernamePasswordToken.getUsername();
+        final String host = usernamePasswordToken.getHost();
 
-        // lookup from database, for roles/perms, but also
-        // determine how to authenticate (delegate or local), whether disabled
-        final PrincipalForApplicationUser principal = lookupPrincipal(username, hasDelegateAuthenticationRealm());
+        if(isLoginThrottled(username, host)) {
+            throw new ExcessiveAttemptsException();
+        }
+        try {
+            final AuthenticationInfo authenticationInfo = authenticate(usernamePasswordToken);
+            recordSuccessfulLogin(username);
+            return authenticationInfo;
+        } catch(final CredentialsException ex) {
+            recordFailedLogin(username, host);
+            throw ex;
+        }
+    }
+
+    private AuthenticationInfo authenticate(final UsernamePasswordToken token) {
+
+        final String username = token.getUsername();
+        final char[] password = token.getPassword();
+
+        if(sessionTokens != null && SessionTokens.isToken(password)) {
+            final AuthenticationInfo authenticationInfo = authenticateSessionToken(username, new String(password), token);
+            if(authenticationInfo != null) {
+                recordUserActivity(username);
+                return authenticationInfo;
+            }
+            // otherwise treat as a password
+        }
+
+        // lookup from cache or else from database, for roles/perms, but also
+        // determine how to authenticate (delegate or local), whether disabled.
+        final boolean autoCreateUser = hasDelegateAuthenticationRealm();
+        final AccountRecord cachedAccount = AuthenticationCaches.ACCOUNTS.get(username);
+        PrincipalForApplicationUser principal = cachedAccount != null ? principalFor(cachedAccount) : null;
+        LookupResult lookupResult = null;
+        if(principal == null) {
+            if(!autoCreateUser && AuthenticationCaches.UNKNOWN_USERNAMES.isUnknown(username)) {
+                throw new CredentialsException("Unknown user/password combination");
+            }
+            lookupResult = parallelDelegateAuthentication && hasDelegateAuthenticationRealm()
+                    ? lookupPrincipalInParallelWithDelegate(token, username, autoCreateUser)
+                    : lookupPrincipalCoalesced(username, autoCreateUser);
+            principal = lookupResult.principal;
+        }
         if(principal == null) {
             // if no delegate authentication
             throw new CredentialsException("Unknown user/password combination");
@@ -83,31 +170,37 @@ protected AuthenticationInfo doGetAuthenticationInfo(AuthenticationToken token)
         }
 
         if(principal.getAccountType() == AccountType.DELEGATED) {
-            AuthenticationInfo delegateAccount = null;
-            if (hasDelegateAuthenticationRealm()) {
-                try {
-                    delegateAccount = delegateAuthenticationRealm.getAuthenticationInfo(token);
-                } catch (AuthenticationException ex) {
-                    // fall through
-                }
-            }
+            final AuthenticationInfo delegateAccount =
+                    lookupResult != null && lookupResult.delegateAttempted
+                            ? lookupResult.delegateAccount
+                            : authenticateWithDelegate(token);
             if(delegateAccount == null) {
                 throw new CredentialsException("Unknown user/password combination");
             }
         } else {
-            final CheckPasswordResult result = checkPassword(password, principal.getEncryptedPassword());
-            switch (result) {
+            // with any Isis session (used to look up the principal) already closed
+            final CheckPasswordResult checkPasswordResult =
+                    AuthenticationCaches.CREDENTIALS.isVerified(username, password, principal.getEncryptedPassword())
+                        ? CheckPasswordResult.OK
+                        : checkPassword(password, principal.getEncryptedPassword());
+            switch (checkPasswordResult) {
                 case OK:
+                    AuthenticationCaches.CREDENTIALS.verified(username, password, principal.getEncryptedPassword());
+                    rehashIfRequired(username, password, principal.getEncryptedPassword());
                     break;
                 case BAD_PASSWORD:
                     throw new CredentialsException("Unknown user/password combination");
                 case NO_PASSWORD_ENCRYPTION_SERVICE_CONFIGURED:
                     throw new AuthenticationException("No password encryption service is installed");
+                case VERIFICATION_UNAVAILABLE:
+                    throw new PasswordVerificationUnavailableException();
                 default:
                     throw new AuthenticationException();
             }
         }
 
+        recordUserLogin(username);
+
         final Object credentials = token.getCredentials();
         final String realmName = getName();
         return new AuthInfoForApplicationUser(principal, realmName, credentials);
@@ -119,38 +212,340 @@ protected AuthorizationInfo doGetAuthorizationInfo(PrincipalCollection principal
         if (urp == null) {
             return null;
         }
+        recordUserActivity(urp.getLoginUsername());
         return urp;
     }
 
     //endregion
 
+    //region > isPermitted (Shiro API, fast path)
+
+    /**
+     * Answers permission checks for Isis' members directly from the user's principal.
+     *
+     * <p>
+     *     The principal is its own {@link AuthorizationInfo} (as returned by {@link #doGetAuthorizationInfo(PrincipalCollection)}),
+     *     so there is nothing to be gained from Shiro's generic processing, which collects the
+     *     {@link AuthorizationInfo#getObjectPermissions() object permissions} (and resolves any string and role
+     *     permissions) into a new set and then asks each in turn whether it implies the requested permission.
+     * </p>
+     *
+     * <p>
+     *     The {@link AuthorizationInfo} is still obtained through {@link #getAuthorizationInfo(PrincipalCollection)},
+     *     so that Shiro's authorization cache (if enabled) is used as usual.  Any other kind of permission or
+     *     {@link AuthorizationInfo} is processed by Shiro.
+     * </p>
+     */
+    @Override
+    public boolean isPermitted(final PrincipalCollection principals, final Permission permission) {
+        if(!(permission instanceof PermissionForMember)) {
+            return super.isPermitted(principals, permission);
+        }
+        return isPermitted(permission, getAuthorizationInfo(principals));
+    }
+
+    /**
+     * Called by Shiro (after {@link #getAuthorizationInfo(PrincipalCollection)}) for the multi-permission variants of
+     * <tt>isPermitted</tt>, including those for permission strings.
+     */
+    @Override
+    protected boolean[] isPermitted(final List<Permission> permissions, final AuthorizationInfo info) {
+        if(!(info instanceof PrincipalForApplicationUser) || permissions == null || permissions.isEmpty()) {
+            return super.isPermitted(permissions, info);
+        }
+        final boolean[] result = new boolean[permissions.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = isPermitted(permissions.get(i), info);
+        }
+        return result;
+    }
+
+    /**
+     * Called by Shiro (after {@link #getAuthorizationInfo(PrincipalCollection)}) for the variants of
+     * <tt>isPermittedAll</tt>, including those for permission strings.
+     */
+    @Override
+    protected boolean isPermittedAll(final Collection<Permission> permissions, final AuthorizationInfo info) {
+        if(!(info instanceof PrincipalForApplicationUser) || permissions == null) {
+            return super.isPermittedAll(permissions, info);
+        }
+        for (final Permission permission : permissions) {
+            if(!isPermitted(permission, info)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Called by Shiro (after {@link #getAuthorizationInfo(PrincipalCollection)}) for the variants of
+     * <tt>checkPermission</tt>, including those for permission strings.
+     */
+    @Override
+    protected void checkPermission(final Permission permission, final AuthorizationInfo info) {
+        if(!(info instanceof PrincipalForApplicationUser) || !(permission instanceof PermissionForMember)) {
+            super.checkPermission(permission, info);
+            return;
+        }
+        if(!grants((PrincipalForApplicationUser) info, (PermissionForMember) permission)) {
+            throw new UnauthorizedException("User is not permitted [" + permission + "]");
+        }
+    }
+
+    /**
+     * Shiro's own check of a single permission against an {@link AuthorizationInfo} is private, so anything other
+     * than a member permission for a user's principal is passed to Shiro's multi-permission variant instead.
+     */
+    private boolean isPermitted(final Permission permission, final AuthorizationInfo info) {
+        if(info instanceof PrincipalForApplicationUser && permission instanceof PermissionForMember) {
+            return grants((PrincipalForApplicationUser) info, (PermissionForMember) permission);
+        }
+        return super.isPermitted(Collections.singletonList(permission), info)[0];
+    }
+
+    private static boolean grants(final PrincipalForApplicationUser principal, final PermissionForMember permission) {
+        return principal.grants(permission.getFeatureId(), permission.getMode());
+    }
+
+    //endregion
+
     //region > lookupPrincipal
 
+    private static class LookupResult {
+        private final PrincipalForApplicationUser principal;
+        /**
+         * Whether the {@link #delegateAccount} has been obtained (in parallel with the lookup).
+         */
+        private final boolean delegateAttempted;
+        private final AuthenticationInfo delegateAccount;
+        /**
+         * Whether the {@link #principal} is for a user that is still being
+         * {@link #isProvisionDelegateUsersInBackground() provisioned in the background}, and so must not be cached.
+         */
+        private final boolean provisional;
+
+        private LookupResult(final PrincipalForApplicationUser principal) {
+            this(principal, false, null, false);
+        }
+
+        private LookupResult(
+                final PrincipalForApplicationUser principal,
+                final boolean delegateAttempted,
+                final AuthenticationInfo delegateAccount) {
+            this(principal, delegateAttempted, delegateAccount, false);
+        }
+
+        private LookupResult(
+                final PrincipalForApplicationUser principal,
+                final boolean delegateAttempted,
+                final AuthenticationInfo delegateAccount,
+                final boolean provisional) {
+            this.principal = principal;
+            this.delegateAttempted = delegateAttempted;
+            this.delegateAccount = delegateAccount;
+            this.provisional = provisional;
+        }
+    }
+
+    private final SingleFlight<String, PrincipalForApplicationUser> principalLookups =
+            new SingleFlight<String, PrincipalForApplicationUser>();
 
     /**
-     * @param username
-     * @param autoCreateUser
+     * Number of lookups that were not performed, because they instead shared the result of a concurrent lookup for the
+     * same username.
      */
-    private PrincipalForApplicationUser lookupPrincipal(final String username, final boolean autoCreateUser) {
-        return execute(new TransactionalClosureWithReturnAbstract<PrincipalForApplicationUser>() {
+    public long getCoalescedLookupCount() {
+        return principalLookups.getSharedCount();
+    }
+
+    /**
+     * As {@link #lookupPrincipal(String, boolean)}, also caching the principal, except that concurrent calls for the
+     * same username share a single lookup.
+     *
+     * <p>
+     *     This coalescing is only within this JVM (this realm, in fact); concurrent lookups on other nodes of a cluster
+     *     are not coordinated, relying instead on the unique constraint on username (see
+     *     {@link #lookupPrincipal(String, boolean)}).
+     * </p>
+     */
+    private LookupResult lookupPrincipalCoalesced(
+            final String username,
+            final boolean autoCreateUser) {
+        if(username == null) {
+            return lookupPrincipal(username, autoCreateUser);
+        }
+        final PrincipalForApplicationUser principal = principalLookups.execute(username, new Callable<PrincipalForApplicationUser>() {
             @Override
-            public PrincipalForApplicationUser execute() {
-                final ApplicationUser applicationUser = lookupUser();
-                return PrincipalForApplicationUser.from(applicationUser);
+            public PrincipalForApplicationUser call() {
+                final long accountCacheGeneration = AuthenticationCaches.ACCOUNTS.generation();
+                final LookupResult lookupResult = lookupPrincipal(username, autoCreateUser);
+                // cache while still in flight, so that no later caller misses both
+                if(lookupResult.principal != null) {
+                    if(!lookupResult.provisional) {
+                        AuthenticationCaches.ACCOUNTS.put(username, lookupResult.principal.getAccount(), accountCacheGeneration);
+                    }
+                } else {
+                    AuthenticationCaches.UNKNOWN_USERNAMES.unknown(username);
+                }
+                return lookupResult.principal;
+            }
+        });
+        return new LookupResult(principal);
+    }
+
+    /**
+     * Looks up (or creates) the user and builds the principal, within a single Isis session and transaction.
+     *
+     * <p>
+     *     The password (of a local user) is not checked here, but by the caller once the session has been closed, so
+     *     that the database connection is not held while the password is hashed.
+     * </p>
+     *
+     * <p>
+     *     If the user is to be created but the transaction fails with a {@link #isConstraintViolation(Throwable)
+     *     constraint violation}, then the same user has concurrently been created elsewhere (eg by another node in
+     *     the cluster), violating the unique constraint on username; the lookup is therefore retried (once), in a new
+     *     transaction.  Any other failure is propagated.
+     * </p>
+     */
+    private LookupResult lookupPrincipal(
+            final String username,
+            final boolean autoCreateUser) {
+        if(!autoCreateUser) {
+            return lookupPrincipalOnce(username, false);
+        }
+        try {
+            return lookupPrincipalOnce(username, true);
+        } catch(final RuntimeException ex) {
+            if(!isConstraintViolation(ex)) {
+                throw ex;
+            }
+            return lookupPrincipalOnce(username, true);
+        }
+    }
+
+    /**
+     * Whether the exception was caused by the violation of a database integrity constraint (such as a duplicate key),
+     * that is, a {@link SQLIntegrityConstraintViolationException} or any other {@link SQLException} whose
+     * SQLState is of class <tt>23</tt>.
+     */
+    static boolean isConstraintViolation(final Throwable throwable) {
+        for (final Throwable cause : Throwables.getCausalChain(throwable)) {
+            if(cause instanceof SQLIntegrityConstraintViolationException) {
+                return true;
             }
+            if(cause instanceof SQLException) {
+                for(SQLException sqlException = (SQLException) cause; sqlException != null; sqlException = sqlException.getNextException()) {
+                    final String sqlState = sqlException.getSQLState();
+                    if(sqlState != null && sqlState.startsWith("23")) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
 
-            private ApplicationUser lookupUser() {
-                if (autoCreateUser) {
-                    return applicationUsers.findOrCreateUserByUsername(username);
+    private LookupResult lookupPrincipalOnce(
+            final String username,
+            final boolean autoCreateUser) {
+        final long sessionStart = System.nanoTime();
+        try {
+            return execute(new TransactionalClosureWithReturnAbstract<LookupResult>() {
+                @Override
+                public LookupResult execute() {
+                    // remember the (singleton) service, so that passwords can be checked without a session
+                    IsisModuleSecurityRealm.this.passwordEncryptionService = passwordEncryptionService;
+                    rememberPermissionsEvaluationService(permissionsEvaluationService);
+
+                    final long lookupStart = System.nanoTime();
+                    final ApplicationUser applicationUser = lookupUser();
+                    lookupStats.recordSince(lookupStart);
+
+                    if(applicationUser == null && autoCreateUser && provisionDelegateUsersInBackground) {
+                        provisionUserInBackground(username);
+                        final ApplicationRole initialRole =
+                                applicationUsers.findProvisionedDelegateUserRole(provisionedDelegateUserRoleName);
+                        return new LookupResult(
+                                PrincipalForApplicationUser.forNewDelegateUser(username, initialRole), false, null, true);
+                    }
+
+                    final long principalBuildStart = System.nanoTime();
+                    final PrincipalForApplicationUser principal = PrincipalForApplicationUser.from(applicationUser);
+                    principalBuildStats.recordSince(principalBuildStart);
+
+                    return new LookupResult(principal);
                 }
-                else {
-                    return applicationUsers.findUserByUsername(username);
+
+                private ApplicationUser lookupUser() {
+                    if (autoCreateUser && !provisionDelegateUsersInBackground) {
+                        return applicationUsers.findOrCreateUserByUsername(username, provisionedDelegateUserRoleName);
+                    }
+                    else {
+                        return applicationUsers.findUserByUsername(username);
+                    }
                 }
+
+                @Inject
+                private ApplicationUsers applicationUsers;
+                @Inject
+                private PasswordEncryptionService passwordEncryptionService;
+                @Inject
+                private PermissionsEvaluationService permissionsEvaluationService;
+            });
+        } finally {
+            sessionStats.recordSince(sessionStart);
+        }
+    }
+
+    /**
+     * Obtained from the Isis runtime the first time that a principal is looked up (and may legitimately be
+     * <tt>null</tt>, hence the separate flag).
+     */
+    private volatile PermissionsEvaluationService permissionsEvaluationService;
+    private volatile boolean permissionsEvaluationServiceKnown;
+
+    private void rememberPermissionsEvaluationService(final PermissionsEvaluationService permissionsEvaluationService) {
+        this.permissionsEvaluationService = permissionsEvaluationService;
+        this.permissionsEvaluationServiceKnown = true;
+    }
+
+    /**
+     * Builds the principal for a {@link AccountCache cached} account, obtaining the permissions of its roles from the
+     * {@link ApplicationPermissionValueSetCache permission set cache} if present there (without an Isis session), or
+     * otherwise from the database.  (The permission set cache is always enabled while the account cache is, see
+     * {@link #setAccountCacheTimeToLiveSeconds(long)}.)
+     */
+    private PrincipalForApplicationUser principalFor(final AccountRecord account) {
+        if(permissionsEvaluationServiceKnown) {
+            final ApplicationPermissionValueSet permissionSet =
+                    ApplicationPermissionValueSetCache.getIfPresent(account.getRoles(), permissionsEvaluationService);
+            if(permissionSet != null) {
+                return new PrincipalForApplicationUser(account, permissionSet);
             }
+        }
+        final long sessionStart = System.nanoTime();
+        try {
+            return execute(new TransactionalClosureWithReturnAbstract<PrincipalForApplicationUser>() {
+                @Override
+                public PrincipalForApplicationUser execute() {
+                    rememberPermissionsEvaluationService(permissionsEvaluationService);
 
-            @Inject
-            private ApplicationUsers applicationUsers;
-        });
+                    final long principalBuildStart = System.nanoTime();
+                    final PrincipalForApplicationUser principal = new PrincipalForApplicationUser(
+                            account, applicationPermissions.permissionSetForRoleNames(account.getRoles()));
+                    principalBuildStats.recordSince(principalBuildStart);
+                    return principal;
+                }
+
+                @Inject
+                private ApplicationPermissions applicationPermissions;
+                @Inject
+                private PermissionsEvaluationService permissionsEvaluationService;
+            });
+        } finally {
+            sessionStats.recordSince(sessionStart);
+        }
     }
 
     //endregion
@@ -160,19 +555,32 @@ private ApplicationUser lookupUser() {
     private static enum CheckPasswordResult {
         OK,
         BAD_PASSWORD,
-        NO_PASSWORD_ENCRYPTION_SERVICE_CONFIGURED
+        NO_PASSWORD_ENCRYPTION_SERVICE_CONFIGURED,
+        /**
+         * The {@link PasswordVerificationExecutor password verification executor} is saturated.
+         */
+        VERIFICATION_UNAVAILABLE
     }
 
+    /**
+     * Obtained from the Isis runtime the first time that a principal is looked up.
+     */
+    private volatile PasswordEncryptionService passwordEncryptionService;
+
+    /**
+     * Called outside of any Isis session; one is opened only if the password encryption service has not yet been
+     * obtained.
+     */
     private CheckPasswordResult checkPassword(final char[] candidate, final String actualEncryptedPassword) {
+        final PasswordEncryptionService passwordEncryptionService = this.passwordEncryptionService;
+        if(passwordEncryptionService != null) {
+            // no need for an Isis session
+            return checkPassword(passwordEncryptionService, candidate, actualEncryptedPassword);
+        }
         return execute(new TransactionalClosureWithReturnAbstract<CheckPasswordResult>() {
             @Override
             public CheckPasswordResult execute() {
-                if (passwordEncryptionService == null) {
-                    return CheckPasswordResult.NO_PASSWORD_ENCRYPTION_SERVICE_CONFIGURED;
-                }
-                return passwordEncryptionService.matches(new String(candidate), actualEncryptedPassword)
-                        ? CheckPasswordResult.OK
-                        : CheckPasswordResult.BAD_PASSWORD;
+                return checkPassword(passwordEncryptionService, candidate, actualEncryptedPassword);
             }
 
             @Inject
@@ -180,21 +588,1308 @@ public CheckPasswordResult execute() {
         });
     }
 
+    private CheckPasswordResult checkPassword(
+            final PasswordEncryptionService passwordEncryptionService,
+            final char[] candidate,
+            final String actualEncryptedPassword) {
+        if (passwordEncryptionService == null) {
+            return CheckPasswordResult.NO_PASSWORD_ENCRYPTION_SERVICE_CONFIGURED;
+        }
+        final PasswordVerificationExecutor passwordVerificationExecutor = getPasswordVerificationExecutor();
+        final long start = System.nanoTime();
+        try {
+            final Boolean matches = passwordVerificationExecutor != null
+                    ? passwordVerificationExecutor.matches(passwordEncryptionService, new String(candidate), actualEncryptedPassword)
+                    : passwordEncryptionService.matches(new String(candidate), actualEncryptedPassword);
+            if(matches == null) {
+                return CheckPasswordResult.VERIFICATION_UNAVAILABLE;
+            }
+            return matches
+                    ? CheckPasswordResult.OK
+                    : CheckPasswordResult.BAD_PASSWORD;
+        } finally {
+            passwordCheckStats.recordSince(start);
+        }
+    }
+
+    //endregion
+
+    //region > loginThrottle
+
+    static final int LOGIN_THROTTLE_STRIPES = 4096;
+
+    private int loginThrottleMaxFailuresPerUsername;
+    private int loginThrottleMaxFailuresPerHost;
+    private long loginThrottleWindowSeconds = 60;
+    private boolean loginThrottleLocksUser;
+
+    private LoginThrottle usernameThrottle;
+    private LoginThrottle hostThrottle;
+
+    public int getLoginThrottleMaxFailuresPerUsername() {
+        return loginThrottleMaxFailuresPerUsername;
+    }
+
+    /**
+     * The number of recent failed logins for a username at which further logins for that username are rejected
+     * (without the password being checked).  Defaults to 0, meaning not throttled.
+     */
+    public void setLoginThrottleMaxFailuresPerUsername(final int loginThrottleMaxFailuresPerUsername) {
+        this.loginThrottleMaxFailuresPerUsername = loginThrottleMaxFailuresPerUsername;
+        configureLoginThrottles();
+    }
+
+    public int getLoginThrottleMaxFailuresPerHost() {
+        return loginThrottleMaxFailuresPerHost;
+    }
+
+    /**
+     * The number of recent failed logins from a host at which further logins from that host are rejected.  Defaults
+     * to 0, meaning not throttled.
+     */
+    public void setLoginThrottleMaxFailuresPerHost(final int loginThrottleMaxFailuresPerHost) {
+        this.loginThrottleMaxFailuresPerHost = loginThrottleMaxFailuresPerHost;
+        configureLoginThrottles();
+    }
+
+    public long getLoginThrottleWindowSeconds() {
+        return loginThrottleWindowSeconds;
+    }
+
+    /**
+     * The number of recent failed logins is halved each time this period elapses; defaults to 60.
+     */
+    public void setLoginThrottleWindowSeconds(final long loginThrottleWindowSeconds) {
+        this.loginThrottleWindowSeconds = loginThrottleWindowSeconds;
+        configureLoginThrottles();
+    }
+
+    public boolean isLoginThrottleLocksUser() {
+        return loginThrottleLocksUser;
+    }
+
+    /**
+     * Whether a user whose own recent failed logins reach the {@link #setLoginThrottleMaxFailuresPerUsername(int) max}
+     * should also be {@link ApplicationUser#lock() locked} (in the background), requiring an administrator to unlock
+     * them.  (The failures of other usernames that happen to share the throttle's slot are not counted.)  Defaults to
+     * <tt>false</tt>.  The admin user is never locked.
+     */
+    public void setLoginThrottleLocksUser(final boolean loginThrottleLocksUser) {
+        this.loginThrottleLocksUser = loginThrottleLocksUser;
+    }
+
+    private void configureLoginThrottles() {
+        final long windowMillis = loginThrottleWindowSeconds * 1000L;
+        usernameThrottle = loginThrottleMaxFailuresPerUsername > 0
+                ? new LoginThrottle(LOGIN_THROTTLE_STRIPES, loginThrottleMaxFailuresPerUsername, windowMillis)
+                : null;
+        hostThrottle = loginThrottleMaxFailuresPerHost > 0
+                ? new LoginThrottle(LOGIN_THROTTLE_STRIPES, loginThrottleMaxFailuresPerHost, windowMillis)
+                : null;
+    }
+
+    private boolean isLoginThrottled(final String username, final String host) {
+        final LoginThrottle usernameThrottle = this.usernameThrottle;
+        final LoginThrottle hostThrottle = this.hostThrottle;
+        return usernameThrottle != null && usernameThrottle.isThrottled(username) ||
+               hostThrottle != null && hostThrottle.isThrottled(host);
+    }
+
+    private void recordSuccessfulLogin(final String username) {
+        final LoginThrottle usernameThrottle = this.usernameThrottle;
+        if(usernameThrottle != null) {
+            usernameThrottle.recordSuccess(username);
+        }
+    }
+
+    private void recordFailedLogin(final String username, final String host) {
+        final LoginThrottle usernameThrottle = this.usernameThrottle;
+        final LoginThrottle hostThrottle = this.hostThrottle;
+        if(hostThrottle != null) {
+            hostThrottle.recordFailure(host);
+        }
+        if(usernameThrottle != null) {
+            final int ownFailures = usernameThrottle.recordFailure(username);
+            if(loginThrottleLocksUser && ownFailures == loginThrottleMaxFailuresPerUsername) {
+                lockUserInBackground(username);
+            }
+        }
+    }
+
+    private void lockUserInBackground(final String username) {
+        try {
+            getBackgroundExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        lockUser(username);
+                    } catch(final RuntimeException ex) {
+                        // ignore; the user's logins remain throttled
+                    }
+                }
+            });
+        } catch(final RejectedExecutionException ex) {
+            // busy (or shut down); the user's logins remain throttled
+        }
+    }
+
+    private void lockUser(final String username) {
+        execute(new TransactionalClosureWithReturnAbstract<Void>() {
+            @Override
+            public Void execute() {
+                final ApplicationUser applicationUser = applicationUsers.findUserByUsername(username);
+                if(applicationUser != null && applicationUser.disableLock() == null) {
+                    applicationUser.lock();
+                }
+                return null;
+            }
+
+            @Inject
+            private ApplicationUsers applicationUsers;
+        });
+    }
+
     //endregion
 
-    //region > delegateRealm
+    //region > sessionTokens
 
+    private String sessionTokenKeyStorePath;
+    private String sessionTokenKeyStorePassword;
+    private String sessionTokenActiveKeyAlias;
+    private long sessionTokenTimeToLiveSeconds = 900;
 
-    private AuthenticatingRealm delegateAuthenticationRealm;
-    public AuthenticatingRealm getDelegateAuthenticationRealm() {
-        return delegateAuthenticationRealm;
+    private SessionTokens sessionTokens;
+
+    public String getSessionTokenKeyStorePath() {
+        return sessionTokenKeyStorePath;
     }
-    public void setDelegateAuthenticationRealm(AuthenticatingRealm delegateRealm) {
-        this.delegateAuthenticationRealm = delegateRealm;
+
+    /**
+     * The (JCEKS) keystore file holding the secret keys used to sign session tokens; if not set then session tokens
+     * are neither issued nor accepted.
+     *
+     * <p>
+     *     The keystore is read when the realm is initialized, which fails if it cannot be read or does not hold the
+     *     {@link #setSessionTokenActiveKeyAlias(String) active key}.
+     * </p>
+     */
+    public void setSessionTokenKeyStorePath(final String sessionTokenKeyStorePath) {
+        this.sessionTokenKeyStorePath = sessionTokenKeyStorePath;
+        configureSessionTokens();
     }
 
-    public boolean hasDelegateAuthenticationRealm() {
-        return delegateAuthenticationRealm != null;
+    public String getSessionTokenKeyStorePassword() {
+        return sessionTokenKeyStorePassword;
+    }
+
+    /**
+     * The password of the keystore (and of each of its keys).
+     */
+    public void setSessionTokenKeyStorePassword(final String sessionTokenKeyStorePassword) {
+        this.sessionTokenKeyStorePassword = sessionTokenKeyStorePassword;
+        configureSessionTokens();
+    }
+
+    public String getSessionTokenActiveKeyAlias() {
+        return sessionTokenActiveKeyAlias;
+    }
+
+    /**
+     * The alias of the key used to sign new session tokens; tokens signed with any other key in the keystore are
+     * still accepted.
+     */
+    public void setSessionTokenActiveKeyAlias(final String sessionTokenActiveKeyAlias) {
+        this.sessionTokenActiveKeyAlias = sessionTokenActiveKeyAlias;
+        configureSessionTokens();
+    }
+
+    public long getSessionTokenTimeToLiveSeconds() {
+        return sessionTokenTimeToLiveSeconds;
+    }
+
+    /**
+     * How long a session token is accepted after it was issued; defaults to 900 (15 minutes).
+     */
+    public void setSessionTokenTimeToLiveSeconds(final long sessionTokenTimeToLiveSeconds) {
+        this.sessionTokenTimeToLiveSeconds = sessionTokenTimeToLiveSeconds;
+        configureSessionTokens();
+    }
+
+    /**
+     * Whether session tokens are {@link #setSessionTokenKeyStorePath(String) configured}.
+     */
+    public boolean isSessionTokensEnabled() {
+        return sessionTokens != null;
+    }
+
+    private void configureSessionTokens() {
+        sessionTokens = sessionTokenKeyStorePath != null && sessionTokenActiveKeyAlias != null
+                ? new SessionTokens(
+                        new SessionTokenKeys(sessionTokenKeyStorePath, sessionTokenKeyStorePassword, sessionTokenActiveKeyAlias),
+                        sessionTokenTimeToLiveSeconds * 1000L)
+                : null;
+    }
+
+    /**
+     * Issues a session token for the (already authenticated) principals, or returns <tt>null</tt> if session tokens
+     * are not configured.  Exposed to clients (for example, through the RestfulObjects viewer) by
+     * <code>MeService#sessionToken()</code>.
+     *
+     * <p>
+     *     The token may subsequently be presented instead of the password.  It is accepted (without the user's
+     *     password being verified, and if the user's account and permissions are cached, without any database lookup) until it expires,
+     *     provided that the user's account is not disabled in the meantime.  Changes to the user's roles or
+     *     permissions are picked up when the token is next presented.
+     * </p>
+     */
+    public String issueSessionToken(final PrincipalCollection principals) {
+        final SessionTokens sessionTokens = this.sessionTokens;
+        if(sessionTokens == null || principals == null) {
+            return null;
+        }
+        final PrincipalForApplicationUser principal = principals.oneByType(PrincipalForApplicationUser.class);
+        if(principal == null) {
+            return null;
+        }
+        return sessionTokens.issue(principal.getLoginUsername(), principal.getPermissionStamp());
+    }
+
+    /**
+     * @return <tt>null</tt> if the token is invalid (or for a different user).
+     */
+    private AuthenticationInfo authenticateSessionToken(
+            final String username,
+            final String token,
+            final AuthenticationToken authenticationToken) {
+        final SessionTokens.SessionToken sessionToken = sessionTokens.verify(token);
+        if(sessionToken == null || !sessionToken.getUsername().equals(username)) {
+            return null;
+        }
+
+        final AccountRecord cachedAccount = AuthenticationCaches.ACCOUNTS.get(username);
+        PrincipalForApplicationUser principal = cachedAccount != null ? principalFor(cachedAccount) : null;
+        if(principal == null ||
+           (principal.getPermissionStamp() != sessionToken.getPermissionStamp() &&
+            principal.getLoadedAt() < sessionToken.getIssuedAt())) {
+            // not cached, or cached before the token was issued and since changed
+            principal = lookupPrincipalCoalesced(username, hasDelegateAuthenticationRealm()).principal;
+        }
+        if(principal == null) {
+            return null;
+        }
+        if (principal.isDisabled()) {
+            throw new DisabledAccountException();
+        }
+        return new AuthInfoForApplicationUser(principal, getName(), authenticationToken.getCredentials());
+    }
+
+    //endregion
+
+    //region > rehash
+
+    private boolean rehashPasswordsOnLogin = true;
+
+    private final Set<String> pendingRehashes = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    public boolean isRehashPasswordsOnLogin() {
+        return rehashPasswordsOnLogin;
+    }
+
+    /**
+     * Whether, on a successful login of a local user, the stored password should be re-encrypted (in the background)
+     * if the {@link RehashablePasswordEncryptionService password encryption service} indicates that it
+     * {@link RehashablePasswordEncryptionService#needsRehash(String) needs rehash}; defaults to <tt>true</tt>.
+     */
+    public void setRehashPasswordsOnLogin(final boolean rehashPasswordsOnLogin) {
+        this.rehashPasswordsOnLogin = rehashPasswordsOnLogin;
+    }
+
+    private void rehashIfRequired(final String username, final char[] password, final String encryptedPassword) {
+        if(!rehashPasswordsOnLogin) {
+            return;
+        }
+        final PasswordEncryptionService passwordEncryptionService = this.passwordEncryptionService;
+        if(!(passwordEncryptionService instanceof RehashablePasswordEncryptionService) ||
+           !((RehashablePasswordEncryptionService) passwordEncryptionService).needsRehash(encryptedPassword)) {
+            return;
+        }
+        if(!pendingRehashes.add(username)) {
+            return;
+        }
+        final String clearTextPassword = new String(password);
+        try {
+            getBackgroundExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        rehash(username, clearTextPassword, encryptedPassword);
+                    } catch(final RuntimeException ex) {
+                        // ignore; will be attempted again at the user's next login
+                    } finally {
+                        pendingRehashes.remove(username);
+                    }
+                }
+            });
+        } catch(final RejectedExecutionException ex) {
+            // busy (or shut down); will be attempted again at the user's next login
+            pendingRehashes.remove(username);
+        }
+    }
+
+    private void rehash(final String username, final String password, final String encryptedPassword) {
+        execute(new TransactionalClosureWithReturnAbstract<Void>() {
+            @Override
+            public Void execute() {
+                final ApplicationUser applicationUser = applicationUsers.findUserByUsername(username);
+                // unless the password has been changed in the meantime
+                if(applicationUser != null && Objects.equal(applicationUser.getEncryptedPassword(), encryptedPassword)) {
+                    applicationUser.updatePassword(password);
+                }
+                return null;
+            }
+
+            @Inject
+            private ApplicationUsers applicationUsers;
+        });
+    }
+
+    //endregion
+
+    //region > provisioning
+
+    private boolean provisionDelegateUsersInBackground;
+    private String provisionedDelegateUserRoleName;
+
+    private final Set<String> pendingProvisions = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicLong provisionFailureCount = new AtomicLong();
+
+    public boolean isProvisionDelegateUsersInBackground() {
+        return provisionDelegateUsersInBackground;
+    }
+
+    /**
+     * Whether, on the first login of a user (when there is a delegate authentication realm), the corresponding
+     * {@link AccountType#DELEGATED delegated} user should be created in the background rather than within the login;
+     * defaults to <tt>false</tt>.
+     *
+     * <p>
+     *     Either way, such users are created disabled (with the
+     *     {@link #setProvisionedDelegateUserRoleName(String) configured role}, if any), so the login itself is rejected; in
+     *     the background this is done without waiting for the user to be created.
+     * </p>
+     *
+     * <p>
+     *     Provisioning of a given user is deduplicated only within this JVM; should the user be created concurrently
+     *     by another node then the resulting constraint violation is ignored.  Any other failure is counted (see
+     *     {@link #getProvisionFailureCount()}), and provisioning is attempted again at the user's next login.
+     * </p>
+     */
+    public void setProvisionDelegateUsersInBackground(final boolean provisionDelegateUsersInBackground) {
+        this.provisionDelegateUsersInBackground = provisionDelegateUsersInBackground;
+    }
+
+    public String getProvisionedDelegateUserRoleName() {
+        return provisionedDelegateUserRoleName;
+    }
+
+    /**
+     * The name of the role given to the {@link AccountType#DELEGATED delegated} users that are created on their first
+     * login (typically <tt>isis-module-security-regular-user</tt>); the role is given only if it exists.  Defaults to
+     * <tt>null</tt>, that is, such users are created without any role.
+     */
+    public void setProvisionedDelegateUserRoleName(final String provisionedDelegateUserRoleName) {
+        this.provisionedDelegateUserRoleName = provisionedDelegateUserRoleName;
+    }
+
+    /**
+     * Number of users that could not be {@link #setProvisionDelegateUsersInBackground(boolean) provisioned in the
+     * background}, other than because they had been created concurrently.
+     */
+    public long getProvisionFailureCount() {
+        return provisionFailureCount.get();
+    }
+
+    /**
+     * Number of users currently being provisioned in the background.
+     */
+    int getPendingProvisionCount() {
+        return pendingProvisions.size();
+    }
+
+    private void provisionUserInBackground(final String username) {
+        if(!pendingProvisions.add(username)) {
+            return;
+        }
+        try {
+            getBackgroundExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        provisionUser(username);
+                    } catch(final RuntimeException ex) {
+                        // if created concurrently elsewhere, then nothing to do; otherwise will be attempted again at
+                        // the user's next login
+                        if(!isConstraintViolation(ex)) {
+                            provisionFailureCount.incrementAndGet();
+                        }
+                    } finally {
+                        pendingProvisions.remove(username);
+                    }
+                }
+            });
+        } catch(final RejectedExecutionException ex) {
+            // busy (or shut down); will be attempted again at the user's next login
+            pendingProvisions.remove(username);
+        }
+    }
+
+    private void provisionUser(final String username) {
+        execute(new TransactionalClosureWithReturnAbstract<Void>() {
+            @Override
+            public Void execute() {
+                applicationUsers.findOrCreateUserByUsername(username, provisionedDelegateUserRoleName);
+                return null;
+            }
+
+            @Inject
+            private ApplicationUsers applicationUsers;
+        });
+    }
+
+    //endregion
+
+    //region > userActivity
+
+    static final int USER_ACTIVITY_FLUSH_BATCH_SIZE = 500;
+
+    private boolean trackUserActivity;
+    private long userActivityFlushIntervalSeconds = 60;
+    private int userActivityMaxPendingUsers = 10000;
+    private long userActivityResolutionSeconds = 60;
+
+    private volatile UserActivityRecorder userActivityRecorder;
+    private volatile ScheduledThreadPoolExecutor userActivityFlusher;
+    private final AtomicBoolean userActivityFlushRequested = new AtomicBoolean();
+
+    public boolean isTrackUserActivity() {
+        return trackUserActivity;
+    }
+
+    /**
+     * Whether to maintain each user's {@link ApplicationUser#getLastLoginAt() last login} and
+     * {@link ApplicationUser#getLastActivityAt() last activity}; defaults to <tt>false</tt>.
+     *
+     * <p>
+     *     These are accumulated in memory and written by a background thread, so do not add any database writes to
+     *     logins.  They are written to each user's (unversioned) {@link ApplicationUserActivity activity} rather than
+     *     to the user, so that neither the user is loaded nor do these writes conflict with changes to the user.  Each
+     *     batch is written in its own transaction; a batch that fails is retried at the next write.  Any outstanding
+     *     activity is written when the realm is {@link #destroy() destroyed}.
+     * </p>
+     */
+    public void setTrackUserActivity(final boolean trackUserActivity) {
+        this.trackUserActivity = trackUserActivity;
+        configureUserActivityTracking();
+    }
+
+    public long getUserActivityFlushIntervalSeconds() {
+        return userActivityFlushIntervalSeconds;
+    }
+
+    /**
+     * How often accumulated activity is written; defaults to 60.
+     */
+    public void setUserActivityFlushIntervalSeconds(final long userActivityFlushIntervalSeconds) {
+        this.userActivityFlushIntervalSeconds = userActivityFlushIntervalSeconds;
+        configureUserActivityTracking();
+    }
+
+    public int getUserActivityMaxPendingUsers() {
+        return userActivityMaxPendingUsers;
+    }
+
+    /**
+     * The maximum number of users whose activity is accumulated between writes; defaults to 10000.  Reaching this
+     * bound causes the activity to be written early; activity of further users is dropped until then.
+     */
+    public void setUserActivityMaxPendingUsers(final int userActivityMaxPendingUsers) {
+        this.userActivityMaxPendingUsers = userActivityMaxPendingUsers;
+        configureUserActivityTracking();
+    }
+
+    public long getUserActivityResolutionSeconds() {
+        return userActivityResolutionSeconds;
+    }
+
+    /**
+     * Activity within this period of a user's previously accumulated activity is ignored; defaults to 60.
+     */
+    public void setUserActivityResolutionSeconds(final long userActivityResolutionSeconds) {
+        this.userActivityResolutionSeconds = userActivityResolutionSeconds;
+        configureUserActivityTracking();
+    }
+
+    /**
+     * Number of logins or activity not written because too many users were pending.
+     */
+    public long getUserActivityDroppedCount() {
+        final UserActivityRecorder userActivityRecorder = this.userActivityRecorder;
+        return userActivityRecorder != null ? userActivityRecorder.getDroppedCount() : 0;
+    }
+
+    private synchronized void configureUserActivityTracking() {
+        shutdownUserActivityFlusher();
+        if(!trackUserActivity || userActivityMaxPendingUsers <= 0 || userActivityFlushIntervalSeconds <= 0) {
+            return;
+        }
+        userActivityRecorder = new UserActivityRecorder(userActivityMaxPendingUsers, userActivityResolutionSeconds * 1000L);
+        userActivityFlusher = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactoryBuilder()
+                        .setNameFormat("isis-module-security-activity-%d")
+                        .setDaemon(true)
+                        .build());
+        userActivityFlusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                flushUserActivity();
+            }
+        }, userActivityFlushIntervalSeconds, userActivityFlushIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    private void recordUserLogin(final String username) {
+        final UserActivityRecorder userActivityRecorder = this.userActivityRecorder;
+        if(userActivityRecorder != null) {
+            userActivityRecorder.recordLogin(username, System.currentTimeMillis());
+            requestUserActivityFlushIfFull(userActivityRecorder);
+        }
+    }
+
+    private void recordUserActivity(final String username) {
+        final UserActivityRecorder userActivityRecorder = this.userActivityRecorder;
+        if(userActivityRecorder != null) {
+            userActivityRecorder.recordActivity(username, System.currentTimeMillis());
+            requestUserActivityFlushIfFull(userActivityRecorder);
+        }
+    }
+
+    private void requestUserActivityFlushIfFull(final UserActivityRecorder userActivityRecorder) {
+        if(!userActivityRecorder.isFull()) {
+            return;
+        }
+        final ScheduledThreadPoolExecutor userActivityFlusher = this.userActivityFlusher;
+        if(userActivityFlusher == null || !userActivityFlushRequested.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            userActivityFlusher.execute(new Runnable() {
+                @Override
+                public void run() {
+                    flushUserActivity();
+                }
+            });
+        } catch(final RejectedExecutionException ex) {
+            // shut down; flushed anyway
+            userActivityFlushRequested.set(false);
+        }
+    }
+
+    private void flushUserActivity() {
+        userActivityFlushRequested.set(false);
+        final UserActivityRecorder userActivityRecorder = this.userActivityRecorder;
+        if(userActivityRecorder == null) {
+            return;
+        }
+        final Map<String, UserActivityRecorder.Activity> activityByUsername = userActivityRecorder.drain();
+        if(activityByUsername.isEmpty()) {
+            return;
+        }
+        final Map<String, UserActivityRecorder.Activity> unwritten = Maps.newHashMap();
+        for (final List<String> usernames : Iterables.partition(activityByUsername.keySet(), USER_ACTIVITY_FLUSH_BATCH_SIZE)) {
+            try {
+                writeUserActivity(usernames, activityByUsername);
+            } catch(final RuntimeException ex) {
+                // eg the activity of a user was concurrently created by another node; retry at the next flush
+                for (final String username : usernames) {
+                    unwritten.put(username, activityByUsername.get(username));
+                }
+            }
+        }
+        if(!unwritten.isEmpty()) {
+            userActivityRecorder.restore(unwritten);
+        }
+    }
+
+    private void writeUserActivity(
+            final List<String> usernames,
+            final Map<String, UserActivityRecorder.Activity> activityByUsername) {
+        execute(new TransactionalClosureWithReturnAbstract<Void>() {
+            @Override
+            public Void execute() {
+                final Set<String> withoutActivity = Sets.newHashSet(usernames);
+                for (final ApplicationUserActivity applicationUserActivity : applicationUsers.findActivitiesByUsernames(usernames)) {
+                    final UserActivityRecorder.Activity activity = activityByUsername.get(applicationUserActivity.getUsername());
+                    if(activity == null) {
+                        continue;
+                    }
+                    applicationUserActivity.merge(activity.getLastLoginAt(), activity.getLastActivityAt());
+                    withoutActivity.remove(applicationUserActivity.getUsername());
+                }
+                for (final String username : withoutActivity) {
+                    final UserActivityRecorder.Activity activity = activityByUsername.get(username);
+                    applicationUsers.newActivity(username).merge(activity.getLastLoginAt(), activity.getLastActivityAt());
+                }
+                return null;
+            }
+
+            @Inject
+            private ApplicationUsers applicationUsers;
+        });
+    }
+
+    /**
+     * Stops the scheduled writes, and writes any outstanding activity.
+     */
+    private synchronized void shutdownUserActivityFlusher() {
+        if(userActivityFlusher == null) {
+            return;
+        }
+        userActivityFlusher.shutdown();
+        try {
+            userActivityFlusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        userActivityFlusher = null;
+        try {
+            flushUserActivity();
+        } catch(final RuntimeException ex) {
+            // Isis may already have been shut down
+        }
+        userActivityRecorder = null;
+    }
+
+    //endregion
+
+    //region > unknownUsernameCache
+
+    private long unknownUsernameCacheMaxSize = 10000;
+    private long unknownUsernameCacheTimeToLiveSeconds;
+
+    public long getUnknownUsernameCacheMaxSize() {
+        return unknownUsernameCacheMaxSize;
+    }
+
+    /**
+     * The maximum number of unknown usernames held in the (process-wide) cache; defaults to 10000.
+     */
+    public void setUnknownUsernameCacheMaxSize(final long unknownUsernameCacheMaxSize) {
+        this.unknownUsernameCacheMaxSize = unknownUsernameCacheMaxSize;
+        configureUnknownUsernameCache();
+    }
+
+    public long getUnknownUsernameCacheTimeToLiveSeconds() {
+        return unknownUsernameCacheTimeToLiveSeconds;
+    }
+
+    /**
+     * How long a username found not to exist is rejected without being looked up again (a username is evicted as
+     * soon as a user with that name is created).  Only applies if there is no
+     * {@link #getDelegateAuthenticationRealm() delegate authentication realm}.
+     *
+     * <p>
+     *     Defaults to 0, meaning that the cache is disabled.
+     * </p>
+     */
+    public void setUnknownUsernameCacheTimeToLiveSeconds(final long unknownUsernameCacheTimeToLiveSeconds) {
+        this.unknownUsernameCacheTimeToLiveSeconds = unknownUsernameCacheTimeToLiveSeconds;
+        configureUnknownUsernameCache();
+    }
+
+    private void configureUnknownUsernameCache() {
+        AuthenticationCaches.claim(this);
+        AuthenticationCaches.UNKNOWN_USERNAMES.configure(
+                unknownUsernameCacheMaxSize, unknownUsernameCacheTimeToLiveSeconds * 1000L);
+    }
+
+    //endregion
+
+    //region > verifiedCredentialsCache
+
+    private long verifiedCredentialsCacheMaxSize = 1000;
+    private long verifiedCredentialsCacheTimeToLiveSeconds;
+
+    public long getVerifiedCredentialsCacheMaxSize() {
+        return verifiedCredentialsCacheMaxSize;
+    }
+
+    /**
+     * The maximum number of users whose verified credentials are held in the (process-wide) cache; defaults to 1000.
+     */
+    public void setVerifiedCredentialsCacheMaxSize(final long verifiedCredentialsCacheMaxSize) {
+        this.verifiedCredentialsCacheMaxSize = verifiedCredentialsCacheMaxSize;
+        configureVerifiedCredentialsCache();
+    }
+
+    public long getVerifiedCredentialsCacheTimeToLiveSeconds() {
+        return verifiedCredentialsCacheTimeToLiveSeconds;
+    }
+
+    /**
+     * How long a password of a local user, once verified, may be accepted again without being re-verified.
+     *
+     * <p>
+     *     Intended for clients that send credentials with every request (such as the RestfulObjects viewer with Basic
+     *     authentication), so should be kept short.  Defaults to 0, meaning that the cache is disabled.
+     * </p>
+     */
+    public void setVerifiedCredentialsCacheTimeToLiveSeconds(final long verifiedCredentialsCacheTimeToLiveSeconds) {
+        this.verifiedCredentialsCacheTimeToLiveSeconds = verifiedCredentialsCacheTimeToLiveSeconds;
+        configureVerifiedCredentialsCache();
+    }
+
+    private void configureVerifiedCredentialsCache() {
+        AuthenticationCaches.claim(this);
+        AuthenticationCaches.CREDENTIALS.configure(
+                verifiedCredentialsCacheMaxSize, verifiedCredentialsCacheTimeToLiveSeconds * 1000L);
+    }
+
+    //endregion
+
+    //region > passwordVerificationExecutor
+
+    private volatile int passwordVerificationThreads;
+    private int passwordVerificationQueueSize = 100;
+    private long passwordVerificationMaxWaitMillis = 5000;
+
+    private volatile PasswordVerificationExecutor passwordVerificationExecutor;
+    private final LatencyStats passwordHashStats = new LatencyStats("passwordHash");
+
+    public int getPasswordVerificationThreads() {
+        return passwordVerificationThreads;
+    }
+
+    /**
+     * The number of threads dedicated to verifying passwords of local users.
+     *
+     * <p>
+     *     Defaults to 0, meaning that passwords are verified on the thread that is logging in.
+     * </p>
+     */
+    public synchronized void setPasswordVerificationThreads(final int passwordVerificationThreads) {
+        this.passwordVerificationThreads = passwordVerificationThreads;
+        shutdownPasswordVerificationExecutor();
+    }
+
+    public int getPasswordVerificationQueueSize() {
+        return passwordVerificationQueueSize;
+    }
+
+    /**
+     * The maximum number of password verifications that may wait for a thread; further logins are rejected
+     * immediately.  Defaults to 100.
+     */
+    public synchronized void setPasswordVerificationQueueSize(final int passwordVerificationQueueSize) {
+        this.passwordVerificationQueueSize = passwordVerificationQueueSize;
+        shutdownPasswordVerificationExecutor();
+    }
+
+    public long getPasswordVerificationMaxWaitMillis() {
+        return passwordVerificationMaxWaitMillis;
+    }
+
+    /**
+     * How long a login will wait for its password to be verified (including time queued) before being rejected.
+     * Defaults to 5000.
+     */
+    public synchronized void setPasswordVerificationMaxWaitMillis(final long passwordVerificationMaxWaitMillis) {
+        this.passwordVerificationMaxWaitMillis = passwordVerificationMaxWaitMillis;
+        shutdownPasswordVerificationExecutor();
+    }
+
+    /**
+     * Number of password verifications currently waiting for a thread.
+     */
+    public synchronized int getPasswordVerificationQueueDepth() {
+        return passwordVerificationExecutor != null ? passwordVerificationExecutor.getQueueDepth() : 0;
+    }
+
+    /**
+     * Number of logins rejected because the password verification queue was full or the maximum wait was exceeded.
+     */
+    public synchronized long getPasswordVerificationRejectedCount() {
+        return passwordVerificationExecutor != null
+                ? passwordVerificationExecutor.getRejectedCount() + passwordVerificationExecutor.getTimedOutCount()
+                : 0;
+    }
+
+    /**
+     * Time taken by the dedicated threads to verify each password (excluding time queued).
+     */
+    public LatencyStats getPasswordHashStats() {
+        return passwordHashStats;
+    }
+
+    /**
+     * Created lazily, once all properties have been set; <tt>null</tt> if no threads are dedicated.
+     */
+    private PasswordVerificationExecutor getPasswordVerificationExecutor() {
+        final PasswordVerificationExecutor passwordVerificationExecutor = this.passwordVerificationExecutor;
+        if(passwordVerificationExecutor != null || passwordVerificationThreads <= 0) {
+            return passwordVerificationExecutor;
+        }
+        return createPasswordVerificationExecutorIfRequired();
+    }
+
+    private synchronized PasswordVerificationExecutor createPasswordVerificationExecutorIfRequired() {
+        if(passwordVerificationExecutor == null && passwordVerificationThreads > 0) {
+            passwordVerificationExecutor = new PasswordVerificationExecutor(
+                    passwordVerificationThreads,
+                    passwordVerificationQueueSize,
+                    passwordVerificationMaxWaitMillis,
+                    passwordHashStats);
+        }
+        return passwordVerificationExecutor;
+    }
+
+    private synchronized void shutdownPasswordVerificationExecutor() {
+        if(passwordVerificationExecutor != null) {
+            passwordVerificationExecutor.shutdown();
+            passwordVerificationExecutor = null;
+        }
+    }
+
+    //endregion
+
+    //region > delegateRealm
+
+
+    private AuthenticatingRealm delegateAuthenticationRealm;
+    public AuthenticatingRealm getDelegateAuthenticationRealm() {
+        return delegateAuthenticationRealm;
+    }
+    public void setDelegateAuthenticationRealm(AuthenticatingRealm delegateRealm) {
+        this.delegateAuthenticationRealm = delegateRealm;
+    }
+
+    public boolean hasDelegateAuthenticationRealm() {
+        return delegateAuthenticationRealm != null;
+    }
+
+    private final LatencyStats delegateAuthenticationStats = new LatencyStats("delegateAuthentication");
+
+    /**
+     * Time taken by the {@link #getDelegateAuthenticationRealm() delegate authentication realm} to authenticate
+     * delegated users (excluding any outcomes obtained from the cache).
+     */
+    public LatencyStats getDelegateAuthenticationStats() {
+        return delegateAuthenticationStats;
+    }
+
+    /**
+     * @return <tt>null</tt> if not authenticated by the delegate realm (or if there is none).
+     */
+    private AuthenticationInfo authenticateWithDelegate(final AuthenticationToken token) {
+        final AuthenticatingRealm delegateAuthenticationRealm = this.delegateAuthenticationRealm;
+        if (delegateAuthenticationRealm == null) {
+            return null;
+        }
+        return AuthenticationCaches.DELEGATE_AUTHENTICATIONS.authenticate(
+                delegateAuthenticationRealm, token, delegateAuthenticationStats);
+    }
+
+    private long delegateAuthenticationCacheMaxSize = 1000;
+    private long delegateAuthenticationCacheTimeToLiveSeconds;
+    private long delegateAuthenticationCacheFailureTimeToLiveSeconds;
+
+    public long getDelegateAuthenticationCacheMaxSize() {
+        return delegateAuthenticationCacheMaxSize;
+    }
+
+    /**
+     * The maximum number of successful (and, separately, failed) delegate authentications held in the
+     * (process-wide) cache; defaults to 1000.
+     */
+    public void setDelegateAuthenticationCacheMaxSize(final long delegateAuthenticationCacheMaxSize) {
+        this.delegateAuthenticationCacheMaxSize = delegateAuthenticationCacheMaxSize;
+        configureDelegateAuthenticationCache();
+    }
+
+    public long getDelegateAuthenticationCacheTimeToLiveSeconds() {
+        return delegateAuthenticationCacheTimeToLiveSeconds;
+    }
+
+    /**
+     * How long a successful authentication by the delegate realm may be reused for the same username and password.
+     * Defaults to 0, meaning that successes are not cached.
+     */
+    public void setDelegateAuthenticationCacheTimeToLiveSeconds(final long delegateAuthenticationCacheTimeToLiveSeconds) {
+        this.delegateAuthenticationCacheTimeToLiveSeconds = delegateAuthenticationCacheTimeToLiveSeconds;
+        configureDelegateAuthenticationCache();
+    }
+
+    public long getDelegateAuthenticationCacheFailureTimeToLiveSeconds() {
+        return delegateAuthenticationCacheFailureTimeToLiveSeconds;
+    }
+
+    /**
+     * How long a failed authentication by the delegate realm may be reused for the same username and password.
+     * Defaults to 0, meaning that failures are not cached.
+     */
+    public void setDelegateAuthenticationCacheFailureTimeToLiveSeconds(final long delegateAuthenticationCacheFailureTimeToLiveSeconds) {
+        this.delegateAuthenticationCacheFailureTimeToLiveSeconds = delegateAuthenticationCacheFailureTimeToLiveSeconds;
+        configureDelegateAuthenticationCache();
+    }
+
+    private void configureDelegateAuthenticationCache() {
+        AuthenticationCaches.claim(this);
+        AuthenticationCaches.DELEGATE_AUTHENTICATIONS.configure(
+                delegateAuthenticationCacheMaxSize,
+                delegateAuthenticationCacheTimeToLiveSeconds * 1000L,
+                delegateAuthenticationCacheFailureTimeToLiveSeconds * 1000L);
+    }
+
+    //endregion
+
+    //region > parallelDelegateAuthentication
+
+    private boolean parallelDelegateAuthentication;
+    private long delegateAuthenticationTimeoutMillis = 10000;
+    private long localLookupTimeoutMillis = 10000;
+
+    private ThreadPoolExecutor parallelExecutor;
+
+    public boolean isParallelDelegateAuthentication() {
+        return parallelDelegateAuthentication;
+    }
+
+    /**
+     * Whether, for a user whose account is not cached, the user should be authenticated by the
+     * {@link #getDelegateAuthenticationRealm() delegate authentication realm} at the same time as their account is
+     * looked up (rather than once the account is known to be {@link AccountType#DELEGATED delegated}).  Defaults to
+     * <tt>false</tt>.
+     *
+     * <p>
+     *     Note that this means that the passwords of {@link AccountType#LOCAL local} users are also passed to the
+     *     delegate realm.
+     * </p>
+     */
+    public void setParallelDelegateAuthentication(final boolean parallelDelegateAuthentication) {
+        this.parallelDelegateAuthentication = parallelDelegateAuthentication;
+    }
+
+    public long getDelegateAuthenticationTimeoutMillis() {
+        return delegateAuthenticationTimeoutMillis;
+    }
+
+    /**
+     * In parallel mode, how long to wait for the delegate authentication realm; defaults to 10000.
+     */
+    public void setDelegateAuthenticationTimeoutMillis(final long delegateAuthenticationTimeoutMillis) {
+        this.delegateAuthenticationTimeoutMillis = delegateAuthenticationTimeoutMillis;
+    }
+
+    public long getLocalLookupTimeoutMillis() {
+        return localLookupTimeoutMillis;
+    }
+
+    /**
+     * In parallel mode, how long to wait for the user's account to be looked up; defaults to 10000.
+     */
+    public void setLocalLookupTimeoutMillis(final long localLookupTimeoutMillis) {
+        this.localLookupTimeoutMillis = localLookupTimeoutMillis;
+    }
+
+    private LookupResult lookupPrincipalInParallelWithDelegate(
+            final AuthenticationToken token,
+            final String username,
+            final boolean autoCreateUser) {
+        final Future<AuthenticationInfo> delegateLeg = submitLeg(new Callable<AuthenticationInfo>() {
+            @Override
+            public AuthenticationInfo call() {
+                return authenticateWithDelegate(token);
+            }
+        });
+        final Future<LookupResult> localLeg = submitLeg(new Callable<LookupResult>() {
+            @Override
+            public LookupResult call() {
+                return lookupPrincipalCoalesced(username, autoCreateUser);
+            }
+        });
+
+        final LookupResult lookupResult = joinLeg(localLeg, localLookupTimeoutMillis);
+        final PrincipalForApplicationUser principal = lookupResult.principal;
+        if(principal == null || principal.isDisabled() || principal.getAccountType() != AccountType.DELEGATED) {
+            // not needed (but allowed to complete)
+            delegateLeg.cancel(false);
+            return lookupResult;
+        }
+        final AuthenticationInfo delegateAccount = joinLeg(delegateLeg, delegateAuthenticationTimeoutMillis);
+        return new LookupResult(principal, true, delegateAccount);
+    }
+
+    /**
+     * Runs the leg on the parallel executor, or if saturated, in the calling thread.
+     */
+    private <T> Future<T> submitLeg(final Callable<T> leg) {
+        try {
+            return getParallelExecutor().submit(leg);
+        } catch(final RejectedExecutionException ex) {
+            final FutureTask<T> task = new FutureTask<T>(leg);
+            task.run();
+            return task;
+        }
+    }
+
+    private static <T> T joinLeg(final Future<T> leg, final long timeoutMillis) {
+        try {
+            return timeoutMillis > 0 ? leg.get(timeoutMillis, TimeUnit.MILLISECONDS) : leg.get();
+        } catch (final TimeoutException ex) {
+            leg.cancel(true);
+            throw new AuthenticationException("Timed out");
+        } catch (final InterruptedException ex) {
+            leg.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new AuthenticationException(ex);
+        } catch (final ExecutionException ex) {
+            throw Throwables.propagate(ex.getCause());
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getParallelExecutor() {
+        if(parallelExecutor == null) {
+            parallelExecutor = new ThreadPoolExecutor(
+                    0, 64, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                    new ThreadFactoryBuilder()
+                            .setNameFormat("isis-module-security-parallel-%d")
+                            .setDaemon(true)
+                            .build());
+        }
+        return parallelExecutor;
+    }
+
+    private synchronized void shutdownParallelExecutor() {
+        if(parallelExecutor != null) {
+            parallelExecutor.shutdownNow();
+            parallelExecutor = null;
+        }
+    }
+
+    //endregion
+
+    //region > accountCache
+
+    private long accountCacheMaxSize = 1000;
+    private long accountCacheTimeToLiveSeconds;
+
+    public long getAccountCacheMaxSize() {
+        return accountCacheMaxSize;
+    }
+
+    /**
+     * The maximum number of accounts held in the (process-wide) account cache; defaults to 1000.
+     */
+    public void setAccountCacheMaxSize(final long accountCacheMaxSize) {
+        this.accountCacheMaxSize = accountCacheMaxSize;
+        configureAccountCache();
+    }
+
+    public long getAccountCacheTimeToLiveSeconds() {
+        return accountCacheTimeToLiveSeconds;
+    }
+
+    /**
+     * How long an account looked up from the database may be reused for subsequent logins without another lookup.
+     *
+     * <p>
+     *     So that such a login does not need an Isis session (to load the user's permissions), enabling the account
+     *     cache also enables the {@link #setPermissionSetCacheTimeToLiveSeconds(long) permission set cache}, with at
+     *     least the same time-to-live.
+     * </p>
+     *
+     * <p>
+     *     Defaults to 0, meaning that the account cache is disabled.
+     * </p>
+     */
+    public void setAccountCacheTimeToLiveSeconds(final long accountCacheTimeToLiveSeconds) {
+        this.accountCacheTimeToLiveSeconds = accountCacheTimeToLiveSeconds;
+        configureAccountCache();
+    }
+
+    private void configureAccountCache() {
+        AuthenticationCaches.claim(this);
+        AuthenticationCaches.ACCOUNTS.configure(accountCacheMaxSize, accountCacheTimeToLiveSeconds * 1000L);
+        configurePermissionSetCache();
+    }
+
+    //endregion
+
+    //region > permissionSetCache
+
+    private long permissionSetCacheMaxSize = 1000;
+    private long permissionSetCacheTimeToLiveSeconds;
+
+    public long getPermissionSetCacheMaxSize() {
+        return permissionSetCacheMaxSize;
+    }
+
+    /**
+     * The maximum number of distinct combinations of roles whose permission sets are held in the (process-wide)
+     * permission set cache; defaults to 1000.
+     */
+    public void setPermissionSetCacheMaxSize(final long permissionSetCacheMaxSize) {
+        this.permissionSetCacheMaxSize = permissionSetCacheMaxSize;
+        configurePermissionSetCache();
+    }
+
+    public long getPermissionSetCacheTimeToLiveSeconds() {
+        return permissionSetCacheTimeToLiveSeconds;
+    }
+
+    /**
+     * How long the permission set built for one user may be shared with other users that have exactly the same roles,
+     * without being looked up again.
+     *
+     * <p>
+     *     Defaults to 0, meaning that the permission set cache is disabled (unless the
+     *     {@link #setAccountCacheTimeToLiveSeconds(long) account cache} is enabled, whose time-to-live is used
+     *     instead if longer).
+     * </p>
+     */
+    public void setPermissionSetCacheTimeToLiveSeconds(final long permissionSetCacheTimeToLiveSeconds) {
+        this.permissionSetCacheTimeToLiveSeconds = permissionSetCacheTimeToLiveSeconds;
+        configurePermissionSetCache();
+    }
+
+    private void configurePermissionSetCache() {
+        AuthenticationCaches.claim(this);
+        final long timeToLiveSeconds = Math.max(permissionSetCacheTimeToLiveSeconds, accountCacheTimeToLiveSeconds);
+        ApplicationPermissionValueSetCache.configure(permissionSetCacheMaxSize, timeToLiveSeconds * 1000L);
+    }
+
+    //endregion
+
+    //region > permissionResolverCache
+
+    private final PermissionResolverForIsisShiroAuthorizor permissionResolver = new PermissionResolverForIsisShiroAuthorizor();
+
+    private long permissionResolverCacheMaxSize = 10000;
+
+    public long getPermissionResolverCacheMaxSize() {
+        return permissionResolverCacheMaxSize;
+    }
+
+    /**
+     * The maximum number of permission strings (as passed in by Isis' Shiro authorizor, one per feature and mode)
+     * whose parsed form is cached, so that they are not parsed again for every check.
+     *
+     * <p>
+     *     Defaults to 10000; set to 0 to disable.
+     * </p>
+     */
+    public void setPermissionResolverCacheMaxSize(final long permissionResolverCacheMaxSize) {
+        this.permissionResolverCacheMaxSize = permissionResolverCacheMaxSize;
+        permissionResolver.configure(permissionResolverCacheMaxSize);
+    }
+
+    //endregion
+
+    //region > stats
+
+    private final LatencyStats sessionStats = new LatencyStats("session");
+    private final LatencyStats lookupStats = new LatencyStats("lookup");
+    private final LatencyStats principalBuildStats = new LatencyStats("principalBuild");
+    private final LatencyStats passwordCheckStats = new LatencyStats("passwordCheck");
+
+    /**
+     * Time taken to look up an account from the database, overall (including opening the Isis session and the
+     * transaction, but excluding the password check, which is made once the session has been closed).
+     */
+    public LatencyStats getSessionStats() {
+        return sessionStats;
+    }
+
+    /**
+     * Time taken to find (or create) the {@link ApplicationUser}.
+     */
+    public LatencyStats getLookupStats() {
+        return lookupStats;
+    }
+
+    /**
+     * Time taken to build the {@link PrincipalForApplicationUser} (including its roles and permissions) from the
+     * {@link ApplicationUser}.
+     */
+    public LatencyStats getPrincipalBuildStats() {
+        return principalBuildStats;
+    }
+
+    /**
+     * Time taken to verify the password of local users (including any time queued for the
+     * {@link #getPasswordHashStats() password verification threads}).
+     */
+    public LatencyStats getPasswordCheckStats() {
+        return passwordCheckStats;
+    }
+
+    //endregion
+
+    //region > backgroundExecutor
+
+    private ThreadPoolExecutor backgroundExecutor;
+
+    /**
+     * Single thread for (best-effort) updates to users made as a side-effect of logging in, such as rehashing their
+     * password, locking them or creating them.
+     */
+    private synchronized ThreadPoolExecutor getBackgroundExecutor() {
+        if(backgroundExecutor == null) {
+            backgroundExecutor = new ThreadPoolExecutor(
+                    1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(100),
+                    new ThreadFactoryBuilder()
+                            .setNameFormat("isis-module-security-background-%d")
+                            .setDaemon(true)
+                            .build());
+        }
+        return backgroundExecutor;
+    }
+
+    private synchronized void shutdownBackgroundExecutor() {
+        if(backgroundExecutor != null) {
+            backgroundExecutor.shutdown();
+            backgroundExecutor = null;
+        }
+    }
+
+    //endregion
+
+    //region > onInit (Shiro API)
+
+    /**
+     * Claims the process-wide {@link AuthenticationCaches caches} (even if none is configured), so that a second
+     * realm cannot silently share or reconfigure them, and checks that the keystore for
+     * {@link #setSessionTokenKeyStorePath(String) session tokens} (if configured) can be read.
+     */
+    @Override
+    protected void onInit() {
+        super.onInit();
+        AuthenticationCaches.claim(this);
+        final SessionTokens sessionTokens = this.sessionTokens;
+        if(sessionTokens != null) {
+            sessionTokens.validate();
+        }
+    }
+
+    //endregion
+
+    //region > destroy (Shiro API)
+
+    @Override
+    public void destroy() throws Exception {
+        shutdownUserActivityFlusher();
+        shutdownPasswordVerificationExecutor();
+        shutdownBackgroundExecutor();
+        shutdownParallelExecutor();
+        AuthenticationCaches.release(this);
     }
 
     //endregion
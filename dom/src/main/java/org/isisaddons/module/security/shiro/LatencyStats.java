@@ -0,0 +1,103 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe accumulator of the timings of one phase of authentication (or authorization), as exposed by
+ * {@link IsisModuleSecurityRealm}.
+ */
+public class LatencyStats {
+
+    private final String name;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public LatencyStats(final String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    //region > record
+
+    /**
+     * Records the time elapsed since <tt>startNanos</tt> (as obtained from {@link System#nanoTime()}).
+     */
+    public void recordSince(final long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public void record(final long nanos) {
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxNanos.get())) {
+            if (maxNanos.compareAndSet(max, nanos)) {
+                break;
+            }
+        }
+    }
+
+    public void reset() {
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    //endregion
+
+    //region > count, totalNanos, maxNanos, meanNanos
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public long getMeanNanos() {
+        final long count = getCount();
+        return count != 0 ? getTotalNanos() / count : 0;
+    }
+
+    //endregion
+
+    //region > toString
+
+    @Override
+    public String toString() {
+        return name
+                + "{count=" + getCount()
+                + ", meanMicros=" + TimeUnit.NANOSECONDS.toMicros(getMeanNanos())
+                + ", maxMicros=" + TimeUnit.NANOSECONDS.toMicros(getMaxNanos())
+                + "}";
+    }
+
+    //endregion
+
+}
@@ -0,0 +1,188 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Counts recent failed logins per key (a username or a host), so that {@link IsisModuleSecurityRealm} can reject
+ * further attempts before performing any database lookup or password verification.
+ *
+ * <p>
+ *     Keys are hashed onto a fixed number of stripes, each an atomic counter, so the throttle uses constant memory and
+ *     no locks however many keys are seen.  (Keys that share a stripe share a count, so the number of stripes should
+ *     be large relative to the number of keys expected to be failing at any one time.)  Each counter records the
+ *     time window of its most recent failure along with the count, and the count is halved for every window that has
+ *     since elapsed.
+ * </p>
+ *
+ * <p>
+ *     A successful login must not clear failures made by other keys that happen to share its stripe (an attacker
+ *     could otherwise reset the count for their target by logging in as a colliding user).  So the failures of each
+ *     key are also counted exactly, in a bounded map, and a success subtracts only that key's own (decayed) failures
+ *     from the stripe.  If the key's own count has been evicted from the map then a success subtracts nothing, and
+ *     its failures simply decay.
+ * </p>
+ *
+ * <p>
+ *     Throttling is by stripe (it is temporary, so a colliding key being throttled too is acceptable), but
+ *     {@link #recordFailure(String) recordFailure} returns the key's own count, so that anything more permanent
+ *     (such as locking a user) is decided only by the key's own failures.
+ * </p>
+ */
+class LoginThrottle {
+
+    private static final int COUNT_BITS = 20;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    private static final long WINDOW_MASK = (1L << (64 - COUNT_BITS)) - 1;
+
+    private final AtomicLongArray stripes;
+    private final ConcurrentMap<String, AtomicLong> ownFailures;
+    private final int stripeMask;
+    private final int maxFailures;
+    private final long windowMillis;
+
+    /**
+     * @param stripes - rounded up to a power of two.
+     * @param maxFailures - number of (decayed) failures at which further attempts are rejected.
+     * @param windowMillis - each elapsed window halves the number of failures.
+     */
+    LoginThrottle(final int stripes, final int maxFailures, final long windowMillis) {
+        final int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new AtomicLongArray(size);
+        this.ownFailures = CacheBuilder.newBuilder()
+                .maximumSize(size)
+                .<String, AtomicLong>build()
+                .asMap();
+        this.stripeMask = size - 1;
+        this.maxFailures = maxFailures;
+        this.windowMillis = Math.max(1, windowMillis);
+    }
+
+    //region > isThrottled, recordFailure, recordSuccess
+
+    boolean isThrottled(final String key) {
+        return isThrottled(key, System.currentTimeMillis());
+    }
+
+    boolean isThrottled(final String key, final long nowMillis) {
+        if(key == null) {
+            return false;
+        }
+        return count(stripes.get(indexOf(key)), windowOf(nowMillis)) >= maxFailures;
+    }
+
+    /**
+     * @return the number of (decayed) failures of this key alone, including this one; not those of any other keys
+     * that share its stripe.
+     */
+    int recordFailure(final String key) {
+        return recordFailure(key, System.currentTimeMillis());
+    }
+
+    int recordFailure(final String key, final long nowMillis) {
+        if(key == null) {
+            return 0;
+        }
+        final int index = indexOf(key);
+        final long window = windowOf(nowMillis);
+        final long ownCount = incrementOwnFailures(key, window);
+        while (true) {
+            final long current = stripes.get(index);
+            final long count = Math.min(count(current, window) + 1, COUNT_MASK);
+            if(stripes.compareAndSet(index, current, (window << COUNT_BITS) | count)) {
+                return (int) ownCount;
+            }
+        }
+    }
+
+    void recordSuccess(final String key) {
+        recordSuccess(key, System.currentTimeMillis());
+    }
+
+    /**
+     * Removes (only) the key's own failures from its stripe.
+     */
+    void recordSuccess(final String key, final long nowMillis) {
+        if(key == null) {
+            return;
+        }
+        final AtomicLong own = ownFailures.remove(key);
+        if(own == null) {
+            return;
+        }
+        final long window = windowOf(nowMillis);
+        final long ownCount = count(own.get(), window);
+        if(ownCount == 0) {
+            return;
+        }
+        final int index = indexOf(key);
+        while (true) {
+            final long current = stripes.get(index);
+            final long count = Math.max(count(current, window) - ownCount, 0);
+            if(stripes.compareAndSet(index, current, (window << COUNT_BITS) | count)) {
+                return;
+            }
+        }
+    }
+
+    //endregion
+
+    //region > helpers
+
+    private long incrementOwnFailures(final String key, final long window) {
+        AtomicLong own = ownFailures.get(key);
+        if(own == null) {
+            final AtomicLong created = new AtomicLong();
+            own = ownFailures.putIfAbsent(key, created);
+            if(own == null) {
+                own = created;
+            }
+        }
+        while (true) {
+            final long current = own.get();
+            final long count = Math.min(count(current, window) + 1, COUNT_MASK);
+            if(own.compareAndSet(current, (window << COUNT_BITS) | count)) {
+                return count;
+            }
+        }
+    }
+
+    private int indexOf(final String key) {
+        final int h = key.hashCode();
+        return (h ^ (h >>> 16)) & stripeMask;
+    }
+
+    private long windowOf(final long nowMillis) {
+        return (nowMillis / windowMillis) & WINDOW_MASK;
+    }
+
+    private static long count(final long packed, final long window) {
+        final long count = packed & COUNT_MASK;
+        if(count == 0) {
+            return 0;
+        }
+        final long elapsedWindows = (window - (packed >>> COUNT_BITS)) & WINDOW_MASK;
+        return elapsedWindows >= COUNT_BITS ? 0 : count >>> elapsedWindows;
+    }
+
+    //endregion
+
+}
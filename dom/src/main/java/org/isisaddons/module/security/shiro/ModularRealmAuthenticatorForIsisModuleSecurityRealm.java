@@ -0,0 +1,80 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import java.util.Collection;
+import org.apache.shiro.authc.AuthenticationException;
+import org.apache.shiro.authc.AuthenticationInfo;
+import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authc.pam.AuthenticationStrategy;
+import org.apache.shiro.authc.pam.ModularRealmAuthenticator;
+import org.apache.shiro.realm.Realm;
+
+/**
+ * Consults multiple realms as directed by a {@link ShortCircuitingAuthenticationStrategyForIsisModuleSecurityRealm},
+ * that is, in order of their observed success rate and latency, and stopping at the first authoritative answer.
+ *
+ * <p>
+ *     If configured with any other {@link AuthenticationStrategy}, then behaves exactly as Shiro's
+ *     {@link ModularRealmAuthenticator}.
+ * </p>
+ */
+public class ModularRealmAuthenticatorForIsisModuleSecurityRealm extends ModularRealmAuthenticator {
+
+    public ModularRealmAuthenticatorForIsisModuleSecurityRealm() {
+        setAuthenticationStrategy(new ShortCircuitingAuthenticationStrategyForIsisModuleSecurityRealm());
+    }
+
+    @Override
+    protected AuthenticationInfo doMultiRealmAuthentication(final Collection<Realm> realms, final AuthenticationToken token) {
+        final AuthenticationStrategy authenticationStrategy = getAuthenticationStrategy();
+        if (!(authenticationStrategy instanceof ShortCircuitingAuthenticationStrategyForIsisModuleSecurityRealm)) {
+            return super.doMultiRealmAuthentication(realms, token);
+        }
+        final ShortCircuitingAuthenticationStrategyForIsisModuleSecurityRealm strategy =
+                (ShortCircuitingAuthenticationStrategyForIsisModuleSecurityRealm) authenticationStrategy;
+
+        AuthenticationInfo aggregate = strategy.beforeAllAttempts(realms, token);
+        for (final Realm realm : strategy.order(realms)) {
+            if (!realm.supports(token)) {
+                continue;
+            }
+            aggregate = strategy.beforeAttempt(realm, token, aggregate);
+
+            AuthenticationInfo info = null;
+            Throwable t = null;
+            final long start = System.nanoTime();
+            try {
+                info = realm.getAuthenticationInfo(token);
+            } catch (final Throwable throwable) {
+                t = throwable;
+            }
+            final boolean authoritative = strategy.isAuthoritative(info, t);
+            strategy.record(realm, System.nanoTime() - start, t == null && authoritative);
+
+            aggregate = strategy.afterAttempt(realm, token, info, aggregate, t);
+            if (authoritative) {
+                if (t instanceof AuthenticationException) {
+                    throw (AuthenticationException) t;
+                }
+                break;
+            }
+        }
+        return strategy.afterAllAttempts(token, aggregate);
+    }
+
+}
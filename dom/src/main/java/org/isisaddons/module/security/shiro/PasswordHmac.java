@@ -0,0 +1,71 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Computes HMACs of passwords, using a key generated randomly for each instance, so that caches can recognise a
+ * password without holding it.
+ */
+class PasswordHmac {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final SecretKeySpec hmacKey;
+    private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>() {
+        @Override
+        protected Mac initialValue() {
+            try {
+                final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+                mac.init(hmacKey);
+                return mac;
+            } catch (final GeneralSecurityException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    };
+
+    PasswordHmac() {
+        final byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        this.hmacKey = new SecretKeySpec(key, HMAC_ALGORITHM);
+    }
+
+    byte[] of(final char[] password) {
+        final ByteBuffer byteBuffer = UTF_8.encode(CharBuffer.wrap(password));
+        final byte[] bytes = new byte[byteBuffer.remaining()];
+        byteBuffer.get(bytes);
+        try {
+            return macs.get().doFinal(bytes);
+        } finally {
+            Arrays.fill(bytes, (byte) 0);
+            if(byteBuffer.hasArray()) {
+                Arrays.fill(byteBuffer.array(), (byte) 0);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.isisaddons.module.security.dom.password.PasswordEncryptionService;
+
+/**
+ * Runs (CPU-bound) password verification on a fixed-size pool of worker threads, so that a burst of logins cannot
+ * occupy every request thread of the servlet container.
+ *
+ * <p>
+ *     Verifications are queued (up to a bound); if the queue is full, or if a verification is not completed within
+ *     the maximum wait, then {@link #matches(PasswordEncryptionService, String, String)} returns <tt>null</tt> rather
+ *     than blocking the caller any further.
+ * </p>
+ */
+class PasswordVerificationExecutor {
+
+    private final ThreadPoolExecutor executor;
+    private final long maxWaitMillis;
+    private final LatencyStats hashStats;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong timedOutCount = new AtomicLong();
+
+    /**
+     * @param threads - number of worker threads.
+     * @param queueSize - number of verifications that may wait for a worker thread; if not positive then verifications are only accepted if a worker is idle.
+     * @param maxWaitMillis - how long a caller will wait for its verification to complete (including time queued); if not positive then waits indefinitely.
+     * @param hashStats - records the time taken by each verification (excluding time queued).
+     */
+    PasswordVerificationExecutor(
+            final int threads,
+            final int queueSize,
+            final long maxWaitMillis,
+            final LatencyStats hashStats) {
+        final BlockingQueue<Runnable> queue = queueSize > 0
+                ? new ArrayBlockingQueue<Runnable>(queueSize)
+                : new SynchronousQueue<Runnable>();
+        this.executor = new ThreadPoolExecutor(
+                threads, threads, 0L, TimeUnit.MILLISECONDS, queue,
+                new ThreadFactoryBuilder()
+                        .setNameFormat("isis-module-security-password-%d")
+                        .setDaemon(true)
+                        .build(),
+                new ThreadPoolExecutor.AbortPolicy());
+        this.maxWaitMillis = maxWaitMillis;
+        this.hashStats = hashStats;
+    }
+
+    //region > matches
+
+    /**
+     * Whether the candidate password matches the encrypted password, or <tt>null</tt> if the verification could not
+     * be performed (because saturated, timed out or interrupted).
+     */
+    Boolean matches(
+            final PasswordEncryptionService passwordEncryptionService,
+            final String candidate,
+            final String encrypted) {
+
+        final Future<Boolean> future;
+        try {
+            future = executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws Exception {
+                    final long start = System.nanoTime();
+                    try {
+                        return passwordEncryptionService.matches(candidate, encrypted);
+                    } finally {
+                        hashStats.recordSince(start);
+                    }
+                }
+            });
+        } catch (final RejectedExecutionException ex) {
+            rejectedCount.incrementAndGet();
+            return null;
+        }
+
+        try {
+            return maxWaitMillis > 0
+                    ? future.get(maxWaitMillis, TimeUnit.MILLISECONDS)
+                    : future.get();
+        } catch (final TimeoutException ex) {
+            future.cancel(true);
+            timedOutCount.incrementAndGet();
+            return null;
+        } catch (final InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (final ExecutionException ex) {
+            throw Throwables.propagate(ex.getCause());
+        }
+    }
+
+    //endregion
+
+    //region > queueDepth, activeCount, rejectedCount, timedOutCount
+
+    /**
+     * Number of verifications waiting for a worker thread.
+     */
+    int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Number of worker threads currently verifying a password.
+     */
+    int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Number of verifications rejected because the queue was full.
+     */
+    long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Number of verifications abandoned because they were not completed within the maximum wait.
+     */
+    long getTimedOutCount() {
+        return timedOutCount.get();
+    }
+
+    //endregion
+
+    //region > shutdown
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    //endregion
+
+}
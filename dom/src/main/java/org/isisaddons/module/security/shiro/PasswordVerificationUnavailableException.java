@@ -0,0 +1,38 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import org.apache.shiro.authc.AuthenticationException;
+
+/**
+ * Thrown by {@link IsisModuleSecurityRealm} when a password could not be verified because the
+ * {@link IsisModuleSecurityRealm#setPasswordVerificationThreads(int) password verification threads} are saturated
+ * (the queue is full, or the maximum wait was exceeded).
+ *
+ * <p>
+ *     Unlike a {@link org.apache.shiro.authc.CredentialsException}, this says nothing about whether the password was
+ *     correct (and is not counted as a failed login); the client may simply try again later.
+ * </p>
+ */
+public class PasswordVerificationUnavailableException extends AuthenticationException {
+
+    private static final long serialVersionUID = 1L;
+
+    public PasswordVerificationUnavailableException() {
+        super("Unable to verify password; try again later");
+    }
+}
@@ -31,32 +31,47 @@ class PermissionForMember implements org.apache.shiro.authz.Permission {
 
     /**
      * Expects in format <code>package:className:methodName:r|w</code>
+     *
+     * <p>
+     *     Parsed in a single pass (rather than using a regex), since this is called for every permission check that
+     *     is not already {@link PermissionResolverForIsisShiroAuthorizor cached}.
+     * </p>
      */
     public PermissionForMember(String permissionString) {
-        final String[] split = permissionString.split("\\:");
-        if(split.length == 4) {
-            String packageName = split[0];
-            String className = split[1];
-            String memberName = split[2];
-            this.featureId = ApplicationFeatureId.newMember(packageName + "." + className, memberName);
-
-            ApplicationPermissionMode mode = modeFrom(split[3]);
-            if(mode != null) {
-                this.mode = mode;
-                return;
-            }
+        final int endOfPackage = permissionString.indexOf(':');
+        final int endOfClass = endOfPackage < 0 ? -1 : permissionString.indexOf(':', endOfPackage + 1);
+        final int endOfMember = endOfClass < 0 ? -1 : permissionString.indexOf(':', endOfClass + 1);
+        final ApplicationPermissionMode mode =
+                endOfMember < 0 ? null : modeFrom(permissionString, endOfMember + 1);
+        if(mode == null) {
+            throw new IllegalArgumentException("Invalid format for permission: " + permissionString + "; expected 'packageName:className:methodName:r|w");
         }
-        throw new IllegalArgumentException("Invalid format for permission: " + permissionString + "; expected 'packageName:className:methodName:r|w");
+        final String classFqn = new StringBuilder(endOfClass)
+                .append(permissionString, 0, endOfPackage)
+                .append('.')
+                .append(permissionString, endOfPackage + 1, endOfClass)
+                .toString();
+        final String memberName = permissionString.substring(endOfClass + 1, endOfMember);
+        this.featureId = ApplicationFeatureId.newMember(classFqn, memberName);
+        this.mode = mode;
     }
 
-    private static ApplicationPermissionMode modeFrom(String s) {
-        if("r".equals(s)) {
-            return ApplicationPermissionMode.VIEWING;
+    /**
+     * The mode for the single character (<tt>r</tt> or <tt>w</tt>) at the end of the permission string, or
+     * <tt>null</tt> if there is anything else.
+     */
+    private static ApplicationPermissionMode modeFrom(final String s, final int index) {
+        if(index != s.length() - 1) {
+            return null;
         }
-        if("w".equals(s)) {
-            return ApplicationPermissionMode.CHANGING;
+        switch (s.charAt(index)) {
+            case 'r':
+                return ApplicationPermissionMode.VIEWING;
+            case 'w':
+                return ApplicationPermissionMode.CHANGING;
+            default:
+                return null;
         }
-        return null;
     }
 
     /**
@@ -16,16 +16,56 @@
  */
 package org.isisaddons.module.security.shiro;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.shiro.authz.Permission;
 import org.apache.shiro.authz.permission.PermissionResolver;
 
+/**
+ * Resolves the permission strings of Isis' Shiro authorizor into {@link PermissionForMember}s.
+ *
+ * <p>
+ *     The same few permission strings are resolved over and over (one for each member rendered, for every request),
+ *     so resolved permissions (which are immutable) are held in a bounded cache keyed by the permission string.
+ *     Invalid permission strings are not cached.
+ * </p>
+ */
 class PermissionResolverForIsisShiroAuthorizor implements PermissionResolver {
 
+    private volatile Cache<String, PermissionForMember> cache;
+
+    PermissionResolverForIsisShiroAuthorizor() {
+        configure(10000);
+    }
+
+    /**
+     * @param maxSize - maximum number of resolved permissions held; if not positive then the cache is disabled.
+     */
+    void configure(final long maxSize) {
+        cache = maxSize > 0
+                ? CacheBuilder.newBuilder().maximumSize(maxSize).<String, PermissionForMember>build()
+                : null;
+    }
+
     /**
      * Expects in format <code>package:className:methodName:r|w</code>
      */
     @Override
     public Permission resolvePermission(String permissionString) {
-        return new PermissionForMember(permissionString);
+        final Cache<String, PermissionForMember> cache = this.cache;
+        if(cache == null) {
+            return new PermissionForMember(permissionString);
+        }
+        PermissionForMember permission = cache.getIfPresent(permissionString);
+        if(permission == null) {
+            permission = new PermissionForMember(permissionString);
+            cache.put(permissionString, permission);
+        }
+        return permission;
+    }
+
+    long size() {
+        final Cache<String, PermissionForMember> cache = this.cache;
+        return cache != null ? cache.size() : 0;
     }
 }
@@ -16,17 +16,24 @@
  */
 package org.isisaddons.module.security.shiro;
 
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import com.google.common.primitives.Longs;
 
 import org.apache.shiro.authz.AuthorizationInfo;
 import org.apache.shiro.authz.Permission;
 
+import org.isisaddons.module.security.dom.feature.ApplicationFeatureId;
+import org.isisaddons.module.security.dom.permission.ApplicationPermissionMode;
+import org.isisaddons.module.security.dom.permission.ApplicationPermissionValue;
 import org.isisaddons.module.security.dom.permission.ApplicationPermissionValueSet;
 import org.isisaddons.module.security.dom.role.ApplicationRole;
 import org.isisaddons.module.security.dom.user.AccountType;
@@ -55,43 +62,46 @@ public static PrincipalForApplicationUser from(ApplicationUser applicationUser)
         if(applicationUser == null) {
             return null;
         }
-        final String username = applicationUser.getName();
-        final String encryptedPassword = applicationUser.getEncryptedPassword();
-        final AccountType accountType = applicationUser.getAccountType();
-        final Set<String> roles = Sets.newTreeSet(Lists.newArrayList(Iterables.transform(applicationUser.getRoles(), ApplicationRole.Functions.GET_NAME)));
-        final ApplicationPermissionValueSet permissionSet = applicationUser.getPermissionSet();
-        return new PrincipalForApplicationUser(username, encryptedPassword, accountType, applicationUser.getStatus(), roles, permissionSet);
-    }
-
-    private final String username;
-    private final Set<String> roles;
-    private final String encryptedPassword;
-    private final ApplicationUserStatus status;
-    private final AccountType accountType;
+        return new PrincipalForApplicationUser(AccountRecord.from(applicationUser), applicationUser.getPermissionSet());
+    }
+
+    /**
+     * The principal of a {@link AccountType#DELEGATED delegated} user that is yet to be created (in the background);
+     * see {@link AccountRecord#forNewDelegateUser(String, ApplicationRole)}.  As such a user is disabled, no
+     * permissions are loaded.
+     */
+    static PrincipalForApplicationUser forNewDelegateUser(final String username, final ApplicationRole initialRole) {
+        return new PrincipalForApplicationUser(
+                AccountRecord.forNewDelegateUser(username, initialRole),
+                new ApplicationPermissionValueSet(Collections.<ApplicationPermissionValue>emptyList()));
+    }
+
+    private final AccountRecord account;
     private final ApplicationPermissionValueSet permissionSet;
 
+    private volatile Long permissionStamp;
+
     PrincipalForApplicationUser(
-            final String username,
-            final String encryptedPassword,
-            final AccountType accountType,
-            final ApplicationUserStatus status,
-            final Set<String> roles,
+            final AccountRecord account,
             final ApplicationPermissionValueSet applicationPermissionValueSet) {
-        this.username = username;
-        this.encryptedPassword = encryptedPassword;
-        this.accountType = accountType;
-        this.roles = roles;
-        this.status = status;
+        this.account = account;
         this.permissionSet = applicationPermissionValueSet;
     }
 
+    /**
+     * The account (without the permissions) that this principal was built from; this is what is cached.
+     */
+    AccountRecord getAccount() {
+        return account;
+    }
+
     public boolean isDisabled() {
-        return getStatus() == ApplicationUserStatus.DISABLED;
+        return account.isDisabled();
     }
 
     @Override
     public Set<String> getRoles() {
-        return roles;
+        return account.getRoles();
     }
 
     @Override
@@ -99,31 +109,57 @@ public Collection<String> getStringPermissions() {
         return Collections.emptyList();
     }
 
+    /**
+     * Adapts {@link #grants(ApplicationFeatureId, ApplicationPermissionMode)} to the Shiro API; created once.
+     */
+    private final Permission permission = new Permission() {
+        @Override
+        public boolean implies(Permission p) {
+            if (!(p instanceof PermissionForMember)) {
+                return false;
+            }
+            final PermissionForMember pfm = (PermissionForMember) p;
+            return grants(pfm.getFeatureId(), pfm.getMode());
+        }
+    };
+
     @Override
     public Collection<Permission> getObjectPermissions() {
-        final Permission o = new Permission() {
-            @Override
-            public boolean implies(Permission p) {
-                if (!(p instanceof PermissionForMember)) {
-                    return false;
-                }
-                final PermissionForMember pfm = (PermissionForMember) p;
-                return getPermissionSet().grants(pfm.getFeatureId(), pfm.getMode());
-            }
-        };
-        return Collections.singleton(o);
+        return Collections.singleton(permission);
+    }
+
+    /**
+     * Whether the {@link #getPermissionSet() permission set} grants the feature; for members, once the set is
+     * {@link ApplicationPermissionValueSet#isCompiled() compiled}, this is a single bit test.
+     */
+    boolean grants(final ApplicationFeatureId featureId, final ApplicationPermissionMode mode) {
+        return permissionSet.grants(featureId, mode);
     }
 
     ApplicationUserStatus getStatus() {
-        return status;
+        return account.getStatus();
     }
 
     String getUsername() {
-        return username;
+        return account.getUsername();
+    }
+
+    /**
+     * The username used to log in (as opposed to the {@link #getUsername() username}, which is the user's name).
+     */
+    String getLoginUsername() {
+        return account.getLoginUsername();
+    }
+
+    /**
+     * When the {@link #getAccount() account} was looked up from the database.
+     */
+    long getLoadedAt() {
+        return account.getLoadedAt();
     }
 
     String getEncryptedPassword() {
-        return encryptedPassword;
+        return account.getEncryptedPassword();
     }
 
     ApplicationPermissionValueSet getPermissionSet() {
@@ -131,7 +167,53 @@ ApplicationPermissionValueSet getPermissionSet() {
     }
 
     public AccountType getAccountType() {
-        return accountType;
+        return account.getAccountType();
+    }
+
+    /**
+     * A digest of the user's status, account type, roles and permissions, stable across processes; if any of these
+     * change then (with overwhelming probability) so does the stamp.
+     */
+    long getPermissionStamp() {
+        Long permissionStamp = this.permissionStamp;
+        if(permissionStamp == null) {
+            permissionStamp = this.permissionStamp = permissionStampOf(getStatus(), getAccountType(), getRoles(), permissionSet);
+        }
+        return permissionStamp;
+    }
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    static long permissionStampOf(
+            final ApplicationUserStatus status,
+            final AccountType accountType,
+            final Set<String> roles,
+            final ApplicationPermissionValueSet permissionSet) {
+        final List<String> permissions = Lists.newArrayList();
+        if(permissionSet != null) {
+            for (final ApplicationPermissionValue permissionValue : permissionSet.getValues()) {
+                permissions.add(permissionValue.toString());
+            }
+            Collections.sort(permissions);
+        }
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        digest.update(String.valueOf(status).getBytes(UTF_8));
+        digest.update((byte) 0);
+        digest.update(String.valueOf(accountType).getBytes(UTF_8));
+        for (final String role : Sets.newTreeSet(roles)) {
+            digest.update((byte) 0);
+            digest.update(role.getBytes(UTF_8));
+        }
+        for (final String permission : permissions) {
+            digest.update((byte) 1);
+            digest.update(permission.getBytes(UTF_8));
+        }
+        return Longs.fromByteArray(digest.digest());
     }
 
     /**
@@ -0,0 +1,141 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import javax.crypto.SecretKey;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The secret keys used to sign and verify {@link SessionTokens session tokens}, as held in a (JCEKS) keystore file.
+ *
+ * <p>
+ *     Tokens are signed with the key of the active alias, but are verified with the key of whichever alias they were
+ *     signed with.  Keys can therefore be rotated by adding a new key to the keystore and making it active; tokens
+ *     signed by the previous key continue to be accepted until it is removed.  The keystore file is re-read (at most
+ *     every few seconds) whenever it is modified.
+ * </p>
+ *
+ * <p>
+ *     The keystore is {@link #validate() validated} when the realm is initialized.  If it later cannot be re-read
+ *     (for example, while it is being replaced) then the keys previously read continue to be used, and the failure is
+ *     logged; looking up a key never fails.
+ * </p>
+ */
+class SessionTokenKeys {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SessionTokenKeys.class);
+
+    static final long RECHECK_INTERVAL_MILLIS = 5000L;
+
+    private final File keyStoreFile;
+    private final char[] keyStorePassword;
+    private final String activeAlias;
+
+    private volatile Map<String, SecretKey> keysByAlias = Collections.emptyMap();
+    private volatile long lastModified = -1;
+    private volatile long lastCheckedAt;
+
+    SessionTokenKeys(final String keyStorePath, final String keyStorePassword, final String activeAlias) {
+        this.keyStoreFile = new File(keyStorePath);
+        this.keyStorePassword = keyStorePassword != null ? keyStorePassword.toCharArray() : new char[0];
+        this.activeAlias = activeAlias;
+    }
+
+    String getActiveAlias() {
+        return activeAlias;
+    }
+
+    /**
+     * The key for the alias, or <tt>null</tt> if none (or if the keystore could never be read).
+     */
+    SecretKey get(final String alias) {
+        reloadIfModified();
+        return keysByAlias.get(alias);
+    }
+
+    /**
+     * Reads the keystore now, checking that it holds a key for the {@link #getActiveAlias() active alias}.
+     *
+     * @throws IllegalStateException - if the keystore cannot be read, or does not hold the active key.
+     */
+    synchronized void validate() {
+        final long lastModified = keyStoreFile.lastModified();
+        final Map<String, SecretKey> keysByAlias = load();
+        if(!keysByAlias.containsKey(activeAlias)) {
+            throw new IllegalStateException(
+                    "No session token key with alias '" + activeAlias + "' in " + keyStoreFile);
+        }
+        this.keysByAlias = keysByAlias;
+        this.lastModified = lastModified;
+        this.lastCheckedAt = System.currentTimeMillis();
+    }
+
+    private void reloadIfModified() {
+        final long now = System.currentTimeMillis();
+        if(now - lastCheckedAt < RECHECK_INTERVAL_MILLIS) {
+            return;
+        }
+        synchronized (this) {
+            if(now - lastCheckedAt < RECHECK_INTERVAL_MILLIS) {
+                return;
+            }
+            final long lastModified = keyStoreFile.lastModified();
+            if(lastModified != this.lastModified) {
+                try {
+                    this.keysByAlias = load();
+                } catch(final IllegalStateException ex) {
+                    // keep any keys previously read; not retried until the file is modified again
+                    LOG.warn(ex.getMessage() + "; continuing with the keys previously read", ex);
+                }
+                this.lastModified = lastModified;
+            }
+            lastCheckedAt = now;
+        }
+    }
+
+    private Map<String, SecretKey> load() {
+        final Map<String, SecretKey> keysByAlias = Maps.newHashMap();
+        try (InputStream inputStream = new FileInputStream(keyStoreFile)) {
+            final KeyStore keyStore = KeyStore.getInstance("JCEKS");
+            keyStore.load(inputStream, keyStorePassword);
+            final Enumeration<String> aliases = keyStore.aliases();
+            while (aliases.hasMoreElements()) {
+                final String alias = aliases.nextElement();
+                final Key key = keyStore.getKey(alias, keyStorePassword);
+                if(key instanceof SecretKey) {
+                    keysByAlias.put(alias, (SecretKey) key);
+                }
+            }
+        } catch (final IOException | GeneralSecurityException ex) {
+            throw new IllegalStateException("Unable to load session token keys from " + keyStoreFile, ex);
+        }
+        return Collections.unmodifiableMap(keysByAlias);
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.List;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Issues and verifies HMAC-signed session tokens, so that clients (such as those of the RestfulObjects viewer) can
+ * authenticate subsequent requests without their password being verified.
+ *
+ * <p>
+ *     A token is the {@link #PREFIX prefix} followed by the (Base64 encoded) payload and signature, separated by a
+ *     '.'.  The payload holds the alias of the signing key, the username, when the token was issued and when it
+ *     expires, and the {@link PrincipalForApplicationUser#getPermissionStamp() permission stamp} of the user at the
+ *     time.
+ * </p>
+ */
+class SessionTokens {
+
+    /**
+     * Every token starts with this prefix, which distinguishes it from a password.
+     */
+    static final String PREFIX = "isis-session-token:";
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final BaseEncoding BASE64 = BaseEncoding.base64Url().omitPadding();
+    private static final char SEPARATOR = '\n';
+
+    static class SessionToken {
+        private final String username;
+        private final long issuedAt;
+        private final long expiresAt;
+        private final long permissionStamp;
+
+        SessionToken(final String username, final long issuedAt, final long expiresAt, final long permissionStamp) {
+            this.username = username;
+            this.issuedAt = issuedAt;
+            this.expiresAt = expiresAt;
+            this.permissionStamp = permissionStamp;
+        }
+
+        String getUsername() {
+            return username;
+        }
+
+        long getIssuedAt() {
+            return issuedAt;
+        }
+
+        long getExpiresAt() {
+            return expiresAt;
+        }
+
+        long getPermissionStamp() {
+            return permissionStamp;
+        }
+    }
+
+    private final SessionTokenKeys keys;
+    private final long timeToLiveMillis;
+
+    SessionTokens(final SessionTokenKeys keys, final long timeToLiveMillis) {
+        this.keys = keys;
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+    static boolean isToken(final char[] password) {
+        if(password == null || password.length < PREFIX.length()) {
+            return false;
+        }
+        for (int i = 0; i < PREFIX.length(); i++) {
+            if(password[i] != PREFIX.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //region > issue
+
+    String issue(final String username, final long permissionStamp) {
+        if(username == null || username.indexOf(SEPARATOR) != -1) {
+            throw new IllegalArgumentException("Invalid username");
+        }
+        final String alias = keys.getActiveAlias();
+        final SecretKey key = keys.get(alias);
+        if(key == null) {
+            throw new IllegalStateException("No session token key with alias '" + alias + "'");
+        }
+        final long issuedAt = System.currentTimeMillis();
+        final String payload = alias + SEPARATOR + username + SEPARATOR + issuedAt + SEPARATOR
+                + (issuedAt + timeToLiveMillis) + SEPARATOR + permissionStamp;
+        final byte[] payloadBytes = payload.getBytes(UTF_8);
+        try {
+            return PREFIX + BASE64.encode(payloadBytes) + "." + BASE64.encode(sign(key, payloadBytes));
+        } catch (final GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * @see SessionTokenKeys#validate()
+     */
+    void validate() {
+        keys.validate();
+    }
+
+    //endregion
+
+    //region > verify
+
+    /**
+     * The (validly signed and unexpired) token, else <tt>null</tt>; never fails (so that an unusable key is treated
+     * as an invalid token, rather than as an error).
+     */
+    SessionToken verify(final String token) {
+        if(token == null || !token.startsWith(PREFIX)) {
+            return null;
+        }
+        final int dot = token.indexOf('.', PREFIX.length());
+        if(dot == -1) {
+            return null;
+        }
+        try {
+            final byte[] payloadBytes = BASE64.decode(token.substring(PREFIX.length(), dot));
+            final byte[] signature = BASE64.decode(token.substring(dot + 1));
+
+            final List<String> parts = Lists.newArrayList(
+                    Splitter.on(SEPARATOR).split(new String(payloadBytes, UTF_8)));
+            if(parts.size() != 5) {
+                return null;
+            }
+            final SecretKey key = keys.get(parts.get(0));
+            if(key == null || !MessageDigest.isEqual(signature, sign(key, payloadBytes))) {
+                return null;
+            }
+            final SessionToken sessionToken = new SessionToken(
+                    parts.get(1), Long.parseLong(parts.get(2)), Long.parseLong(parts.get(3)), Long.parseLong(parts.get(4)));
+            return sessionToken.getExpiresAt() > System.currentTimeMillis() ? sessionToken : null;
+        } catch(final IllegalArgumentException ex) {
+            // malformed encoding or number
+            return null;
+        } catch(final GeneralSecurityException ex) {
+            // unusable key
+            return null;
+        }
+    }
+
+    //endregion
+
+    private static byte[] sign(final SecretKey key, final byte[] payloadBytes) throws GeneralSecurityException {
+        final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+        mac.init(key);
+        return mac.doFinal(payloadBytes);
+    }
+
+}
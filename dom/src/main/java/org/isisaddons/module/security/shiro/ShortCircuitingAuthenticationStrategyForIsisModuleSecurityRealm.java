@@ -0,0 +1,241 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.apache.shiro.authc.AuthenticationException;
+import org.apache.shiro.authc.AuthenticationInfo;
+import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authc.DisabledAccountException;
+import org.apache.shiro.authc.ExcessiveAttemptsException;
+import org.apache.shiro.authc.SimpleAuthenticationInfo;
+import org.apache.shiro.authc.pam.AtLeastOneSuccessfulStrategy;
+import org.apache.shiro.realm.Realm;
+
+/**
+ * Alternative to {@link AuthenticationStrategyForIsisModuleSecurityRealm} for deployments with multiple realms,
+ * used in conjunction with {@link ModularRealmAuthenticatorForIsisModuleSecurityRealm}.
+ *
+ * <p>
+ *     Rather than consulting every realm on every login, realms are consulted one at a time and authentication stops
+ *     at the first authoritative answer: either a realm authenticates the token, or a realm reports that the account is
+ *     disabled/locked or has had too many failed attempts.  Any other failure (eg unknown account, incorrect
+ *     credentials) falls through to the next realm.
+ * </p>
+ *
+ * <p>
+ *     Realms are consulted in order of their observed success rate (highest first) and then of their mean latency
+ *     (lowest first); realms not yet consulted are tried first, in their configured order.  The timings of each realm
+ *     are available from {@link #getRealmStats()}.
+ * </p>
+ *
+ * <p>
+ *     As for {@link AuthenticationStrategyForIsisModuleSecurityRealm}, the resultant principals are held in a
+ *     {@link PrincipalCollectionWithSinglePrincipalForApplicationUserInAnyRealm}.
+ * </p>
+ */
+public class ShortCircuitingAuthenticationStrategyForIsisModuleSecurityRealm extends AtLeastOneSuccessfulStrategy {
+
+    //region > beforeAllAttempts
+
+    /**
+     * Reconfigures the SimpleAuthenticationInfo to use a
+     * {@link PrincipalCollectionWithSinglePrincipalForApplicationUserInAnyRealm}; see
+     * {@link AuthenticationStrategyForIsisModuleSecurityRealm#beforeAllAttempts(Collection, AuthenticationToken)}.
+     */
+    @Override
+    public AuthenticationInfo beforeAllAttempts(Collection<? extends Realm> realms, AuthenticationToken token) throws AuthenticationException {
+        final SimpleAuthenticationInfo authenticationInfo = new SimpleAuthenticationInfo();
+        authenticationInfo.setPrincipals(new PrincipalCollectionWithSinglePrincipalForApplicationUserInAnyRealm());
+        return authenticationInfo;
+    }
+
+    //endregion
+
+    //region > isAuthoritative
+
+    /**
+     * Whether the outcome of consulting a single realm is authoritative, in which case no further realms are
+     * consulted.
+     */
+    public boolean isAuthoritative(final AuthenticationInfo singleRealmInfo, final Throwable t) {
+        if (t != null) {
+            return t instanceof DisabledAccountException || t instanceof ExcessiveAttemptsException;
+        }
+        return singleRealmInfo != null
+                && singleRealmInfo.getPrincipals() != null
+                && !singleRealmInfo.getPrincipals().isEmpty();
+    }
+
+    //endregion
+
+    //region > order, record
+
+    /**
+     * The realms, in the order in which they should be consulted.
+     */
+    public List<Realm> order(final Collection<Realm> realms) {
+        final List<Realm> ordered = Lists.newArrayList(realms);
+        if (ordered.size() <= 1) {
+            return ordered;
+        }
+        // snapshot, so that the ordering is consistent even as other logins record their outcomes
+        final Map<Realm, RealmStats> snapshot = Maps.newIdentityHashMap();
+        for (final Realm realm : ordered) {
+            snapshot.put(realm, statsFor(realm).snapshot());
+        }
+        Collections.sort(ordered, new Comparator<Realm>() {
+            @Override
+            public int compare(final Realm o1, final Realm o2) {
+                return snapshot.get(o1).compareTo(snapshot.get(o2));
+            }
+        });
+        return ordered;
+    }
+
+    /**
+     * Records the outcome of consulting a single realm.
+     */
+    public void record(final Realm realm, final long nanos, final boolean success) {
+        statsFor(realm).record(nanos, success);
+    }
+
+    private RealmStats statsFor(final Realm realm) {
+        final String realmName = realm.getName();
+        RealmStats stats = realmStats.get(realmName);
+        if (stats == null) {
+            final RealmStats newStats = new RealmStats(realmName);
+            stats = realmStats.putIfAbsent(realmName, newStats);
+            if (stats == null) {
+                stats = newStats;
+            }
+        }
+        return stats;
+    }
+
+    //endregion
+
+    //region > realmStats
+
+    /**
+     * Timings and outcomes of consulting a single realm.
+     */
+    public static class RealmStats implements Comparable<RealmStats> {
+
+        private final LatencyStats latencyStats;
+        private final AtomicLong successCount = new AtomicLong();
+
+        // only populated in snapshots
+        private final long count;
+        private final long successes;
+        private final long meanNanos;
+
+        RealmStats(final String realmName) {
+            this(new LatencyStats(realmName), 0, 0, 0);
+        }
+
+        private RealmStats(final LatencyStats latencyStats, final long count, final long successes, final long meanNanos) {
+            this.latencyStats = latencyStats;
+            this.count = count;
+            this.successes = successes;
+            this.meanNanos = meanNanos;
+        }
+
+        void record(final long nanos, final boolean success) {
+            if (success) {
+                successCount.incrementAndGet();
+            }
+            latencyStats.record(nanos);
+        }
+
+        RealmStats snapshot() {
+            return new RealmStats(latencyStats, getCount(), getSuccessCount(), latencyStats.getMeanNanos());
+        }
+
+        public String getRealmName() {
+            return latencyStats.getName();
+        }
+
+        /**
+         * Time taken by the realm, whether or not it authenticated the token.
+         */
+        public LatencyStats getLatencyStats() {
+            return latencyStats;
+        }
+
+        /**
+         * Number of times that the realm has been consulted.
+         */
+        public long getCount() {
+            return latencyStats.getCount();
+        }
+
+        /**
+         * Number of times that the realm has authenticated the token.
+         */
+        public long getSuccessCount() {
+            return successCount.get();
+        }
+
+        /**
+         * Realms never consulted are treated as always successful, so that each is consulted at least once.
+         */
+        private double successRate() {
+            return count != 0 ? (double) successes / count : 1.0;
+        }
+
+        /**
+         * Compares snapshots; the realm to be consulted first is the lesser.
+         */
+        @Override
+        public int compareTo(final RealmStats other) {
+            final int bySuccessRate = Double.compare(other.successRate(), successRate());
+            return bySuccessRate != 0 ? bySuccessRate : Long.compare(meanNanos, other.meanNanos);
+        }
+
+        @Override
+        public String toString() {
+            return getRealmName()
+                    + "{count=" + getCount()
+                    + ", successCount=" + getSuccessCount()
+                    + ", meanMicros=" + TimeUnit.NANOSECONDS.toMicros(latencyStats.getMeanNanos())
+                    + "}";
+        }
+    }
+
+    private final ConcurrentMap<String, RealmStats> realmStats = new ConcurrentHashMap<String, RealmStats>();
+
+    /**
+     * Timings and outcomes of each realm consulted so far, keyed by realm name.
+     */
+    public Map<String, RealmStats> getRealmStats() {
+        return Collections.<String, RealmStats>unmodifiableMap(realmStats);
+    }
+
+    //endregion
+
+}
@@ -0,0 +1,72 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Coalesces concurrent calls for the same key, so that only one caller (the first) performs the work and any others
+ * that arrive while it is in progress wait for, and share, its result (or exception).
+ *
+ * <p>
+ *     Results are not retained once the work has completed; that is the job of a cache.
+ * </p>
+ */
+class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, FutureTask<V>> inFlight = new ConcurrentHashMap<K, FutureTask<V>>();
+    private final AtomicLong sharedCount = new AtomicLong();
+
+    /**
+     * Runs the callable (in the calling thread) unless a call for the same key is already in progress, in which
+     * case waits for and returns that call's result instead.
+     */
+    V execute(final K key, final Callable<V> callable) {
+        final FutureTask<V> task = new FutureTask<V>(callable);
+        FutureTask<V> existing = inFlight.putIfAbsent(key, task);
+        if(existing == null) {
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(key, task);
+            }
+            existing = task;
+        } else {
+            sharedCount.incrementAndGet();
+        }
+        try {
+            return Uninterruptibles.getUninterruptibly(existing);
+        } catch (final ExecutionException ex) {
+            throw Throwables.propagate(ex.getCause());
+        }
+    }
+
+    /**
+     * Number of calls that shared the result of another.
+     */
+    long getSharedCount() {
+        return sharedCount.get();
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import java.util.concurrent.TimeUnit;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Bounded, time-limited cache of usernames recently found not to exist.
+ *
+ * <p>
+ *     Used by {@link IsisModuleSecurityRealm} (when there is no delegate authentication realm, so that users are not
+ *     created automatically) to reject repeated logins for unknown usernames without opening an Isis session.
+ *     Entries are evicted (through {@link AuthenticationCaches#invalidate(String)}) whenever a user is created or
+ *     renamed.
+ * </p>
+ *
+ * <p>
+ *     Disabled (that is, caches nothing) until {@link #configure(long, long) configured}.
+ * </p>
+ */
+class UnknownUsernameCache {
+
+    private volatile Cache<String, Boolean> cache;
+
+    /**
+     * @param maxSize - maximum number of usernames to hold; if not positive then the cache is disabled.
+     * @param timeToLiveMillis - how long a username may be held; if not positive then the cache is disabled.
+     */
+    void configure(final long maxSize, final long timeToLiveMillis) {
+        if(maxSize <= 0 || timeToLiveMillis <= 0) {
+            cache = null;
+            return;
+        }
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(timeToLiveMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    boolean isEnabled() {
+        return cache != null;
+    }
+
+    boolean isUnknown(final String username) {
+        final Cache<String, Boolean> cache = this.cache;
+        return cache != null && username != null && cache.getIfPresent(username) != null;
+    }
+
+    void unknown(final String username) {
+        final Cache<String, Boolean> cache = this.cache;
+        if(cache != null && username != null) {
+            cache.put(username, Boolean.TRUE);
+        }
+    }
+
+    void invalidate(final String username) {
+        final Cache<String, Boolean> cache = this.cache;
+        if(cache != null && username != null) {
+            cache.invalidate(username);
+        }
+    }
+
+    void invalidateAll() {
+        final Cache<String, Boolean> cache = this.cache;
+        if(cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+}
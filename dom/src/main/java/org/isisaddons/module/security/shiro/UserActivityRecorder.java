@@ -0,0 +1,207 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import com.google.common.collect.Maps;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded, in-memory accumulator of the most recent login and activity of each user, so that these can be written to
+ * the database in batches (see {@link IsisModuleSecurityRealm#setTrackUserActivity(boolean)}) rather than on every
+ * login.
+ *
+ * <p>
+ *     Recording is lock-free (and called on every login and every uncached authorization): the activity of each user
+ *     is an immutable value, replaced by compare-and-set, and activity within the resolution of that already recorded
+ *     is ignored without any write.  Once the bound is reached, users not already pending are dropped (counted, and
+ *     logged once per drain) until the next {@link #drain() drain}.
+ * </p>
+ */
+class UserActivityRecorder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UserActivityRecorder.class);
+
+    static class Activity {
+        /**
+         * 0 if none.
+         */
+        private final long lastLoginAt;
+        private final long lastActivityAt;
+
+        private Activity(final long lastLoginAt, final long lastActivityAt) {
+            this.lastLoginAt = lastLoginAt;
+            this.lastActivityAt = lastActivityAt;
+        }
+
+        long getLastLoginAt() {
+            return lastLoginAt;
+        }
+
+        long getLastActivityAt() {
+            return lastActivityAt;
+        }
+
+        /**
+         * This activity if already as recent, otherwise a new one.
+         */
+        private Activity merge(final long loginAt, final long activityAt) {
+            if(loginAt <= lastLoginAt && activityAt <= lastActivityAt) {
+                return this;
+            }
+            return new Activity(Math.max(lastLoginAt, loginAt), Math.max(lastActivityAt, activityAt));
+        }
+    }
+
+    private final int maxPendingUsers;
+    private final long resolutionMillis;
+
+    private final ConcurrentMap<String, Activity> pending = new ConcurrentHashMap<String, Activity>();
+    /**
+     * The number of users pending (including any being added); unlike {@link ConcurrentHashMap#size()}, cheap to
+     * read and update.
+     */
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong droppedSinceDrain = new AtomicLong();
+
+    /**
+     * @param maxPendingUsers - maximum number of users whose activity is held between drains.
+     * @param resolutionMillis - activity within this period of the activity already recorded for a user is ignored.
+     */
+    UserActivityRecorder(final int maxPendingUsers, final long resolutionMillis) {
+        this.maxPendingUsers = maxPendingUsers;
+        this.resolutionMillis = resolutionMillis;
+    }
+
+    //region > recordLogin, recordActivity
+
+    /**
+     * Records a successful login (which is also activity).
+     */
+    void recordLogin(final String username, final long nowMillis) {
+        record(username, nowMillis, nowMillis);
+    }
+
+    void recordActivity(final String username, final long nowMillis) {
+        if(username == null) {
+            return;
+        }
+        final Activity activity = pending.get(username);
+        if(activity != null && activity.lastActivityAt >= nowMillis - resolutionMillis) {
+            // nothing new
+            return;
+        }
+        record(username, 0, nowMillis);
+    }
+
+    private void record(final String username, final long loginAt, final long activityAt) {
+        if(username == null) {
+            return;
+        }
+        for (;;) {
+            final Activity activity = pending.get(username);
+            if(activity == null) {
+                if(pendingCount.incrementAndGet() > maxPendingUsers) {
+                    pendingCount.decrementAndGet();
+                    droppedCount.incrementAndGet();
+                    if(droppedSinceDrain.getAndIncrement() == 0) {
+                        LOG.warn("Activity of {} users already pending; dropping activity of further users until next written", maxPendingUsers);
+                    }
+                    return;
+                }
+                if(pending.putIfAbsent(username, new Activity(loginAt, activityAt)) == null) {
+                    return;
+                }
+                // added concurrently
+                pendingCount.decrementAndGet();
+                continue;
+            }
+            final Activity merged = activity.merge(loginAt, activityAt);
+            if(merged == activity || pending.replace(username, activity, merged)) {
+                return;
+            }
+            // replaced or drained concurrently
+        }
+    }
+
+    //endregion
+
+    //region > drain, restore
+
+    /**
+     * Removes (and returns) all pending activity, keyed by username.
+     *
+     * <p>
+     *     Each user's activity is removed individually, so activity recorded concurrently is either drained or remains
+     *     pending (for the next drain); none is lost.
+     * </p>
+     */
+    Map<String, Activity> drain() {
+        final long dropped = droppedSinceDrain.getAndSet(0);
+        if(dropped > 0) {
+            LOG.warn("Dropped {} logins or activity of users not already pending", dropped);
+        }
+        final Map<String, Activity> drained = Maps.newHashMap();
+        for (final String username : pending.keySet()) {
+            final Activity activity = pending.remove(username);
+            if(activity != null) {
+                pendingCount.decrementAndGet();
+                drained.put(username, activity);
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * Returns previously {@link #drain() drained} activity that could not be written, merging it with any activity
+     * recorded since (subject to the bound).
+     */
+    void restore(final Map<String, Activity> drained) {
+        for (final Map.Entry<String, Activity> entry : drained.entrySet()) {
+            final Activity activity = entry.getValue();
+            record(entry.getKey(), activity.lastLoginAt, activity.lastActivityAt);
+        }
+    }
+
+    //endregion
+
+    //region > pendingCount, droppedCount, isFull
+
+    int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    boolean isFull() {
+        return pendingCount.get() >= maxPendingUsers;
+    }
+
+    /**
+     * Number of logins or activity not recorded because the bound was reached.
+     */
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    //endregion
+
+}
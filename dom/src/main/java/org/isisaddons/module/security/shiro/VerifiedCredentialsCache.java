@@ -0,0 +1,119 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Bounded, time-limited cache of recently verified passwords of local users, keyed by the username used to log in.
+ *
+ * <p>
+ *     Used by {@link IsisModuleSecurityRealm} so that clients that send the same credentials with every request (for
+ *     example to the RestfulObjects viewer, using Basic authentication) do not incur the cost of verifying the
+ *     password each time.
+ * </p>
+ *
+ * <p>
+ *     The password itself is never held; instead the cache holds an HMAC of the password, computed using a random key
+ *     generated for this process, along with the encrypted password that it was verified against.  A cached
+ *     verification is therefore only honoured if the candidate password is the same and the user's password has not
+ *     since been changed.  In addition, entries are evicted (through {@link AuthenticationCaches#invalidate(String)})
+ *     whenever the user's status, password, account type or roles are changed.
+ * </p>
+ *
+ * <p>
+ *     Disabled (that is, caches nothing) until {@link #configure(long, long) configured}.
+ * </p>
+ */
+class VerifiedCredentialsCache {
+
+    private static class VerifiedCredentials {
+        private final byte[] passwordHmac;
+        private final String encryptedPassword;
+
+        private VerifiedCredentials(final byte[] passwordHmac, final String encryptedPassword) {
+            this.passwordHmac = passwordHmac;
+            this.encryptedPassword = encryptedPassword;
+        }
+    }
+
+    private final PasswordHmac passwordHmac = new PasswordHmac();
+
+    private volatile Cache<String, VerifiedCredentials> cache;
+
+    /**
+     * @param maxSize - maximum number of users whose credentials are held; if not positive then the cache is disabled.
+     * @param timeToLiveMillis - how long a verification may be reused; if not positive then the cache is disabled.
+     */
+    void configure(final long maxSize, final long timeToLiveMillis) {
+        if(maxSize <= 0 || timeToLiveMillis <= 0) {
+            cache = null;
+            return;
+        }
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(timeToLiveMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * Whether the password has recently been verified as matching the encrypted password of this user.
+     */
+    boolean isVerified(final String username, final char[] password, final String encryptedPassword) {
+        final Cache<String, VerifiedCredentials> cache = this.cache;
+        if(cache == null || username == null || password == null) {
+            return false;
+        }
+        final VerifiedCredentials verifiedCredentials = cache.getIfPresent(username);
+        return verifiedCredentials != null
+                && Objects.equal(verifiedCredentials.encryptedPassword, encryptedPassword)
+                && MessageDigest.isEqual(verifiedCredentials.passwordHmac, passwordHmac.of(password));
+    }
+
+    /**
+     * Records that the password has been verified as matching the encrypted password of this user.
+     */
+    void verified(final String username, final char[] password, final String encryptedPassword) {
+        final Cache<String, VerifiedCredentials> cache = this.cache;
+        if(cache != null && username != null && password != null) {
+            cache.put(username, new VerifiedCredentials(passwordHmac.of(password), encryptedPassword));
+        }
+    }
+
+    void invalidate(final String username) {
+        final Cache<String, VerifiedCredentials> cache = this.cache;
+        if(cache != null && username != null) {
+            cache.invalidate(username);
+        }
+    }
+
+    void invalidateAll() {
+        final Cache<String, VerifiedCredentials> cache = this.cache;
+        if(cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+}
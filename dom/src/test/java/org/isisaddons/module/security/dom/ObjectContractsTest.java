@@ -0,0 +1,134 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.dom;
+
+import org.isisaddons.module.security.dom.feature.ApplicationFeatureId;
+import org.isisaddons.module.security.dom.feature.ApplicationFeatureType;
+import org.isisaddons.module.security.dom.permission.ApplicationPermissionMode;
+import org.isisaddons.module.security.dom.permission.ApplicationPermissionRule;
+import org.isisaddons.module.security.dom.permission.ApplicationPermissionValue;
+import org.isisaddons.module.security.dom.role.ApplicationRole;
+import org.isisaddons.module.security.dom.user.ApplicationUser;
+import org.junit.Test;
+import org.apache.isis.applib.util.ObjectContracts;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Checks that the hand-written (reflection-free) <tt>compareTo</tt> and <tt>equals</tt> of the security domain types
+ * agree with those of {@link ObjectContracts}, over the same properties, that they replace.
+ */
+public class ObjectContractsTest {
+
+    public static class ForApplicationFeatureId extends ObjectContractsTest {
+
+        @Test
+        public void happyCase() throws Exception {
+
+            // given
+            final ApplicationFeatureId[] featureIds = {
+                    ApplicationFeatureId.newPackage("com.foo"),
+                    ApplicationFeatureId.newClass("com.foo.Bar"),
+                    ApplicationFeatureId.newMember("com.foo.Bar", "bip"),
+                    ApplicationFeatureId.newMember("com.foo.Bar", "bop"),
+                    ApplicationFeatureId.newMember("com.foo.Bax", "bip"),
+                    new ApplicationFeatureId(ApplicationFeatureType.MEMBER, "com.foo.Bar#bip")
+            };
+
+            // then
+            assertSameAsObjectContracts(featureIds, "type, packageName, className, memberName");
+        }
+    }
+
+    public static class ForApplicationPermissionValue extends ObjectContractsTest {
+
+        @Test
+        public void happyCase() throws Exception {
+
+            // given
+            final ApplicationFeatureId featureId = ApplicationFeatureId.newMember("com.foo.Bar", "bip");
+            final ApplicationPermissionValue[] permissionValues = {
+                    new ApplicationPermissionValue(featureId, ApplicationPermissionRule.ALLOW, ApplicationPermissionMode.CHANGING),
+                    new ApplicationPermissionValue(featureId, ApplicationPermissionRule.VETO, ApplicationPermissionMode.CHANGING),
+                    new ApplicationPermissionValue(featureId, ApplicationPermissionRule.ALLOW, ApplicationPermissionMode.VIEWING),
+                    new ApplicationPermissionValue(
+                            ApplicationFeatureId.newClass("com.foo.Bar"), ApplicationPermissionRule.ALLOW, ApplicationPermissionMode.VIEWING),
+                    new ApplicationPermissionValue(featureId, ApplicationPermissionRule.ALLOW, ApplicationPermissionMode.CHANGING)
+            };
+
+            // then
+            assertSameAsObjectContracts(permissionValues, "rule, mode, featureId");
+        }
+    }
+
+    public static class ForApplicationRole extends ObjectContractsTest {
+
+        @Test
+        public void happyCase() throws Exception {
+
+            // given
+            final ApplicationRole[] roles = { newRole("admin"), newRole("regular"), newRole(null), newRole("admin") };
+
+            // then
+            assertSameAsObjectContracts(roles, "name");
+        }
+
+        private static ApplicationRole newRole(final String name) {
+            final ApplicationRole role = new ApplicationRole();
+            role.setName(name);
+            return role;
+        }
+    }
+
+    public static class ForApplicationUser extends ObjectContractsTest {
+
+        @Test
+        public void happyCase() throws Exception {
+
+            // given
+            final ApplicationUser[] users = { newUser("fred"), newUser("mary"), newUser(null), newUser("fred") };
+
+            // then
+            assertSameAsObjectContracts(users, "username");
+        }
+
+        private static ApplicationUser newUser(final String username) {
+            final ApplicationUser user = new ApplicationUser();
+            user.setUsername(username);
+            return user;
+        }
+    }
+
+    /**
+     * Compares every pair of items (including each item with itself).
+     */
+    static <T extends Comparable<T>> void assertSameAsObjectContracts(final T[] items, final String propertyNames) {
+        for (final T item : items) {
+            for (final T other : items) {
+                final String pair = item + " vs " + other;
+                assertThat(pair, Integer.signum(item.compareTo(other)),
+                        is(Integer.signum(ObjectContracts.compare(item, other, propertyNames))));
+                assertThat(pair, item.equals(other), is(ObjectContracts.equals(item, other, propertyNames)));
+                if(item.equals(other)) {
+                    assertThat(pair, item.hashCode(), is(other.hashCode()));
+                }
+            }
+        }
+    }
+
+}
@@ -32,6 +32,7 @@
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.emptyCollectionOf;
 import static org.junit.Assert.assertThat;
@@ -133,6 +134,24 @@ public void whenMember() throws Exception {
             // then
             assertThat(applicationFeatureId, is(ApplicationFeatureId.newMember("com.mycompany.Bar","foo")));
         }
+
+        @Test
+        public void whenMemberMalformed() throws Exception {
+            // then
+            expectedException.expect(IllegalArgumentException.class);
+            // when
+            new ApplicationFeatureId(ApplicationFeatureType.MEMBER, "com.mycompany.BarISMISSINGTHEHASHSYMBOL");
+        }
+
+        @Test
+        public void whenClassInDefaultPackage() throws Exception {
+            // when
+            final ApplicationFeatureId applicationFeatureId = new ApplicationFeatureId(ApplicationFeatureType.CLASS, "Bar");
+            // then
+            assertThat(applicationFeatureId.getPackageName(), is(""));
+            assertThat(applicationFeatureId.getClassName(), is("Bar"));
+            assertThat(applicationFeatureId.getMemberName(), is(nullValue()));
+        }
     }
 
     public static class NewFeature_AFT_String extends ApplicationFeatureIdTest {
@@ -269,6 +288,77 @@ public void whenMember() throws Exception {
 
     }
 
+    public static class Intern extends ApplicationFeatureIdTest {
+
+        @Test
+        public void factoryMethodsReturnCanonicalInstance() throws Exception {
+
+            // given
+            final ApplicationFeatureId memberId = ApplicationFeatureId.newMember("com.mycompany.Bar", "foo");
+
+            // then
+            assertThat(ApplicationFeatureId.newMember("com.mycompany.Bar#foo"), is(sameInstance(memberId)));
+            assertThat(ApplicationFeatureId.newFeature(ApplicationFeatureType.MEMBER, "com.mycompany.Bar#foo"), is(sameInstance(memberId)));
+            assertThat(ApplicationFeatureId.newFeature("com.mycompany", "Bar", "foo"), is(sameInstance(memberId)));
+            assertThat(ApplicationFeatureId.parse(memberId.asString()), is(sameInstance(memberId)));
+            assertThat(ApplicationFeatureId.parseEncoded(memberId.asEncodedString()), is(sameInstance(memberId)));
+        }
+
+        @Test
+        public void parentsAreCanonicalAndPathIsComputedOnce() throws Exception {
+
+            // given
+            final ApplicationFeatureId memberId = ApplicationFeatureId.newMember("com.mycompany.Bar", "foo");
+
+            // then
+            assertThat(memberId.getParentClassId(), is(sameInstance(ApplicationFeatureId.newClass("com.mycompany.Bar"))));
+            assertThat(memberId.getParentClassId().getParentPackageId(), is(sameInstance(ApplicationFeatureId.newPackage("com.mycompany"))));
+            assertThat(memberId.getPathIds(), is(sameInstance(memberId.getPathIds())));
+        }
+
+        @Test
+        public void constructorDoesNotIntern() throws Exception {
+
+            // when
+            final ApplicationFeatureId featureId = new ApplicationFeatureId(ApplicationFeatureType.PACKAGE, "com.mycompany");
+
+            // then
+            assertThat(featureId, is(ApplicationFeatureId.newPackage("com.mycompany")));
+            assertThat(featureId.hashCode(), is(ApplicationFeatureId.newPackage("com.mycompany").hashCode()));
+        }
+    }
+
+    public static class IsOnPathOf extends ApplicationFeatureIdTest {
+
+        final List<ApplicationFeatureId> featureIds = Arrays.asList(
+                ApplicationFeatureId.newPackage("com"),
+                ApplicationFeatureId.newPackage("co"),
+                ApplicationFeatureId.newPackage("com.mycompany"),
+                ApplicationFeatureId.newPackage("com.mycompanyx"),
+                ApplicationFeatureId.newClass("com.mycompany.Bar"),
+                ApplicationFeatureId.newClass("com.mycompany.Bart"),
+                ApplicationFeatureId.newClass("com.mycompanyx.Bar"),
+                ApplicationFeatureId.newMember("com.mycompany.Bar", "foo"),
+                ApplicationFeatureId.newMember("com.mycompany.Bar", "fooz"),
+                ApplicationFeatureId.newMember("com.mycompany.Bart", "foo"));
+
+        @Test
+        public void consistentWithPathIds() throws Exception {
+            for (final ApplicationFeatureId featureId : featureIds) {
+                for (final ApplicationFeatureId targetId : featureIds) {
+
+                    // when
+                    final boolean onPath = featureId.isOnPathOf(targetId);
+
+                    // then
+                    assertThat(featureId + " on path of " + targetId,
+                            onPath, is(targetId.getPathIds().contains(featureId)));
+                }
+            }
+        }
+
+    }
+
     public static class GetParentPackageId extends ApplicationFeatureIdTest {
 
         @Test
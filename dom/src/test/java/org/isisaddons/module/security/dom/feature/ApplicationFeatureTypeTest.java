@@ -21,7 +21,6 @@
 import org.junit.rules.ExpectedException;
 
 import static org.hamcrest.CoreMatchers.is;
-import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
 
 public class ApplicationFeatureTypeTest {
@@ -45,56 +44,6 @@ public void all() throws Exception {
         }
     }
 
-    public static class Init extends ApplicationFeatureTypeTest {
-
-        @Rule
-        public ExpectedException expectedException = ExpectedException.none();
-
-        @Test
-        public void givenPackage() throws Exception {
-
-            final ApplicationFeatureId applicationFeatureId = new ApplicationFeatureId(ApplicationFeatureType.PACKAGE);
-
-            ApplicationFeatureType.PACKAGE.init(applicationFeatureId, "com.mycompany");
-
-            assertThat(applicationFeatureId.getPackageName(), is("com.mycompany"));
-            assertThat(applicationFeatureId.getClassName(), is(nullValue()));
-            assertThat(applicationFeatureId.getMemberName(), is(nullValue()));
-
-        }
-        @Test
-        public void givenClass() throws Exception {
-
-            final ApplicationFeatureId applicationFeatureId = new ApplicationFeatureId(ApplicationFeatureType.CLASS);
-
-            ApplicationFeatureType.CLASS.init(applicationFeatureId, "com.mycompany.Bar");
-
-            assertThat(applicationFeatureId.getPackageName(), is("com.mycompany"));
-            assertThat(applicationFeatureId.getClassName(), is("Bar"));
-            assertThat(applicationFeatureId.getMemberName(), is(nullValue()));
-
-        }
-        @Test
-        public void givenMember() throws Exception {
-
-            final ApplicationFeatureId applicationFeatureId = new ApplicationFeatureId(ApplicationFeatureType.MEMBER);
-
-            ApplicationFeatureType.MEMBER.init(applicationFeatureId, "com.mycompany.Bar#foo");
-
-            assertThat(applicationFeatureId.getPackageName(), is("com.mycompany"));
-            assertThat(applicationFeatureId.getClassName(), is("Bar"));
-            assertThat(applicationFeatureId.getMemberName(), is("foo"));
-        }
-        @Test
-        public void givenMemberMalformed() throws Exception {
-
-            expectedException.expect(IllegalArgumentException.class);
-            final ApplicationFeatureId applicationFeatureId = new ApplicationFeatureId(ApplicationFeatureType.MEMBER);
-
-            ApplicationFeatureType.MEMBER.init(applicationFeatureId, "com.mycompany.BarISMISSINGTHEHASHSYMBOL");
-        }
-    }
-
     public static class EnsurePackage extends ApplicationFeatureTypeTest {
 
         @Rule
@@ -102,17 +51,17 @@ public static class EnsurePackage extends ApplicationFeatureTypeTest {
 
         @Test
         public void whenPackage() throws Exception {
-            ApplicationFeatureType.ensurePackage(new ApplicationFeatureId(ApplicationFeatureType.PACKAGE));
+            ApplicationFeatureType.ensurePackage(ApplicationFeatureId.newPackage("com.mycompany"));
         }
         @Test
         public void whenClass() throws Exception {
             expectedException.expect(IllegalStateException.class);
-            ApplicationFeatureType.ensurePackage(new ApplicationFeatureId(ApplicationFeatureType.CLASS));
+            ApplicationFeatureType.ensurePackage(ApplicationFeatureId.newClass("com.mycompany.Bar"));
         }
         @Test
         public void whenMember() throws Exception {
             expectedException.expect(IllegalStateException.class);
-            ApplicationFeatureType.ensurePackage(new ApplicationFeatureId(ApplicationFeatureType.MEMBER));
+            ApplicationFeatureType.ensurePackage(ApplicationFeatureId.newMember("com.mycompany.Bar#foo"));
         }
     }
 
@@ -123,16 +72,16 @@ public static class EnsurePackageOrClass extends ApplicationFeatureTypeTest {
 
         @Test
         public void whenPackage() throws Exception {
-            ApplicationFeatureType.ensurePackageOrClass(new ApplicationFeatureId(ApplicationFeatureType.PACKAGE));
+            ApplicationFeatureType.ensurePackageOrClass(ApplicationFeatureId.newPackage("com.mycompany"));
         }
         @Test
         public void whenClass() throws Exception {
-            ApplicationFeatureType.ensurePackageOrClass(new ApplicationFeatureId(ApplicationFeatureType.CLASS));
+            ApplicationFeatureType.ensurePackageOrClass(ApplicationFeatureId.newClass("com.mycompany.Bar"));
         }
         @Test
         public void whenMember() throws Exception {
             expectedException.expect(IllegalStateException.class);
-            ApplicationFeatureType.ensurePackageOrClass(new ApplicationFeatureId(ApplicationFeatureType.MEMBER));
+            ApplicationFeatureType.ensurePackageOrClass(ApplicationFeatureId.newMember("com.mycompany.Bar#foo"));
         }
 
     }
@@ -144,16 +93,16 @@ public static class EnsureClass extends ApplicationFeatureTypeTest {
         @Test
         public void whenPackage() throws Exception {
             expectedException.expect(IllegalStateException.class);
-            ApplicationFeatureType.ensureClass(new ApplicationFeatureId(ApplicationFeatureType.PACKAGE));
+            ApplicationFeatureType.ensureClass(ApplicationFeatureId.newPackage("com.mycompany"));
         }
         @Test
         public void whenClass() throws Exception {
-            ApplicationFeatureType.ensureClass(new ApplicationFeatureId(ApplicationFeatureType.CLASS));
+            ApplicationFeatureType.ensureClass(ApplicationFeatureId.newClass("com.mycompany.Bar"));
         }
         @Test
         public void whenMember() throws Exception {
             expectedException.expect(IllegalStateException.class);
-            ApplicationFeatureType.ensureClass(new ApplicationFeatureId(ApplicationFeatureType.MEMBER));
+            ApplicationFeatureType.ensureClass(ApplicationFeatureId.newMember("com.mycompany.Bar#foo"));
         }
 
     }
@@ -165,16 +114,16 @@ public static class EnsureMember extends ApplicationFeatureTypeTest {
         @Test
         public void whenPackage() throws Exception {
             expectedException.expect(IllegalStateException.class);
-            ApplicationFeatureType.ensureMember(new ApplicationFeatureId(ApplicationFeatureType.PACKAGE));
+            ApplicationFeatureType.ensureMember(ApplicationFeatureId.newPackage("com.mycompany"));
         }
         @Test
         public void whenClass() throws Exception {
             expectedException.expect(IllegalStateException.class);
-            ApplicationFeatureType.ensureMember(new ApplicationFeatureId(ApplicationFeatureType.CLASS));
+            ApplicationFeatureType.ensureMember(ApplicationFeatureId.newClass("com.mycompany.Bar"));
         }
         @Test
         public void whenMember() throws Exception {
-            ApplicationFeatureType.ensureMember(new ApplicationFeatureId(ApplicationFeatureType.MEMBER));
+            ApplicationFeatureType.ensureMember(ApplicationFeatureId.newMember("com.mycompany.Bar#foo"));
         }
     }
 
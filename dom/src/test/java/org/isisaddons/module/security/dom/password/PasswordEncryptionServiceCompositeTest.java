@@ -0,0 +1,143 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.dom.password;
+
+import java.util.Collections;
+import org.junit.Assume;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class PasswordEncryptionServiceCompositeTest extends PasswordEncryptionServiceContractTest {
+
+    @Override
+    protected PasswordEncryptionService newPasswordEncryptionService() {
+        return new PasswordEncryptionServiceComposite(
+                new PasswordHashingAlgorithmBCrypt(5), new PasswordHashingAlgorithmPbkdf2(1000));
+    }
+
+    @Override
+    protected PasswordEncryptionService newPasswordEncryptionServiceDifferentSalt() {
+        return new PasswordEncryptionServiceComposite(
+                new PasswordHashingAlgorithmPbkdf2(1000), new PasswordHashingAlgorithmBCrypt(5));
+    }
+
+    @Test
+    public void matches_whenEncryptedByOtherAlgorithm() throws Exception {
+
+        // given
+        final PasswordHashingAlgorithmPbkdf2 pbkdf2 = new PasswordHashingAlgorithmPbkdf2(1000);
+        final PasswordEncryptionServiceComposite service =
+                new PasswordEncryptionServiceComposite(new PasswordHashingAlgorithmBCrypt(5), pbkdf2);
+
+        // when
+        final String encrypted = pbkdf2.encrypt(PASSWORD);
+
+        // then
+        assertThat(service.matches(PASSWORD, encrypted), is(true));
+        assertThat(service.matches(PASSWORD_DIFFERENT, encrypted), is(false));
+        assertThat(service.needsRehash(encrypted), is(true));
+    }
+
+    @Test
+    public void matches_whenUnknownAlgorithm() throws Exception {
+
+        // given
+        final PasswordEncryptionService service = newPasswordEncryptionService();
+
+        // then
+        assertThat(service.matches(PASSWORD, PASSWORD), is(false));
+    }
+
+    @Test
+    public void needsRehash_whenEncryptedByPrimary() throws Exception {
+
+        // given
+        final PasswordEncryptionServiceComposite service = (PasswordEncryptionServiceComposite) newPasswordEncryptionService();
+
+        // when
+        final String encrypted = service.encrypt(PASSWORD);
+
+        // then
+        assertThat(service.needsRehash(encrypted), is(false));
+    }
+
+    @Test
+    public void needsRehash_whenEncryptedByPrimaryWithDifferentParameters() throws Exception {
+
+        // given
+        final PasswordEncryptionServiceComposite service = (PasswordEncryptionServiceComposite) newPasswordEncryptionService();
+
+        // when
+        final String encrypted = new PasswordHashingAlgorithmBCrypt(4).encrypt(PASSWORD);
+
+        // then
+        assertThat(service.matches(PASSWORD, encrypted), is(true));
+        assertThat(service.needsRehash(encrypted), is(true));
+    }
+
+    @Test
+    public void init_withPrimary() throws Exception {
+
+        // given
+        final PasswordEncryptionServiceComposite service = new PasswordEncryptionServiceComposite();
+
+        // when
+        service.init(Collections.singletonMap(PasswordEncryptionServiceComposite.KEY_PRIMARY, "pbkdf2"));
+
+        // then
+        assertThat(service.getPrimary(), is(instanceOf(PasswordHashingAlgorithmPbkdf2.class)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void init_withUnknownPrimary() throws Exception {
+
+        // given
+        final PasswordEncryptionServiceComposite service = new PasswordEncryptionServiceComposite();
+
+        // when
+        service.init(Collections.singletonMap(PasswordEncryptionServiceComposite.KEY_PRIMARY, "md5"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void init_withPbkdf2PrimaryWhenNotSupported() throws Exception {
+
+        // given (Java 7)
+        Assume.assumeTrue(!PasswordHashingAlgorithmPbkdf2.isSupported());
+        final PasswordEncryptionServiceComposite service = new PasswordEncryptionServiceComposite();
+
+        // when
+        service.init(Collections.singletonMap(PasswordEncryptionServiceComposite.KEY_PRIMARY, "pbkdf2"));
+    }
+
+    @Test
+    public void init_withoutPrimaryWhenPbkdf2NotSupported() throws Exception {
+
+        // given (Java 7)
+        Assume.assumeTrue(!PasswordHashingAlgorithmPbkdf2.isSupported());
+        final PasswordEncryptionServiceComposite service = new PasswordEncryptionServiceComposite();
+
+        // when
+        service.init(Collections.<String,String>emptyMap());
+
+        // then
+        assertThat(service.getPrimary(), is(instanceOf(PasswordHashingAlgorithmBCrypt.class)));
+        assertThat(service.matches(PASSWORD, service.encrypt(PASSWORD)), is(true));
+    }
+}
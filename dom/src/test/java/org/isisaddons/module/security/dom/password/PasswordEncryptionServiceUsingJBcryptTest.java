@@ -16,8 +16,13 @@
  */
 package org.isisaddons.module.security.dom.password;
 
+import java.util.Collections;
+import org.junit.Test;
 import org.mindrot.jbcrypt.BCrypt;
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
 public class PasswordEncryptionServiceUsingJBcryptTest extends PasswordEncryptionServiceContractTest {
 
     @Override
@@ -32,4 +37,99 @@ protected PasswordEncryptionService newPasswordEncryptionServiceDifferentSalt()
         service.salt = BCrypt.gensalt(12); // a different salt
         return service;
     }
-}
\ No newline at end of file
+
+    @Test
+    public void needsRehash_whenSameLogRounds() throws Exception {
+
+        // given
+        final PasswordEncryptionServiceUsingJBcrypt service = new PasswordEncryptionServiceUsingJBcrypt();
+        service.setLogRounds(5);
+
+        // when
+        final String encrypted = service.encrypt(PASSWORD);
+
+        // then
+        assertThat(service.needsRehash(encrypted), is(false));
+    }
+
+    @Test
+    public void needsRehash_whenDifferentLogRounds() throws Exception {
+
+        // given
+        final PasswordEncryptionServiceUsingJBcrypt service = new PasswordEncryptionServiceUsingJBcrypt();
+        service.setLogRounds(5);
+        final String encrypted = service.encrypt(PASSWORD);
+
+        // when
+        service.setLogRounds(6);
+
+        // then
+        assertThat(service.needsRehash(encrypted), is(true));
+        assertThat(service.matches(PASSWORD, encrypted), is(true));
+    }
+
+    @Test
+    public void needsRehash_whenNotBCrypt() throws Exception {
+
+        // given
+        final PasswordEncryptionServiceUsingJBcrypt service = new PasswordEncryptionServiceUsingJBcrypt();
+
+        // then
+        assertThat(service.needsRehash("plain"), is(false));
+        assertThat(service.needsRehash(null), is(false));
+    }
+
+    @Test
+    public void logRoundsOf() throws Exception {
+        assertThat(PasswordEncryptionServiceUsingJBcrypt.logRoundsOf(BCrypt.hashpw(PASSWORD, BCrypt.gensalt(5))), is(5));
+        assertThat(PasswordEncryptionServiceUsingJBcrypt.logRoundsOf("$2$12$abc"), is(12));
+        assertThat(PasswordEncryptionServiceUsingJBcrypt.logRoundsOf("$2a$x1$abc"), is(-1));
+        assertThat(PasswordEncryptionServiceUsingJBcrypt.logRoundsOf("abc"), is(-1));
+    }
+
+    @Test
+    public void init_withLogRounds() throws Exception {
+
+        // given
+        final PasswordEncryptionServiceUsingJBcrypt service = new PasswordEncryptionServiceUsingJBcrypt();
+
+        // when
+        service.init(Collections.singletonMap(PasswordEncryptionServiceUsingJBcrypt.KEY_LOG_ROUNDS, "7"));
+
+        // then
+        assertThat(service.getLogRounds(), is(7));
+    }
+
+    @Test
+    public void init_withCalibration() throws Exception {
+
+        // given
+        final PasswordEncryptionServiceUsingJBcrypt service = new PasswordEncryptionServiceUsingJBcrypt();
+
+        // when
+        service.init(Collections.singletonMap(PasswordEncryptionServiceUsingJBcrypt.KEY_CALIBRATION_TARGET_MILLIS, "0"));
+
+        // then
+        assertThat(service.getLogRounds(), is(PasswordEncryptionServiceUsingJBcrypt.MIN_LOG_ROUNDS));
+    }
+
+    @Test
+    public void median_whenOdd() throws Exception {
+
+        // when
+        final long median = PasswordEncryptionServiceUsingJBcrypt.median(new long[] { 30, 1000, 10, 20, 40 });
+
+        // then the outlier is discounted
+        assertThat(median, is(30L));
+    }
+
+    @Test
+    public void median_whenEven() throws Exception {
+
+        // when
+        final long median = PasswordEncryptionServiceUsingJBcrypt.median(new long[] { 40, 10, 1000, 20 });
+
+        // then
+        assertThat(median, is(30L));
+    }
+}
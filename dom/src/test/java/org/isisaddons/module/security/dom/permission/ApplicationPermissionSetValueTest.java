@@ -18,12 +18,20 @@
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.google.common.collect.Lists;
 import org.isisaddons.module.security.dom.feature.ApplicationFeatureId;
+import org.isisaddons.module.security.dom.feature.ApplicationFeatureOrdinals;
+import org.junit.Before;
 import org.junit.Test;
 
 import org.apache.isis.core.unittestsupport.value.ValueTypeContractTestAbstract;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 public class ApplicationPermissionSetValueTest {
@@ -740,6 +748,264 @@ public void packageAllowChanging_and_classVetoChanging() throws Exception {
             }
         }
 
+        public static class GivenOrdinals extends Grants {
+
+            private static ApplicationFeatureId cComFooBax = ApplicationFeatureId.newClass("com.foo.Bax");
+            private static ApplicationFeatureId mComFooBax_bop = ApplicationFeatureId.newMember("com.foo.Bax", "bop");
+            private static ApplicationFeatureId mComFooBax_bip = ApplicationFeatureId.newMember("com.foo.Bax", "bip");
+            private static ApplicationFeatureId mComFozBiz_bop = ApplicationFeatureId.newMember("com.foz.Biz", "bop");
+
+            ApplicationFeatureOrdinals ordinals;
+
+            @Before
+            public void setUp() throws Exception {
+                ordinals = new ApplicationFeatureOrdinals(Arrays.asList(
+                        mComFooBar_bip, mComFooBar_bop, mComFooBax_bip, mComFooBax_bop));
+            }
+
+            ApplicationPermissionValueSet newCompilableSet(ApplicationPermissionValue... applicationPermissionValues) {
+                return new ApplicationPermissionValueSet(Arrays.asList(applicationPermissionValues), null, ordinals);
+            }
+
+            static void checkUntilCompiled(final ApplicationPermissionValueSet apv) {
+                for (int i = 0; i < ApplicationPermissionValueSet.CHECKS_BEFORE_COMPILING; i++) {
+                    apv.grants(mComFooBar_bip, viewing());
+                }
+            }
+
+            @Test
+            public void sameAsEvaluate() throws Exception {
+                // given
+                final ApplicationPermissionValueSet apv = newCompilableSet(
+                        allowChanging(pCom),
+                        vetoChanging(mComFooBar_bip),
+                        allowViewing(cComFooBax),
+                        vetoViewing(mComFooBax_bop),
+                        vetoChanging(mComFozBiz_bop));
+
+                // when
+                checkUntilCompiled(apv);
+
+                // then
+                assertThat(apv.isCompiled(), is(true));
+                for (final ApplicationFeatureId memberId : Arrays.asList(mComFooBar_bip, mComFooBar_bop, mComFooBax_bip, mComFooBax_bop, mComFozBiz_bop)) {
+                    for (final ApplicationPermissionMode mode : ApplicationPermissionMode.values()) {
+                        assertThat(memberId + " " + mode,
+                                apv.grants(memberId, mode), is(apv.evaluate(memberId, mode).isGranted()));
+                    }
+                }
+                assertThat(apv.grants(mComFooBar_bip, changing()), is(false));
+                assertThat(apv.grants(mComFooBar_bip, viewing()), is(true));
+                assertThat(apv.grants(mComFooBax_bip, changing()), is(true)); // class allows only viewing, but package allows changing
+                assertThat(apv.grants(mComFooBax_bip, viewing()), is(true));
+                assertThat(apv.grants(mComFooBax_bop, viewing()), is(false));
+                assertThat(apv.grants(mComFozBiz_bop, viewing()), is(true)); // no ordinal, so evaluated
+            }
+
+            @Test
+            public void followsPolicy() throws Exception {
+                // given
+                final ApplicationPermissionValueSet allowBeatsVeto = new ApplicationPermissionValueSet(
+                        Arrays.asList(allowChanging(cComFooBar), vetoViewing(cComFooBar)),
+                        new PermissionsEvaluationServiceAllowBeatsVeto(), ordinals);
+                final ApplicationPermissionValueSet vetoBeatsAllow = new ApplicationPermissionValueSet(
+                        Arrays.asList(allowChanging(cComFooBar), vetoViewing(cComFooBar)),
+                        new PermissionsEvaluationServiceVetoBeatsAllow(), ordinals);
+
+                // when
+                checkUntilCompiled(allowBeatsVeto);
+                checkUntilCompiled(vetoBeatsAllow);
+
+                // then
+                assertThat(allowBeatsVeto.grants(mComFooBar_bop, viewing()), is(true));
+                assertThat(vetoBeatsAllow.grants(mComFooBar_bop, viewing()), is(false));
+            }
+
+            @Test
+            public void whenNotCheckedOften() throws Exception {
+                // given
+                final ApplicationPermissionValueSet apv = newCompilableSet(allowViewing(mComFooBax_bop));
+
+                // when
+                for (int i = 0; i < ApplicationPermissionValueSet.CHECKS_BEFORE_COMPILING - 1; i++) {
+                    assertThat(apv.grants(mComFooBax_bop, viewing()), is(true));
+                }
+
+                // then still evaluated
+                assertThat(apv.isCompiled(), is(false));
+            }
+
+            @Test
+            public void whenNoOrdinals() throws Exception {
+                // given
+                final ApplicationPermissionValueSet apv = newSet(allowViewing(mComFooBax_bop));
+
+                // when
+                checkUntilCompiled(apv);
+                checkUntilCompiled(apv);
+
+                // then
+                assertThat(apv.isCompiled(), is(false));
+                assertThat(apv.grants(mComFooBax_bop, viewing()), is(true));
+            }
+
+            @Test
+            public void whenCheckedConcurrently() throws Exception {
+                // given
+                final ApplicationPermissionValueSet apv = newCompilableSet(
+                        allowChanging(pCom),
+                        vetoViewing(mComFooBax_bop));
+                final int threads = 8;
+                final CountDownLatch start = new CountDownLatch(1);
+                final AtomicInteger mismatches = new AtomicInteger();
+                final List<Thread> checkers = Lists.newArrayList();
+                for (int t = 0; t < threads; t++) {
+                    final Thread checker = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                start.await();
+                            } catch (final InterruptedException ex) {
+                                return;
+                            }
+                            for (int i = 0; i < ApplicationPermissionValueSet.CHECKS_BEFORE_COMPILING; i++) {
+                                if(apv.grants(mComFooBax_bop, viewing()) || !apv.grants(mComFooBax_bip, changing())) {
+                                    mismatches.incrementAndGet();
+                                }
+                            }
+                        }
+                    });
+                    checker.start();
+                    checkers.add(checker);
+                }
+
+                // when
+                start.countDown();
+                for (final Thread checker : checkers) {
+                    checker.join(10000);
+                }
+
+                // then
+                assertThat(mismatches.get(), is(0));
+                assertThat(apv.isCompiled(), is(true));
+            }
+        }
+
+    }
+
+    public static class Evaluate extends ApplicationPermissionSetValueTest {
+
+        private static ApplicationFeatureId mComFooBax_bip = ApplicationFeatureId.newMember("com.foo.Bax", "bip");
+        private static ApplicationFeatureId mOrgFooBar_bip = ApplicationFeatureId.newMember("org.foo.Bar", "bip");
+
+        final List<ApplicationPermissionValue> permissionValues = Arrays.asList(
+                allowChanging(pCom),
+                vetoViewing(pComFoo),
+                allowViewing(cComFooBar),
+                vetoChanging(mComFooBar_bip));
+
+        @Test
+        public void allowBeatsVeto() throws Exception {
+            assertSharedEvaluations(new ApplicationPermissionValueSet(
+                    permissionValues, new PermissionsEvaluationServiceAllowBeatsVeto()));
+        }
+
+        @Test
+        public void vetoBeatsAllow() throws Exception {
+            assertSharedEvaluations(new ApplicationPermissionValueSet(
+                    permissionValues, new PermissionsEvaluationServiceVetoBeatsAllow()));
+        }
+
+        /**
+         * Each evaluation is that of the permission that caused it (or {@link ApplicationPermissionValueSet.Evaluation#NOT_GRANTED}),
+         * created once and then shared, so that checks create no garbage.
+         */
+        private static void assertSharedEvaluations(final ApplicationPermissionValueSet set) {
+            for (final ApplicationFeatureId memberId : Arrays.asList(mComFooBar_bip, mComFooBar_bop, mComFooBax_bip)) {
+                for (final ApplicationPermissionMode mode : ApplicationPermissionMode.values()) {
+                    final ApplicationPermissionValueSet.Evaluation evaluation = set.evaluate(memberId, mode);
+                    assertThat(memberId + " " + mode, evaluation.getCause(), is(notNullValue()));
+                    assertThat(memberId + " " + mode, evaluation, is(sameInstance(evaluation.getCause().getEvaluation())));
+                    assertThat(memberId + " " + mode, set.evaluate(memberId, mode), is(sameInstance(evaluation)));
+                }
+            }
+            for (final ApplicationPermissionMode mode : ApplicationPermissionMode.values()) {
+                assertThat(set.evaluate(mOrgFooBar_bip, mode), is(sameInstance(ApplicationPermissionValueSet.Evaluation.NOT_GRANTED)));
+            }
+        }
+    }
+
+    public static class EvaluateAll extends ApplicationPermissionSetValueTest {
+
+        final List<ApplicationFeatureId> featureIds = Arrays.asList(
+                pCom, pComFoo, cComFooBar, mComFooBar_bip, mComFooBar_bop,
+                ApplicationFeatureId.newMember("com.foo.Baz", "bip"),
+                ApplicationFeatureId.newMember("org.foo.Bar", "bip"));
+
+        final List<ApplicationPermissionValue> permissionValues = Arrays.asList(
+                allowViewing(pCom), vetoChanging(pComFoo), allowChanging(cComFooBar), vetoViewing(mComFooBar_bop));
+
+        @Test
+        public void sameAsEvaluate() throws Exception {
+            for (final PermissionsEvaluationService permissionsEvaluationService : Arrays.asList(
+                    new PermissionsEvaluationServiceAllowBeatsVeto(), new PermissionsEvaluationServiceVetoBeatsAllow())) {
+
+                // given
+                final ApplicationPermissionValueSet apv = new ApplicationPermissionValueSet(permissionValues, permissionsEvaluationService);
+
+                // when
+                final ApplicationPermissionValueSet.Evaluations evaluations = apv.evaluateAll(featureIds, viewing(), changing());
+
+                // then
+                assertThat(evaluations.size(), is(featureIds.size()));
+                for (int i = 0; i < featureIds.size(); i++) {
+                    assertThat(evaluations.getFeatureIds().get(i), is(featureIds.get(i)));
+                    for (final ApplicationPermissionMode mode : ApplicationPermissionMode.values()) {
+                        final ApplicationPermissionValueSet.Evaluation expected = apv.evaluate(featureIds.get(i), mode);
+                        assertThat(evaluations.get(i, mode).getCause(), is(expected.getCause()));
+                        assertThat(evaluations.get(i, mode).isGranted(), is(expected.isGranted()));
+                    }
+                }
+            }
+        }
+
+        @Test
+        public void inParallel() throws Exception {
+
+            // given
+            final ApplicationPermissionValueSet apv = new ApplicationPermissionValueSet(permissionValues);
+            final List<ApplicationFeatureId> manyFeatureIds = Lists.newArrayList();
+            for (int i = 0; i < 1000; i++) {
+                manyFeatureIds.addAll(featureIds);
+            }
+            final ForkJoinPool pool = new ForkJoinPool(4);
+
+            // when
+            final ApplicationPermissionValueSet.Evaluations evaluations;
+            try {
+                evaluations = apv.evaluateAll(manyFeatureIds, pool, viewing(), changing());
+            } finally {
+                pool.shutdown();
+            }
+
+            // then
+            for (int i = 0; i < manyFeatureIds.size(); i++) {
+                for (final ApplicationPermissionMode mode : ApplicationPermissionMode.values()) {
+                    assertThat(evaluations.get(i, mode).getCause(), is(apv.evaluate(manyFeatureIds.get(i), mode).getCause()));
+                }
+            }
+        }
+
+        @Test(expected = IllegalArgumentException.class)
+        public void whenModeNotEvaluated() throws Exception {
+
+            // given
+            final ApplicationPermissionValueSet apv = new ApplicationPermissionValueSet(permissionValues);
+            final ApplicationPermissionValueSet.Evaluations evaluations = apv.evaluateAll(featureIds, viewing());
+
+            // when
+            evaluations.get(0, changing());
+        }
     }
 
     //region > helpers just to make tests easier to read
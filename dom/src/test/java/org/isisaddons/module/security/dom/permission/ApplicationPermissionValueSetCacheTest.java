@@ -0,0 +1,184 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.dom.permission;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.google.common.base.Supplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class ApplicationPermissionValueSetCacheTest {
+
+    AtomicInteger supplied;
+    Supplier<ApplicationPermissionValueSet> supplier;
+
+    @Before
+    public void setUp() throws Exception {
+        supplied = new AtomicInteger();
+        supplier = new Supplier<ApplicationPermissionValueSet>() {
+            @Override
+            public ApplicationPermissionValueSet get() {
+                supplied.incrementAndGet();
+                return new ApplicationPermissionValueSet(Collections.<ApplicationPermissionValue>emptyList());
+            }
+        };
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ApplicationPermissionValueSetCache.configure(0, 0);
+    }
+
+    public static class Get extends ApplicationPermissionValueSetCacheTest {
+
+        @Test
+        public void whenNotConfigured() throws Exception {
+
+            // when
+            final ApplicationPermissionValueSet set1 = ApplicationPermissionValueSetCache.get(Arrays.asList("a", "b"), null, supplier);
+            final ApplicationPermissionValueSet set2 = ApplicationPermissionValueSetCache.get(Arrays.asList("a", "b"), null, supplier);
+
+            // then
+            assertThat(ApplicationPermissionValueSetCache.isEnabled(), is(false));
+            assertThat(set1, is(not(sameInstance(set2))));
+            assertThat(supplied.get(), is(2));
+        }
+
+        @Test
+        public void sharedWhenSameRoles() throws Exception {
+
+            // given
+            ApplicationPermissionValueSetCache.configure(10, 60000);
+
+            // when
+            final ApplicationPermissionValueSet set1 = ApplicationPermissionValueSetCache.get(Arrays.asList("a", "b"), null, supplier);
+            final ApplicationPermissionValueSet set2 = ApplicationPermissionValueSetCache.get(Arrays.asList("b", "a"), null, supplier);
+
+            // then
+            assertThat(set1, is(sameInstance(set2)));
+            assertThat(supplied.get(), is(1));
+        }
+
+        @Test
+        public void notSharedWhenDifferentRoles() throws Exception {
+
+            // given
+            ApplicationPermissionValueSetCache.configure(10, 60000);
+
+            // when
+            final ApplicationPermissionValueSet set1 = ApplicationPermissionValueSetCache.get(Arrays.asList("a", "b"), null, supplier);
+            final ApplicationPermissionValueSet set2 = ApplicationPermissionValueSetCache.get(Arrays.asList("a"), null, supplier);
+
+            // then
+            assertThat(set1, is(not(sameInstance(set2))));
+        }
+
+        @Test
+        public void notSharedWhenDifferentPolicy() throws Exception {
+
+            // given
+            ApplicationPermissionValueSetCache.configure(10, 60000);
+
+            // when
+            final ApplicationPermissionValueSet set1 = ApplicationPermissionValueSetCache.get(
+                    Arrays.asList("a"), new PermissionsEvaluationServiceAllowBeatsVeto(), supplier);
+            final ApplicationPermissionValueSet set2 = ApplicationPermissionValueSetCache.get(
+                    Arrays.asList("a"), new PermissionsEvaluationServiceVetoBeatsAllow(), supplier);
+
+            // then
+            assertThat(set1, is(not(sameInstance(set2))));
+        }
+    }
+
+    public static class InvalidateAll extends ApplicationPermissionValueSetCacheTest {
+
+        @Test
+        public void happyCase() throws Exception {
+
+            // given
+            ApplicationPermissionValueSetCache.configure(10, 60000);
+            final ApplicationPermissionValueSet set1 = ApplicationPermissionValueSetCache.get(Arrays.asList("a"), null, supplier);
+
+            // when
+            ApplicationPermissionValueSetCache.invalidateAll();
+
+            // then
+            final ApplicationPermissionValueSet set2 = ApplicationPermissionValueSetCache.get(Arrays.asList("a"), null, supplier);
+            assertThat(set1, is(not(sameInstance(set2))));
+        }
+
+        @Test
+        public void whenInvalidatedDuringBuild() throws Exception {
+
+            // given
+            ApplicationPermissionValueSetCache.configure(10, 60000);
+            final Supplier<ApplicationPermissionValueSet> invalidatingSupplier = new Supplier<ApplicationPermissionValueSet>() {
+                @Override
+                public ApplicationPermissionValueSet get() {
+                    final ApplicationPermissionValueSet set = supplier.get();
+                    // eg a permission changed (and committed) after this set's permissions were read
+                    ApplicationPermissionValueSetCache.invalidateAll();
+                    return set;
+                }
+            };
+
+            // when
+            final ApplicationPermissionValueSet set1 = ApplicationPermissionValueSetCache.get(Arrays.asList("a"), null, invalidatingSupplier);
+
+            // then returned, but not cached
+            assertThat(set1, is(notNullValue()));
+            assertThat(ApplicationPermissionValueSetCache.getIfPresent(Arrays.asList("a"), null), is(nullValue()));
+            final ApplicationPermissionValueSet set2 = ApplicationPermissionValueSetCache.get(Arrays.asList("a"), null, supplier);
+            assertThat(set1, is(not(sameInstance(set2))));
+            assertThat(supplied.get(), is(2));
+        }
+
+        @Test
+        public void whenNotEnlistedInTransaction() throws Exception {
+
+            // given
+            ApplicationPermissionValueSetCache.configure(10, 60000);
+            ApplicationPermissionValueSetCache.get(Arrays.asList("a"), null, supplier);
+
+            // when
+            ApplicationPermissionValueSetCache.invalidateAllNowAndAfterCompletion(new Object());
+
+            // then evicted immediately
+            assertThat(ApplicationPermissionValueSetCache.getIfPresent(Arrays.asList("a"), null), is(nullValue()));
+        }
+    }
+
+    public static class KeyFor extends ApplicationPermissionValueSetCacheTest {
+
+        @Test
+        public void defaultPolicy() throws Exception {
+            assertThat(ApplicationPermissionValueSetCache.keyFor(Arrays.asList("a"), null),
+                    is(ApplicationPermissionValueSetCache.keyFor(Arrays.asList("a"), new PermissionsEvaluationServiceAllowBeatsVeto())));
+        }
+    }
+
+}
@@ -325,6 +325,22 @@ static ApplicationPermissionMode viewing() {
 
     }
 
+    public static class ToString extends ApplicationPermissionValueTest {
+
+        @Test
+        public void format() throws Exception {
+
+            // given
+            final ApplicationPermissionValue value = new ApplicationPermissionValue(
+                    ApplicationFeatureId.newMember("com.foo.Bar#bip"), ApplicationPermissionRule.ALLOW, ApplicationPermissionMode.CHANGING);
+
+            // when, then (as produced previously by ObjectContracts, and relied upon by the principal's permission stamp)
+            assertThat(value.toString(), is(
+                    "ApplicationPermissionValue{rule=ALLOW, mode=CHANGING, "
+                            + "featureId=ApplicationFeatureId{type=MEMBER, packageName=com.foo, className=Bar, memberName=bip}}"));
+        }
+    }
+
     public static class PrivateConstructors extends ApplicationPermissionValueTest {
 
         @Test
@@ -0,0 +1,96 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.dom.permission;
+
+import java.util.Arrays;
+import org.isisaddons.module.security.dom.feature.ApplicationFeatureId;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ApplicationPermissionValueTrieTest {
+
+    final PermissionsEvaluationService permissionsEvaluationService = PermissionsEvaluationService.DEFAULT;
+
+    static ApplicationPermissionValue allowChanging(final ApplicationFeatureId featureId) {
+        return new ApplicationPermissionValue(featureId, ApplicationPermissionRule.ALLOW, ApplicationPermissionMode.CHANGING);
+    }
+
+    static ApplicationPermissionValue vetoViewing(final ApplicationFeatureId featureId) {
+        return new ApplicationPermissionValue(featureId, ApplicationPermissionRule.VETO, ApplicationPermissionMode.VIEWING);
+    }
+
+    public static class Evaluate extends ApplicationPermissionValueTrieTest {
+
+        @Test
+        public void mostSpecificFirst() throws Exception {
+
+            // given
+            final ApplicationPermissionValue allowCom = allowChanging(ApplicationFeatureId.newPackage("com"));
+            final ApplicationPermissionValue vetoBar = vetoViewing(ApplicationFeatureId.newClass("com.foo.Bar"));
+            final ApplicationPermissionValue allowBip = allowChanging(ApplicationFeatureId.newMember("com.foo.Bar", "bip"));
+            final ApplicationPermissionValueTrie trie = new ApplicationPermissionValueTrie(Arrays.asList(allowCom, vetoBar, allowBip));
+
+            // when, then
+            assertThat(trie.evaluate(ApplicationFeatureId.newMember("com.foo.Bar", "bip"), ApplicationPermissionMode.CHANGING, permissionsEvaluationService).getCause(), is(allowBip));
+            assertThat(trie.evaluate(ApplicationFeatureId.newMember("com.foo.Bar", "bop"), ApplicationPermissionMode.CHANGING, permissionsEvaluationService).getCause(), is(vetoBar));
+            assertThat(trie.evaluate(ApplicationFeatureId.newMember("com.foo.Baz", "bop"), ApplicationPermissionMode.CHANGING, permissionsEvaluationService).getCause(), is(allowCom));
+            assertThat(trie.evaluate(ApplicationFeatureId.newPackage("com.foo"), ApplicationPermissionMode.VIEWING, permissionsEvaluationService).getCause(), is(allowCom));
+            assertThat(trie.evaluate(ApplicationFeatureId.newClass("com.foo.Bar"), ApplicationPermissionMode.VIEWING, permissionsEvaluationService).getCause(), is(vetoBar));
+        }
+
+        @Test
+        public void segmentsMatchedExactly() throws Exception {
+
+            // given
+            final ApplicationPermissionValueTrie trie = new ApplicationPermissionValueTrie(Arrays.asList(
+                    allowChanging(ApplicationFeatureId.newPackage("com.foo"))));
+
+            // when, then
+            assertThat(trie.evaluate(ApplicationFeatureId.newPackage("com.fo"), ApplicationPermissionMode.VIEWING, permissionsEvaluationService), is(nullValue()));
+            assertThat(trie.evaluate(ApplicationFeatureId.newPackage("com.food"), ApplicationPermissionMode.VIEWING, permissionsEvaluationService), is(nullValue()));
+            assertThat(trie.evaluate(ApplicationFeatureId.newPackage("com"), ApplicationPermissionMode.VIEWING, permissionsEvaluationService), is(nullValue()));
+            assertThat(trie.evaluate(ApplicationFeatureId.newClass("com.foo.Bar"), ApplicationPermissionMode.VIEWING, permissionsEvaluationService).isGranted(), is(true));
+        }
+
+        @Test
+        public void packageAndClassOfSameNameAreDistinct() throws Exception {
+
+            // given
+            final ApplicationPermissionValueTrie trie = new ApplicationPermissionValueTrie(Arrays.asList(
+                    vetoViewing(ApplicationFeatureId.newPackage("com.foo.Bar"))));
+
+            // when, then
+            assertThat(trie.evaluate(ApplicationFeatureId.newMember("com.foo.Bar", "bip"), ApplicationPermissionMode.VIEWING, permissionsEvaluationService), is(nullValue()));
+            assertThat(trie.evaluate(ApplicationFeatureId.newClass("com.foo.Bar.Baz"), ApplicationPermissionMode.VIEWING, permissionsEvaluationService).isGranted(), is(false));
+        }
+
+        @Test
+        public void whenEmpty() throws Exception {
+
+            // given
+            final ApplicationPermissionValueTrie trie = new ApplicationPermissionValueTrie(
+                    Arrays.<ApplicationPermissionValue>asList());
+
+            // when, then
+            assertThat(trie.evaluate(ApplicationFeatureId.newMember("com.foo.Bar", "bip"), ApplicationPermissionMode.VIEWING, permissionsEvaluationService), is(nullValue()));
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import java.util.Collections;
+import org.junit.Before;
+import org.junit.Test;
+import org.isisaddons.module.security.dom.user.AccountType;
+import org.isisaddons.module.security.dom.user.ApplicationUserStatus;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class AccountCacheTest {
+
+    AccountCache accountCache;
+    AccountRecord account;
+
+    @Before
+    public void setUp() throws Exception {
+        accountCache = new AccountCache();
+        account = new AccountRecord(
+                "fred", "fred", "secret", AccountType.LOCAL, ApplicationUserStatus.ENABLED,
+                Collections.<String>emptySet());
+    }
+
+    public static class Get extends AccountCacheTest {
+
+        @Test
+        public void whenNotConfigured() throws Exception {
+
+            // when
+            accountCache.put("fred", account, accountCache.generation());
+
+            // then
+            assertThat(accountCache.isEnabled(), is(false));
+            assertThat(accountCache.get("fred"), is(nullValue()));
+        }
+
+        @Test
+        public void whenConfigured() throws Exception {
+
+            // given
+            accountCache.configure(10, 60000);
+
+            // when
+            accountCache.put("fred", account, accountCache.generation());
+
+            // then
+            assertThat(accountCache.get("fred"), is(sameInstance(account)));
+            assertThat(accountCache.get("bill"), is(nullValue()));
+        }
+
+        @Test
+        public void whenExpired() throws Exception {
+
+            // given
+            accountCache.configure(10, 1);
+            accountCache.put("fred", account, accountCache.generation());
+
+            // when
+            Thread.sleep(20);
+
+            // then
+            assertThat(accountCache.get("fred"), is(nullValue()));
+        }
+    }
+
+    public static class Invalidate extends AccountCacheTest {
+
+        @Test
+        public void happyCase() throws Exception {
+
+            // given
+            accountCache.configure(10, 60000);
+            accountCache.put("fred", account, accountCache.generation());
+
+            // when
+            accountCache.invalidate("fred");
+
+            // then
+            assertThat(accountCache.get("fred"), is(nullValue()));
+        }
+
+        @Test
+        public void whenInvalidatedDuringLookup() throws Exception {
+
+            // given
+            accountCache.configure(10, 60000);
+            final long generation = accountCache.generation();
+
+            // when
+            accountCache.invalidate("fred");
+            accountCache.put("fred", account, generation);
+
+            // then
+            assertThat(accountCache.get("fred"), is(nullValue()));
+        }
+    }
+
+}
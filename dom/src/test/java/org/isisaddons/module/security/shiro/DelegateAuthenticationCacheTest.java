@@ -0,0 +1,187 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import org.apache.shiro.authc.AuthenticationException;
+import org.apache.shiro.authc.AuthenticationInfo;
+import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authc.UsernamePasswordToken;
+import org.apache.shiro.realm.SimpleAccountRealm;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class DelegateAuthenticationCacheTest {
+
+    static class CountingRealm extends SimpleAccountRealm {
+        int count;
+
+        @Override
+        protected AuthenticationInfo doGetAuthenticationInfo(final AuthenticationToken token) throws AuthenticationException {
+            count++;
+            return super.doGetAuthenticationInfo(token);
+        }
+    }
+
+    DelegateAuthenticationCache cache;
+    CountingRealm realm;
+    LatencyStats stats;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new DelegateAuthenticationCache();
+        realm = new CountingRealm();
+        realm.addAccount("fred", "pass");
+        stats = new LatencyStats("delegateAuthentication");
+    }
+
+    AuthenticationInfo authenticate(final String username, final String password) {
+        return cache.authenticate(realm, new UsernamePasswordToken(username, password), stats);
+    }
+
+    public static class Authenticate extends DelegateAuthenticationCacheTest {
+
+        @Test
+        public void whenNotConfigured() throws Exception {
+
+            // when
+            authenticate("fred", "pass");
+            final AuthenticationInfo authenticationInfo = authenticate("fred", "pass");
+
+            // then
+            assertThat(authenticationInfo, is(notNullValue()));
+            assertThat(realm.count, is(2));
+            assertThat(stats.getCount(), is(2L));
+        }
+
+        @Test
+        public void whenSuccessCached() throws Exception {
+
+            // given
+            cache.configure(10, 60000, 0);
+
+            // when
+            authenticate("fred", "pass");
+            final AuthenticationInfo authenticationInfo = authenticate("fred", "pass");
+
+            // then
+            assertThat(authenticationInfo, is(notNullValue()));
+            assertThat(realm.count, is(1));
+            assertThat(stats.getCount(), is(1L));
+        }
+
+        @Test
+        public void whenDifferentPassword() throws Exception {
+
+            // given
+            cache.configure(10, 60000, 60000);
+            authenticate("fred", "pass");
+
+            // when
+            final AuthenticationInfo authenticationInfo = authenticate("fred", "wrong");
+
+            // then
+            assertThat(authenticationInfo, is(nullValue()));
+            assertThat(realm.count, is(2));
+        }
+
+        @Test
+        public void whenFailureCached() throws Exception {
+
+            // given
+            cache.configure(10, 60000, 60000);
+
+            // when
+            authenticate("fred", "wrong");
+            final AuthenticationInfo authenticationInfo = authenticate("fred", "wrong");
+
+            // then
+            assertThat(authenticationInfo, is(nullValue()));
+            assertThat(realm.count, is(1));
+        }
+
+        @Test
+        public void whenFailureNotCached() throws Exception {
+
+            // given
+            cache.configure(10, 60000, 0);
+
+            // when
+            authenticate("fred", "wrong");
+            authenticate("fred", "wrong");
+
+            // then
+            assertThat(realm.count, is(2));
+        }
+
+        @Test
+        public void whenExpired() throws Exception {
+
+            // given
+            cache.configure(10, 1, 1);
+            authenticate("fred", "pass");
+
+            // when
+            Thread.sleep(20);
+            authenticate("fred", "pass");
+
+            // then
+            assertThat(realm.count, is(2));
+        }
+    }
+
+    public static class Invalidate extends DelegateAuthenticationCacheTest {
+
+        @Test
+        public void happyCase() throws Exception {
+
+            // given
+            cache.configure(10, 60000, 60000);
+            authenticate("fred", "pass");
+            authenticate("fred", "wrong");
+
+            // when
+            cache.invalidate("fred");
+            authenticate("fred", "pass");
+            authenticate("fred", "wrong");
+
+            // then
+            assertThat(realm.count, is(4));
+        }
+
+        @Test
+        public void otherUsersUnaffected() throws Exception {
+
+            // given
+            cache.configure(10, 60000, 60000);
+            authenticate("fred", "pass");
+            authenticate("freddy", "pass");
+
+            // when
+            cache.invalidate("freddy");
+            authenticate("fred", "pass");
+
+            // then
+            assertThat(realm.count, is(2));
+        }
+    }
+
+}
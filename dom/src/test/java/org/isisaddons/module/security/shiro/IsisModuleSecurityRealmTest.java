@@ -0,0 +1,1150 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.inject.Inject;
+import com.google.common.base.Supplier;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import org.apache.shiro.authc.AuthenticationException;
+import org.apache.shiro.authc.AuthenticationInfo;
+import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authc.CredentialsException;
+import org.apache.shiro.authc.DisabledAccountException;
+import org.apache.shiro.authc.UsernamePasswordToken;
+import org.apache.shiro.authz.AuthorizationInfo;
+import org.apache.shiro.authz.Permission;
+import org.apache.shiro.authz.UnauthorizedException;
+import org.apache.shiro.authz.permission.WildcardPermission;
+import org.apache.shiro.cache.MemoryConstrainedCacheManager;
+import org.apache.shiro.realm.AuthorizingRealm;
+import org.apache.shiro.realm.SimpleAccountRealm;
+import org.apache.shiro.subject.PrincipalCollection;
+import org.apache.shiro.subject.SimplePrincipalCollection;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.isisaddons.module.security.dom.feature.ApplicationFeatureId;
+import org.isisaddons.module.security.dom.password.PasswordEncryptionService;
+import org.isisaddons.module.security.dom.permission.ApplicationPermissionMode;
+import org.isisaddons.module.security.dom.permission.ApplicationPermissionRule;
+import org.isisaddons.module.security.dom.permission.ApplicationPermissionValue;
+import org.isisaddons.module.security.dom.permission.ApplicationPermissionValueSet;
+import org.isisaddons.module.security.dom.permission.ApplicationPermissionValueSetCache;
+import org.isisaddons.module.security.dom.permission.ApplicationPermissions;
+import org.isisaddons.module.security.dom.role.ApplicationRole;
+import org.isisaddons.module.security.dom.user.AccountType;
+import org.isisaddons.module.security.dom.user.ApplicationUser;
+import org.isisaddons.module.security.dom.user.ApplicationUserActivity;
+import org.isisaddons.module.security.dom.user.ApplicationUserStatus;
+import org.isisaddons.module.security.dom.user.ApplicationUsers;
+import org.apache.isis.core.runtime.system.transaction.TransactionalClosureWithReturn;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class IsisModuleSecurityRealmTest {
+
+    /**
+     * Runs each closure directly (rather than within an Isis session), injecting the fake services registered with
+     * it.
+     */
+    static class IsisModuleSecurityRealmForTesting extends IsisModuleSecurityRealm {
+
+        final Map<Class<?>, Object> services = new ConcurrentHashMap<Class<?>, Object>();
+        final AtomicInteger sessionCount = new AtomicInteger();
+        final AtomicInteger authorizationInfoCount = new AtomicInteger();
+
+        <T> void addService(final Class<T> type, final T service) {
+            services.put(type, service);
+        }
+
+        @Override
+        <V> V execute(final TransactionalClosureWithReturn<V> closure) {
+            sessionCount.incrementAndGet();
+            for (final Field field : closure.getClass().getDeclaredFields()) {
+                if(!field.isAnnotationPresent(Inject.class)) {
+                    continue;
+                }
+                field.setAccessible(true);
+                try {
+                    field.set(closure, services.get(field.getType()));
+                } catch (final IllegalAccessException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+            return closure.execute();
+        }
+
+        @Override
+        protected AuthorizationInfo doGetAuthorizationInfo(final PrincipalCollection principals) {
+            authorizationInfoCount.incrementAndGet();
+            return super.doGetAuthorizationInfo(principals);
+        }
+    }
+
+    static class CountingPasswordEncryptionService implements PasswordEncryptionService {
+
+        final AtomicInteger matchesCount = new AtomicInteger();
+
+        @Override
+        public String encrypt(final String password) {
+            return "hashed:" + password;
+        }
+
+        @Override
+        public boolean matches(final String candidate, final String encrypted) {
+            matchesCount.incrementAndGet();
+            return encrypt(candidate).equals(encrypted);
+        }
+    }
+
+    static class ApplicationUsersForTesting extends ApplicationUsers {
+
+        final Map<String, ApplicationUser> usersByUsername = new ConcurrentHashMap<String, ApplicationUser>();
+        final AtomicInteger lookupCount = new AtomicInteger();
+        final AtomicInteger createCount = new AtomicInteger();
+        /**
+         * If set, creating a user blocks until released.
+         */
+        volatile CountDownLatch createRelease;
+        /**
+         * If set, thrown (once) when creating a user; if {@link #createdElsewhere}, then the user is created anyway.
+         */
+        volatile RuntimeException createFailure;
+        volatile boolean createdElsewhere;
+
+        final Map<String, ApplicationUserActivity> activitiesByUsername = new ConcurrentHashMap<String, ApplicationUserActivity>();
+        /**
+         * If set, thrown (once) when creating an activity.
+         */
+        volatile RuntimeException activityFailure;
+
+        @Override
+        public List<ApplicationUserActivity> findActivitiesByUsernames(final Collection<String> usernames) {
+            final List<ApplicationUserActivity> activities = Lists.newArrayList();
+            for (final String username : usernames) {
+                final ApplicationUserActivity activity = activitiesByUsername.get(username);
+                if(activity != null) {
+                    activities.add(activity);
+                }
+            }
+            return activities;
+        }
+
+        @Override
+        public ApplicationUserActivity newActivity(final String username) {
+            final RuntimeException activityFailure = this.activityFailure;
+            if(activityFailure != null) {
+                this.activityFailure = null;
+                throw activityFailure;
+            }
+            final ApplicationUserActivity activity = new ApplicationUserActivity();
+            activity.setUsername(username);
+            activitiesByUsername.put(username, activity);
+            return activity;
+        }
+
+        @Override
+        public ApplicationUser findUserByUsername(final String username) {
+            lookupCount.incrementAndGet();
+            return usersByUsername.get(username);
+        }
+
+        final Map<String, ApplicationRole> rolesByName = new ConcurrentHashMap<String, ApplicationRole>();
+
+        @Override
+        public ApplicationRole findProvisionedDelegateUserRole(final String initialRoleName) {
+            return initialRoleName != null ? rolesByName.get(initialRoleName) : null;
+        }
+
+        @Override
+        public ApplicationUser findOrCreateUserByUsername(final String username, final String initialRoleName) {
+            final ApplicationUser applicationUser = findUserByUsername(username);
+            if(applicationUser != null) {
+                return applicationUser;
+            }
+            createCount.incrementAndGet();
+            final CountDownLatch createRelease = this.createRelease;
+            if(createRelease != null) {
+                try {
+                    createRelease.await(10, TimeUnit.SECONDS);
+                } catch (final InterruptedException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            }
+            final ApplicationUser newUser = newUser(username, AccountType.DELEGATED, null);
+            newUser.setStatus(ApplicationUserStatus.DISABLED);
+            final ApplicationRole initialRole = findProvisionedDelegateUserRole(initialRoleName);
+            if(initialRole != null) {
+                newUser.getRoles().add(initialRole);
+            }
+            final RuntimeException createFailure = this.createFailure;
+            if(createFailure != null) {
+                this.createFailure = null;
+                if(createdElsewhere) {
+                    usersByUsername.put(username, newUser);
+                }
+                throw createFailure;
+            }
+            usersByUsername.put(username, newUser);
+            return newUser;
+        }
+    }
+
+    /**
+     * A delegate realm that can be made to block (until released, or interrupted) or to fail.
+     */
+    static class DelegateRealmForTesting extends SimpleAccountRealm {
+
+        final AtomicInteger count = new AtomicInteger();
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        volatile CountDownLatch release;
+        volatile RuntimeException failure;
+
+        @Override
+        protected AuthenticationInfo doGetAuthenticationInfo(final AuthenticationToken token) throws AuthenticationException {
+            count.incrementAndGet();
+            final CountDownLatch release = this.release;
+            if(release != null) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (final InterruptedException ex) {
+                    interrupted.countDown();
+                    throw new AuthenticationException(ex);
+                }
+            }
+            if(failure != null) {
+                throw failure;
+            }
+            return super.doGetAuthenticationInfo(token);
+        }
+    }
+
+    static class ApplicationPermissionsForTesting extends ApplicationPermissions {
+
+        @Override
+        public ApplicationPermissionValueSet permissionSetForRoleNames(final Collection<String> roleNames) {
+            return ApplicationPermissionValueSetCache.get(roleNames, null, new Supplier<ApplicationPermissionValueSet>() {
+                @Override
+                public ApplicationPermissionValueSet get() {
+                    return new ApplicationPermissionValueSet(Collections.<ApplicationPermissionValue>emptyList());
+                }
+            });
+        }
+    }
+
+    /**
+     * Authorizes with Shiro's generic processing (without the member permission fast path), for comparison.
+     */
+    static class ReferenceRealmForTesting extends AuthorizingRealm {
+
+        ReferenceRealmForTesting() {
+            setPermissionResolver(new PermissionResolverForIsisShiroAuthorizor());
+        }
+
+        @Override
+        protected AuthorizationInfo doGetAuthorizationInfo(final PrincipalCollection principals) {
+            return principals.oneByType(PrincipalForApplicationUser.class);
+        }
+
+        @Override
+        protected AuthenticationInfo doGetAuthenticationInfo(final AuthenticationToken token) {
+            return null;
+        }
+    }
+
+    static ApplicationUser newUser(
+            final String username,
+            final AccountType accountType,
+            final String encryptedPassword) {
+        final ApplicationUser user = new ApplicationUser() {
+            @Override
+            public ApplicationPermissionValueSet getPermissionSet() {
+                return new ApplicationPermissionsForTesting().permissionSetForRoleNames(
+                        Lists.newArrayList(Iterables.transform(getRoles(), ApplicationRole.Functions.GET_NAME)));
+            }
+        };
+        user.setUsername(username);
+        user.setAccountType(accountType);
+        user.setStatus(ApplicationUserStatus.ENABLED);
+        user.setEncryptedPassword(encryptedPassword);
+        return user;
+    }
+
+    IsisModuleSecurityRealmForTesting realm;
+    ApplicationUsersForTesting applicationUsers;
+    CountingPasswordEncryptionService passwordEncryptionService;
+
+    @Before
+    public void setUp() throws Exception {
+        applicationUsers = new ApplicationUsersForTesting();
+        passwordEncryptionService = new CountingPasswordEncryptionService();
+        applicationUsers.usersByUsername.put("fred", newUser("fred", AccountType.LOCAL, passwordEncryptionService.encrypt("pass")));
+
+        realm = new IsisModuleSecurityRealmForTesting();
+        realm.addService(ApplicationUsers.class, applicationUsers);
+        realm.addService(PasswordEncryptionService.class, passwordEncryptionService);
+        realm.addService(ApplicationPermissions.class, new ApplicationPermissionsForTesting());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        // the caches are process-wide
+        realm.setAccountCacheTimeToLiveSeconds(0);
+        realm.setVerifiedCredentialsCacheTimeToLiveSeconds(0);
+        realm.setUnknownUsernameCacheTimeToLiveSeconds(0);
+        realm.setDelegateAuthenticationCacheTimeToLiveSeconds(0);
+        realm.setDelegateAuthenticationCacheFailureTimeToLiveSeconds(0);
+        realm.setPermissionSetCacheTimeToLiveSeconds(0);
+        AuthenticationCaches.invalidateAll();
+        realm.destroy();
+    }
+
+    AuthenticationInfo authenticate(final String username, final String password) {
+        return realm.doGetAuthenticationInfo(new UsernamePasswordToken(username, password));
+    }
+
+    static void awaitUntil(final Callable<Boolean> condition) throws Exception {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while(!condition.call()) {
+            if(System.nanoTime() > deadline) {
+                fail("timed out");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    static RuntimeException duplicateKey() {
+        return new RuntimeException(
+                new SQLIntegrityConstraintViolationException("duplicate key", "23505"));
+    }
+
+    public static class IsConstraintViolation extends IsisModuleSecurityRealmTest {
+
+        @Test
+        public void whenIntegrityConstraintViolation() throws Exception {
+            assertThat(IsisModuleSecurityRealm.isConstraintViolation(duplicateKey()), is(true));
+        }
+
+        @Test
+        public void whenSqlStateIsIntegrityConstraintViolation() throws Exception {
+            final SQLException ex = new SQLException("batch failed");
+            ex.setNextException(new SQLException("unique constraint violated", "23000"));
+            assertThat(IsisModuleSecurityRealm.isConstraintViolation(new IllegalStateException(ex)), is(true));
+        }
+
+        @Test
+        public void whenOtherSqlState() throws Exception {
+            final SQLException ex = new SQLException("connection refused", "08001");
+            assertThat(IsisModuleSecurityRealm.isConstraintViolation(new IllegalStateException(ex)), is(false));
+        }
+
+        @Test
+        public void whenNotSql() throws Exception {
+            assertThat(IsisModuleSecurityRealm.isConstraintViolation(new IllegalStateException("boom")), is(false));
+        }
+    }
+
+    public static class Provisioning extends IsisModuleSecurityRealmTest {
+
+        DelegateRealmForTesting delegateRealm;
+
+        @Before
+        public void setUpDelegate() throws Exception {
+            delegateRealm = new DelegateRealmForTesting();
+            delegateRealm.addAccount("carol", "pass");
+            realm.setDelegateAuthenticationRealm(delegateRealm);
+        }
+
+        void authenticateFirstLogin() {
+            try {
+                authenticate("carol", "pass");
+                fail();
+            } catch(final DisabledAccountException ex) {
+                // expected; delegated users are created disabled
+            }
+        }
+
+        @Test
+        public void whenConcurrentFirstLogins() throws Exception {
+
+            // given
+            applicationUsers.createRelease = new CountDownLatch(1);
+            final Runnable firstLogin = new Runnable() {
+                @Override
+                public void run() {
+                    authenticateFirstLogin();
+                }
+            };
+            final Thread thread1 = new Thread(firstLogin);
+            final Thread thread2 = new Thread(firstLogin);
+
+            // when
+            thread1.start();
+            thread2.start();
+            awaitUntil(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return realm.getCoalescedLookupCount() == 1;
+                }
+            });
+            applicationUsers.createRelease.countDown();
+            thread1.join(5000);
+            thread2.join(5000);
+
+            // then
+            assertThat(applicationUsers.createCount.get(), is(1));
+            assertThat(applicationUsers.usersByUsername.containsKey("carol"), is(true));
+        }
+
+        @Test
+        public void whenCreatedConcurrentlyElsewhere() throws Exception {
+
+            // given
+            applicationUsers.createFailure = duplicateKey();
+            applicationUsers.createdElsewhere = true;
+
+            // when
+            authenticateFirstLogin();
+
+            // then retried, finding the user created elsewhere
+            assertThat(realm.sessionCount.get(), is(2));
+            assertThat(applicationUsers.lookupCount.get(), is(2));
+            assertThat(applicationUsers.createCount.get(), is(1));
+        }
+
+        @Test
+        public void whenCreateFailsOtherwise() throws Exception {
+
+            // given
+            final IllegalStateException failure = new IllegalStateException("database unavailable");
+            applicationUsers.createFailure = failure;
+
+            // when
+            try {
+                authenticate("carol", "pass");
+                fail();
+            } catch(final IllegalStateException ex) {
+                // then not retried
+                assertThat(ex, is(failure));
+                assertThat(realm.sessionCount.get(), is(1));
+            }
+        }
+
+        @Test
+        public void whenInBackground() throws Exception {
+
+            // given
+            realm.setProvisionDelegateUsersInBackground(true);
+
+            // when
+            authenticateFirstLogin();
+
+            // then
+            awaitUntil(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return applicationUsers.usersByUsername.containsKey("carol");
+                }
+            });
+            assertThat(realm.getProvisionFailureCount(), is(0L));
+        }
+
+        @Test
+        public void whenInBackgroundAndCreatedConcurrentlyElsewhere() throws Exception {
+
+            // given
+            realm.setProvisionDelegateUsersInBackground(true);
+            applicationUsers.createFailure = duplicateKey();
+            applicationUsers.createdElsewhere = true;
+
+            // when
+            authenticateFirstLogin();
+
+            // then
+            awaitUntil(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return applicationUsers.createCount.get() == 1 && realm.getPendingProvisionCount() == 0;
+                }
+            });
+            assertThat(realm.getProvisionFailureCount(), is(0L));
+        }
+
+        @Test
+        public void whenInBackgroundAndCreateFailsOtherwise() throws Exception {
+
+            // given
+            realm.setProvisionDelegateUsersInBackground(true);
+            applicationUsers.createFailure = new IllegalStateException("database unavailable");
+
+            // when
+            authenticateFirstLogin();
+
+            // then
+            awaitUntil(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return applicationUsers.createCount.get() == 1 && realm.getPendingProvisionCount() == 0;
+                }
+            });
+            assertThat(realm.getProvisionFailureCount(), is(1L));
+            assertThat(applicationUsers.usersByUsername.containsKey("carol"), is(false));
+        }
+
+        @Test
+        public void whenNoRoleConfigured() throws Exception {
+
+            // given
+            addRole("isis-module-security-regular-user");
+
+            // when
+            authenticateFirstLogin();
+
+            // then
+            assertThat(applicationUsers.usersByUsername.get("carol").getRoles().isEmpty(), is(true));
+        }
+
+        @Test
+        public void whenRoleConfigured() throws Exception {
+
+            // given
+            final ApplicationRole role = addRole("isis-module-security-regular-user");
+            realm.setProvisionedDelegateUserRoleName("isis-module-security-regular-user");
+
+            // when
+            authenticateFirstLogin();
+
+            // then
+            assertThat(applicationUsers.usersByUsername.get("carol").getRoles().contains(role), is(true));
+        }
+
+        @Test
+        public void whenRoleConfiguredButMissing() throws Exception {
+
+            // given
+            realm.setProvisionedDelegateUserRoleName("isis-module-security-regular-user");
+
+            // when
+            authenticateFirstLogin();
+
+            // then
+            assertThat(applicationUsers.usersByUsername.get("carol").getRoles().isEmpty(), is(true));
+        }
+
+        @Test
+        public void whenRoleConfiguredInBackground() throws Exception {
+
+            // given
+            final ApplicationRole role = addRole("isis-module-security-regular-user");
+            realm.setProvisionedDelegateUserRoleName("isis-module-security-regular-user");
+            realm.setProvisionDelegateUsersInBackground(true);
+
+            // when
+            authenticateFirstLogin();
+
+            // then
+            awaitUntil(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return applicationUsers.usersByUsername.containsKey("carol");
+                }
+            });
+            assertThat(applicationUsers.usersByUsername.get("carol").getRoles().contains(role), is(true));
+        }
+
+        private ApplicationRole addRole(final String name) {
+            final ApplicationRole role = new ApplicationRole();
+            role.setName(name);
+            applicationUsers.rolesByName.put(name, role);
+            return role;
+        }
+    }
+
+    public static class ParallelDelegateAuthentication extends IsisModuleSecurityRealmTest {
+
+        DelegateRealmForTesting delegateRealm;
+
+        @Before
+        public void setUpDelegate() throws Exception {
+            delegateRealm = new DelegateRealmForTesting();
+            delegateRealm.addAccount("bob", "pass");
+            applicationUsers.usersByUsername.put("bob", newUser("bob", AccountType.DELEGATED, null));
+
+            realm.setDelegateAuthenticationRealm(delegateRealm);
+            realm.setParallelDelegateAuthentication(true);
+        }
+
+        @Test
+        public void whenDelegateAuthenticates() throws Exception {
+
+            // when
+            final AuthenticationInfo authenticationInfo = authenticate("bob", "pass");
+
+            // then the outcome of the parallel leg is used, rather than asking the delegate again
+            assertThat(authenticationInfo, is(notNullValue()));
+            assertThat(delegateRealm.count.get(), is(1));
+            assertThat(applicationUsers.lookupCount.get(), is(1));
+        }
+
+        @Test
+        public void whenDelegateRejectsButLookupSucceeds() throws Exception {
+
+            // when
+            try {
+                authenticate("bob", "wrong");
+                fail();
+            } catch(final CredentialsException ex) {
+                // then
+                assertThat(delegateRealm.count.get(), is(1));
+                assertThat(applicationUsers.lookupCount.get(), is(1));
+            }
+        }
+
+        @Test
+        public void whenDelegateFailsForLocalUser() throws Exception {
+
+            // given
+            delegateRealm.failure = new IllegalStateException("directory unavailable");
+
+            // when
+            final AuthenticationInfo authenticationInfo = authenticate("fred", "pass");
+
+            // then the delegate's outcome is not needed
+            assertThat(authenticationInfo, is(notNullValue()));
+            assertThat(passwordEncryptionService.matchesCount.get(), is(1));
+        }
+
+        @Test
+        public void whenDelegateSlowForLocalUser() throws Exception {
+
+            // given
+            delegateRealm.release = new CountDownLatch(1);
+            realm.setDelegateAuthenticationTimeoutMillis(60000);
+
+            try {
+                // when
+                final long start = System.nanoTime();
+                final AuthenticationInfo authenticationInfo = authenticate("fred", "pass");
+
+                // then not held up by the delegate
+                assertThat(authenticationInfo, is(notNullValue()));
+                assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000, is(true));
+            } finally {
+                delegateRealm.release.countDown();
+            }
+        }
+
+        @Test
+        public void whenDelegateTimesOut() throws Exception {
+
+            // given
+            delegateRealm.release = new CountDownLatch(1);
+            realm.setDelegateAuthenticationTimeoutMillis(100);
+
+            try {
+                // when
+                try {
+                    authenticate("bob", "pass");
+                    fail();
+                } catch(final AuthenticationException ex) {
+                    // expected
+                }
+
+                // then the delegate leg is cancelled (interrupting the delegate)
+                assertThat(delegateRealm.interrupted.await(5, TimeUnit.SECONDS), is(true));
+            } finally {
+                delegateRealm.release.countDown();
+            }
+        }
+    }
+
+    public static class AccountCaching extends IsisModuleSecurityRealmTest {
+
+        @Test
+        public void whenHit() throws Exception {
+
+            // given
+            realm.setAccountCacheTimeToLiveSeconds(60);
+            authenticate("fred", "pass");
+
+            // when
+            authenticate("fred", "pass");
+
+            // then neither the account nor its permissions are looked up again
+            assertThat(applicationUsers.lookupCount.get(), is(1));
+            assertThat(realm.sessionCount.get(), is(1));
+        }
+
+        @Test
+        public void whenRoleRenamed() throws Exception {
+
+            // given
+            final ApplicationRole role = new ApplicationRole();
+            role.setName("Role1");
+            final ApplicationUser fred = applicationUsers.usersByUsername.get("fred");
+            fred.getRoles().add(role);
+            role.getUsers().add(fred);
+
+            realm.setAccountCacheTimeToLiveSeconds(60);
+            assertThat(rolesOf(authenticate("fred", "pass")), is((Collection<String>) Collections.singleton("Role1")));
+
+            // when
+            role.updateName("Role2");
+
+            // then the account is looked up again
+            assertThat(rolesOf(authenticate("fred", "pass")), is((Collection<String>) Collections.singleton("Role2")));
+            assertThat(applicationUsers.lookupCount.get(), is(2));
+        }
+
+        private static Collection<String> rolesOf(final AuthenticationInfo authenticationInfo) {
+            return ((AuthInfoForApplicationUser) authenticationInfo).getRoles();
+        }
+    }
+
+    public static class SessionTokenAuthentication extends IsisModuleSecurityRealmTest {
+
+        @Test
+        public void whenKeyStoreUnavailable() throws Exception {
+
+            // given a well-formed token, but a keystore that can no longer be read
+            final File keyStoreFile = SessionTokensTest.newKeyStoreFile("key1");
+            final String token = new SessionTokens(
+                    new SessionTokenKeys(keyStoreFile.getPath(), SessionTokensTest.PASSWORD, "key1"), 60000)
+                    .issue("fred", 0L);
+            realm.setSessionTokenKeyStorePath(keyStoreFile.getPath());
+            realm.setSessionTokenKeyStorePassword(SessionTokensTest.PASSWORD);
+            realm.setSessionTokenActiveKeyAlias("key1");
+            keyStoreFile.delete();
+
+            // when
+            try {
+                authenticate("fred", token);
+                fail();
+            } catch(final CredentialsException ex) {
+                // then treated as a (wrong) password, rather than failing
+            }
+        }
+    }
+
+    public static class SharedCaches extends IsisModuleSecurityRealmTest {
+
+        @Test
+        public void whenConfiguredByAnotherRealm() throws Exception {
+
+            // given
+            realm.setAccountCacheTimeToLiveSeconds(60);
+            final IsisModuleSecurityRealmForTesting otherRealm = new IsisModuleSecurityRealmForTesting();
+
+            // when
+            try {
+                otherRealm.setAccountCacheTimeToLiveSeconds(300);
+                fail();
+            } catch(final IllegalStateException ex) {
+                // then
+            }
+            otherRealm.destroy();
+
+            // and the first realm's configuration still applies
+            authenticate("fred", "pass");
+            authenticate("fred", "pass");
+            assertThat(applicationUsers.lookupCount.get(), is(1));
+        }
+
+        @Test
+        public void whenFirstRealmDestroyed() throws Exception {
+
+            // given
+            realm.setAccountCacheTimeToLiveSeconds(60);
+            authenticate("fred", "pass");
+            realm.destroy();
+
+            // when
+            realm = new IsisModuleSecurityRealmForTesting();
+            realm.addService(ApplicationUsers.class, applicationUsers);
+            realm.addService(PasswordEncryptionService.class, passwordEncryptionService);
+            realm.addService(ApplicationPermissions.class, new ApplicationPermissionsForTesting());
+            realm.setAccountCacheTimeToLiveSeconds(60);
+            authenticate("fred", "pass");
+
+            // then nothing was shared with the first realm
+            assertThat(applicationUsers.lookupCount.get(), is(2));
+        }
+    }
+
+    public static class LoginThrottling extends IsisModuleSecurityRealmTest {
+
+        @Before
+        public void setUpThrottle() throws Exception {
+            // "Aa" and "BB" have the same hash code, so share a slot of the throttle
+            assertThat("Aa".hashCode(), is("BB".hashCode()));
+            for (final String username : new String[] { "Aa", "BB" }) {
+                applicationUsers.usersByUsername.put(username, newUser(username, AccountType.LOCAL, passwordEncryptionService.encrypt("pass")));
+            }
+            realm.setLoginThrottleMaxFailuresPerUsername(3);
+            realm.setLoginThrottleLocksUser(true);
+        }
+
+        @Test
+        public void whenOwnFailuresReachMax() throws Exception {
+
+            // when
+            failToAuthenticate("fred", 3);
+
+            // then
+            awaitUntil(isLocked("fred"));
+            assertThat(isLocked("Aa").call(), is(false));
+        }
+
+        @Test
+        public void whenCollidingUsernameFailed() throws Exception {
+
+            // given
+            failToAuthenticate("Aa", 2);
+
+            // when a single failure brings the shared count to the max
+            failToAuthenticate("BB", 1);
+
+            // then neither is locked (checked once a later lock, queued behind any others, has been made)
+            failToAuthenticate("fred", 3);
+            awaitUntil(isLocked("fred"));
+            assertThat(isLocked("Aa").call(), is(false));
+            assertThat(isLocked("BB").call(), is(false));
+        }
+
+        private void failToAuthenticate(final String username, final int times) {
+            for (int i = 0; i < times; i++) {
+                try {
+                    authenticate(username, "wrong");
+                    fail();
+                } catch(final AuthenticationException ex) {
+                    // expected
+                }
+            }
+        }
+
+        private Callable<Boolean> isLocked(final String username) {
+            return new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return applicationUsers.usersByUsername.get(username).getStatus() == ApplicationUserStatus.DISABLED;
+                }
+            };
+        }
+    }
+
+    public static class UserActivity extends IsisModuleSecurityRealmTest {
+
+        @Test
+        public void whenFirstWritten() throws Exception {
+
+            // given
+            realm.setTrackUserActivity(true);
+            final long before = System.currentTimeMillis();
+            authenticate("fred", "pass");
+
+            // when
+            realm.destroy();
+
+            // then
+            final ApplicationUserActivity activity = applicationUsers.activitiesByUsername.get("fred");
+            assertThat(activity.getLastLoginAt().getTime() >= before, is(true));
+            assertThat(activity.getLastActivityAt().getTime() >= before, is(true));
+        }
+
+        @Test
+        public void whenPreviouslyWritten() throws Exception {
+
+            // given
+            final ApplicationUserActivity activity = new ApplicationUserActivity();
+            activity.setUsername("fred");
+            activity.setLastLoginAt(new Timestamp(1000));
+            activity.setLastActivityAt(new Timestamp(2000));
+            applicationUsers.activitiesByUsername.put("fred", activity);
+
+            realm.setTrackUserActivity(true);
+            authenticate("fred", "pass");
+
+            // when
+            realm.destroy();
+
+            // then updated in place
+            assertThat(applicationUsers.activitiesByUsername.get("fred"), is(activity));
+            assertThat(activity.getLastLoginAt().getTime() > 1000, is(true));
+            assertThat(activity.getLastActivityAt().getTime() > 2000, is(true));
+        }
+
+        @Test
+        public void whenWriteFails() throws Exception {
+
+            // given
+            realm.setUserActivityFlushIntervalSeconds(1);
+            realm.setTrackUserActivity(true);
+            applicationUsers.activityFailure = duplicateKey();
+
+            // when
+            authenticate("fred", "pass");
+
+            // then written at the next flush
+            awaitUntil(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return applicationUsers.activitiesByUsername.containsKey("fred");
+                }
+            });
+            assertThat(applicationUsers.activityFailure, is(nullValue()));
+        }
+    }
+
+    public static class VerifiedCredentials extends IsisModuleSecurityRealmTest {
+
+        @Test
+        public void whenNotConfigured() throws Exception {
+
+            // when
+            authenticate("fred", "pass");
+            authenticate("fred", "pass");
+
+            // then
+            assertThat(passwordEncryptionService.matchesCount.get(), is(2));
+        }
+
+        @Test
+        public void whenConfiguredWithoutAccountCache() throws Exception {
+
+            // given
+            realm.setVerifiedCredentialsCacheTimeToLiveSeconds(60);
+
+            // when
+            authenticate("fred", "pass");
+            final AuthenticationInfo authenticationInfo = authenticate("fred", "pass");
+
+            // then the account is looked up each time, but the password is hashed only once
+            assertThat(authenticationInfo, is(notNullValue()));
+            assertThat(applicationUsers.lookupCount.get(), is(2));
+            assertThat(passwordEncryptionService.matchesCount.get(), is(1));
+        }
+
+        @Test
+        public void whenConfiguredWithAccountCache() throws Exception {
+
+            // given
+            realm.setVerifiedCredentialsCacheTimeToLiveSeconds(60);
+            realm.setAccountCacheTimeToLiveSeconds(60);
+
+            // when
+            authenticate("fred", "pass");
+            authenticate("fred", "pass");
+
+            // then
+            assertThat(applicationUsers.lookupCount.get(), is(1));
+            assertThat(passwordEncryptionService.matchesCount.get(), is(1));
+        }
+
+        @Test
+        public void whenDifferentPassword() throws Exception {
+
+            // given
+            realm.setVerifiedCredentialsCacheTimeToLiveSeconds(60);
+            authenticate("fred", "pass");
+
+            // when
+            try {
+                authenticate("fred", "wrong");
+                fail();
+            } catch(final CredentialsException ex) {
+                // expected
+            }
+
+            // then
+            assertThat(passwordEncryptionService.matchesCount.get(), is(2));
+        }
+    }
+
+    public static class Permissions extends IsisModuleSecurityRealmTest {
+
+        private static final String[] MEMBER_PERMISSIONS = {
+                "com.foo:Bar:bip:r", "com.foo:Bar:bip:w",
+                "com.foo:Bar:secret:r", "com.foo:Bar:secret:w",
+                "com.other:Baz:bip:r", "com.other:Baz:bip:w"
+        };
+
+        ReferenceRealmForTesting referenceRealm;
+        PrincipalCollection principals;
+
+        @Before
+        public void setUpPrincipals() throws Exception {
+            referenceRealm = new ReferenceRealmForTesting();
+            final ApplicationPermissionValueSet permissionSet = new ApplicationPermissionValueSet(Arrays.asList(
+                    new ApplicationPermissionValue(
+                            ApplicationFeatureId.newClass("com.foo.Bar"), ApplicationPermissionRule.ALLOW, ApplicationPermissionMode.CHANGING),
+                    new ApplicationPermissionValue(
+                            ApplicationFeatureId.newMember("com.foo.Bar", "secret"), ApplicationPermissionRule.VETO, ApplicationPermissionMode.VIEWING)));
+            final PrincipalForApplicationUser principal = new PrincipalForApplicationUser(
+                    AccountRecord.from(newUser("fred", AccountType.LOCAL, null)), permissionSet);
+            principals = new SimplePrincipalCollection(principal, realm.getName());
+        }
+
+        @Test
+        public void memberPermissionStrings() throws Exception {
+
+            // when, then
+            for (final String permission : MEMBER_PERMISSIONS) {
+                assertSameAsShiro(principals, permission);
+            }
+            assertSameAsShiro(principals, MEMBER_PERMISSIONS);
+
+            // and some are granted, others not
+            assertThat(realm.isPermitted(principals, "com.foo:Bar:bip:w"), is(true));
+            assertThat(realm.isPermitted(principals, "com.other:Baz:bip:r"), is(false));
+        }
+
+        @Test
+        public void nonMemberPermissionStrings() throws Exception {
+
+            // when, then neither can resolve them
+            for (final String permission : new String[] { "*", "com.foo:*", "com.foo:Bar:bip", "com.foo:Bar:bip:x" }) {
+                for (final AuthorizingRealm authorizingRealm : Arrays.asList(realm, referenceRealm)) {
+                    try {
+                        authorizingRealm.isPermitted(principals, permission);
+                        fail();
+                    } catch(final IllegalArgumentException ex) {
+                        // expected
+                    }
+                }
+            }
+        }
+
+        @Test
+        public void wildcardPermissions() throws Exception {
+
+            // given
+            final List<Permission> permissions = Arrays.<Permission>asList(
+                    new WildcardPermission("*"),
+                    new WildcardPermission("com.foo:Bar:bip:w"),
+                    new PermissionForMember("com.foo:Bar:bip:w"));
+
+            // when, then
+            for (final Permission permission : permissions) {
+                assertSameAsShiro(principals, permission);
+            }
+            assertSameAsShiro(principals, permissions);
+        }
+
+        @Test
+        public void otherPrincipalTypes() throws Exception {
+
+            // given
+            final PrincipalCollection otherPrincipals = new SimplePrincipalCollection("fred", "otherRealm");
+
+            // when, then
+            for (final String permission : MEMBER_PERMISSIONS) {
+                assertSameAsShiro(otherPrincipals, permission);
+            }
+            assertSameAsShiro(otherPrincipals, MEMBER_PERMISSIONS);
+            assertThat(realm.isPermitted(otherPrincipals, "com.foo:Bar:bip:w"), is(false));
+        }
+
+        @Test
+        public void whenAuthorizationCachingEnabled() throws Exception {
+
+            // given
+            realm.setCacheManager(new MemoryConstrainedCacheManager());
+            realm.setAuthorizationCachingEnabled(true);
+
+            // when
+            realm.isPermitted(principals, "com.foo:Bar:bip:w");
+            realm.isPermitted(principals, MEMBER_PERMISSIONS);
+            realm.isPermittedAll(principals, MEMBER_PERMISSIONS);
+            realm.checkPermission(principals, "com.foo:Bar:bip:w");
+
+            // then
+            assertThat(realm.authorizationInfoCount.get(), is(1));
+        }
+
+        @Test
+        public void whenAuthorizationCachingNotEnabled() throws Exception {
+
+            // when
+            realm.isPermitted(principals, "com.foo:Bar:bip:w");
+            realm.isPermitted(principals, MEMBER_PERMISSIONS);
+            realm.isPermittedAll(principals, MEMBER_PERMISSIONS);
+            realm.checkPermission(principals, "com.foo:Bar:bip:w");
+
+            // then
+            assertThat(realm.authorizationInfoCount.get(), is(4));
+        }
+
+        private void assertSameAsShiro(final PrincipalCollection principals, final String permission) {
+            assertThat(realm.isPermitted(principals, permission), is(referenceRealm.isPermitted(principals, permission)));
+            assertThat(isChecked(realm, principals, permission), is(isChecked(referenceRealm, principals, permission)));
+        }
+
+        private void assertSameAsShiro(final PrincipalCollection principals, final String... permissions) {
+            assertThat(realm.isPermitted(principals, permissions), is(referenceRealm.isPermitted(principals, permissions)));
+            assertThat(realm.isPermittedAll(principals, permissions), is(referenceRealm.isPermittedAll(principals, permissions)));
+        }
+
+        private void assertSameAsShiro(final PrincipalCollection principals, final Permission permission) {
+            assertThat(realm.isPermitted(principals, permission), is(referenceRealm.isPermitted(principals, permission)));
+            assertThat(isChecked(realm, principals, permission), is(isChecked(referenceRealm, principals, permission)));
+        }
+
+        private void assertSameAsShiro(final PrincipalCollection principals, final List<Permission> permissions) {
+            assertThat(realm.isPermitted(principals, permissions), is(referenceRealm.isPermitted(principals, permissions)));
+            assertThat(realm.isPermittedAll(principals, permissions), is(referenceRealm.isPermittedAll(principals, permissions)));
+        }
+
+        private static boolean isChecked(final AuthorizingRealm realm, final PrincipalCollection principals, final String permission) {
+            try {
+                realm.checkPermission(principals, permission);
+                return true;
+            } catch(final UnauthorizedException ex) {
+                return false;
+            }
+        }
+
+        private static boolean isChecked(final AuthorizingRealm realm, final PrincipalCollection principals, final Permission permission) {
+            try {
+                realm.checkPermission(principals, permission);
+                return true;
+            } catch(final UnauthorizedException ex) {
+                return false;
+            }
+        }
+    }
+
+}
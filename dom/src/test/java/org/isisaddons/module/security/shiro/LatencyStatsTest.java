@@ -0,0 +1,78 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+package org.isisaddons.module.security.shiro;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LatencyStatsTest {
+
+    LatencyStats latencyStats;
+
+    @Before
+    public void setUp() throws Exception {
+        latencyStats = new LatencyStats("test");
+    }
+
+    public static class Record extends LatencyStatsTest {
+
+        @Test
+        public void happyCase() throws Exception {
+
+            // when
+            latencyStats.record(100);
+            latencyStats.record(300);
+            latencyStats.record(200);
+
+            // then
+            assertThat(latencyStats.getCount(), is(3L));
+            assertThat(latencyStats.getTotalNanos(), is(600L));
+            assertThat(latencyStats.getMaxNanos(), is(300L));
+            assertThat(latencyStats.getMeanNanos(), is(200L));
+        }
+
+        @Test
+        public void whenNone() throws Exception {
+
+            // then
+            assertThat(latencyStats.getCount(), is(0L));
+            assertThat(latencyStats.getMeanNanos(), is(0L));
+        }
+    }
+
+    public static class Reset extends LatencyStatsTest {
+
+        @Test
+        public void happyCase() throws Exception {
+
+            // given
+            latencyStats.record(100);
+
+            // when
+            latencyStats.reset();
+
+            // then
+            assertThat(latencyStats.getCount(), is(0L));
+            assertThat(latencyStats.getMaxNanos(), is(0L));
+        }
+    }
+
+}
@@ -0,0 +1,155 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class LoginThrottleTest {
+
+    static final long WINDOW = 60000L;
+    static final long NOW = 1000L * WINDOW;
+
+    LoginThrottle loginThrottle;
+
+    @Before
+    public void setUp() throws Exception {
+        loginThrottle = new LoginThrottle(1024, 4, WINDOW);
+    }
+
+    public static class IsThrottled extends LoginThrottleTest {
+
+        @Test
+        public void whenBelowMax() throws Exception {
+
+            // when
+            for (int i = 0; i < 3; i++) {
+                loginThrottle.recordFailure("fred", NOW);
+            }
+
+            // then
+            assertThat(loginThrottle.isThrottled("fred", NOW), is(false));
+        }
+
+        @Test
+        public void whenReachesMax() throws Exception {
+
+            // when
+            for (int i = 0; i < 4; i++) {
+                loginThrottle.recordFailure("fred", NOW);
+            }
+
+            // then
+            assertThat(loginThrottle.isThrottled("fred", NOW), is(true));
+            assertThat(loginThrottle.isThrottled("bill", NOW), is(false));
+        }
+
+        @Test
+        public void whenDecayed() throws Exception {
+
+            // given
+            for (int i = 0; i < 4; i++) {
+                loginThrottle.recordFailure("fred", NOW);
+            }
+
+            // when, then
+            assertThat(loginThrottle.isThrottled("fred", NOW + WINDOW), is(false)); // halved to 2
+            assertThat(loginThrottle.recordFailure("fred", NOW + WINDOW), is(3));
+            assertThat(loginThrottle.isThrottled("fred", NOW + 100 * WINDOW), is(false));
+        }
+
+        @Test
+        public void whenSucceeded() throws Exception {
+
+            // given
+            for (int i = 0; i < 4; i++) {
+                loginThrottle.recordFailure("fred", NOW);
+            }
+
+            // when
+            loginThrottle.recordSuccess("fred", NOW);
+
+            // then
+            assertThat(loginThrottle.isThrottled("fred", NOW), is(false));
+        }
+
+        @Test
+        public void whenCollidingKeySucceeded() throws Exception {
+
+            // given "Aa" and "BB" have the same hash code, so share a stripe
+            assertThat("Aa".hashCode(), is("BB".hashCode()));
+            for (int i = 0; i < 4; i++) {
+                loginThrottle.recordFailure("Aa", NOW);
+            }
+
+            // when
+            loginThrottle.recordSuccess("BB", NOW);
+
+            // then
+            assertThat(loginThrottle.isThrottled("Aa", NOW), is(true));
+        }
+
+        @Test
+        public void whenCollidingKeySucceededAfterOwnFailures() throws Exception {
+
+            // given
+            loginThrottle.recordFailure("Aa", NOW);
+            loginThrottle.recordFailure("Aa", NOW);
+            loginThrottle.recordFailure("BB", NOW);
+            loginThrottle.recordFailure("BB", NOW);
+            assertThat(loginThrottle.isThrottled("Aa", NOW), is(true));
+
+            // when
+            loginThrottle.recordSuccess("BB", NOW);
+
+            // then only the failures of "BB" are removed
+            assertThat(loginThrottle.isThrottled("Aa", NOW), is(false));
+            assertThat(loginThrottle.recordFailure("Aa", NOW), is(3));
+            assertThat(loginThrottle.recordFailure("Aa", NOW), is(4));
+        }
+
+        @Test
+        public void whenCollidingKeyFailed() throws Exception {
+
+            // given
+            loginThrottle.recordFailure("Aa", NOW);
+            loginThrottle.recordFailure("Aa", NOW);
+            loginThrottle.recordFailure("Aa", NOW);
+
+            // when
+            final int failures = loginThrottle.recordFailure("BB", NOW);
+
+            // then throttled by the shared stripe, but only its own failure is counted
+            assertThat(loginThrottle.isThrottled("BB", NOW), is(true));
+            assertThat(failures, is(1));
+        }
+
+        @Test
+        public void whenNull() throws Exception {
+
+            // when
+            loginThrottle.recordFailure(null, NOW);
+
+            // then
+            assertThat(loginThrottle.isThrottled(null, NOW), is(false));
+        }
+    }
+
+}
@@ -0,0 +1,168 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import java.util.Arrays;
+import org.apache.shiro.authc.AuthenticationException;
+import org.apache.shiro.authc.AuthenticationInfo;
+import org.apache.shiro.authc.AuthenticationToken;
+import org.apache.shiro.authc.LockedAccountException;
+import org.apache.shiro.authc.UsernamePasswordToken;
+import org.apache.shiro.realm.Realm;
+import org.apache.shiro.realm.SimpleAccountRealm;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ModularRealmAuthenticatorForIsisModuleSecurityRealmTest {
+
+    static class CountingRealm extends SimpleAccountRealm {
+        int count;
+
+        CountingRealm(final String name) {
+            super(name);
+        }
+
+        void lock(final String username) {
+            getUser(username).setLocked(true);
+        }
+
+        @Override
+        protected AuthenticationInfo doGetAuthenticationInfo(final AuthenticationToken token) throws AuthenticationException {
+            count++;
+            return super.doGetAuthenticationInfo(token);
+        }
+    }
+
+    ModularRealmAuthenticatorForIsisModuleSecurityRealm authenticator;
+    ShortCircuitingAuthenticationStrategyForIsisModuleSecurityRealm strategy;
+    CountingRealm realmA;
+    CountingRealm realmB;
+
+    @Before
+    public void setUp() throws Exception {
+        realmA = new CountingRealm("a");
+        realmA.addAccount("bill", "pass");
+        realmA.addAccount("joe", "pass");
+        realmB = new CountingRealm("b");
+        realmB.addAccount("fred", "pass");
+        realmB.addAccount("joe", "pass");
+
+        authenticator = new ModularRealmAuthenticatorForIsisModuleSecurityRealm();
+        authenticator.setRealms(Arrays.<Realm>asList(realmA, realmB));
+        strategy = (ShortCircuitingAuthenticationStrategyForIsisModuleSecurityRealm) authenticator.getAuthenticationStrategy();
+    }
+
+    AuthenticationInfo authenticate(final String username, final String password) {
+        return authenticator.authenticate(new UsernamePasswordToken(username, password));
+    }
+
+    public static class DoMultiRealmAuthentication extends ModularRealmAuthenticatorForIsisModuleSecurityRealmTest {
+
+        @Test
+        public void stopsAtFirstSuccess() throws Exception {
+
+            // when
+            final AuthenticationInfo authenticationInfo = authenticate("bill", "pass");
+
+            // then
+            assertThat(authenticationInfo, is(notNullValue()));
+            assertThat(authenticationInfo.getPrincipals().getPrimaryPrincipal(), is((Object) "bill"));
+            assertThat(realmA.count, is(1));
+            assertThat(realmB.count, is(0));
+        }
+
+        @Test
+        public void fallsThroughOnFailure() throws Exception {
+
+            // when
+            final AuthenticationInfo authenticationInfo = authenticate("fred", "pass");
+
+            // then
+            assertThat(authenticationInfo, is(notNullValue()));
+            assertThat(realmA.count, is(1));
+            assertThat(realmB.count, is(1));
+        }
+
+        @Test
+        public void whenNoRealmAuthenticates() throws Exception {
+
+            // when
+            try {
+                authenticate("fred", "wrong");
+                fail();
+            } catch (final AuthenticationException ex) {
+                // then
+                assertThat(realmA.count, is(1));
+                assertThat(realmB.count, is(1));
+            }
+        }
+
+        @Test
+        public void stopsAtLockedAccount() throws Exception {
+
+            // given
+            realmA.lock("joe");
+
+            // when
+            try {
+                authenticate("joe", "pass");
+                fail();
+            } catch (final LockedAccountException ex) {
+                // then
+                assertThat(realmA.count, is(1));
+                assertThat(realmB.count, is(0));
+            }
+        }
+
+        @Test
+        public void ordersBySuccessRate() throws Exception {
+
+            // given
+            authenticate("fred", "pass");
+            authenticate("fred", "pass");
+            authenticate("bill", "pass");
+
+            // when
+            realmA.count = 0;
+            realmB.count = 0;
+            authenticate("joe", "pass");
+
+            // then
+            assertThat(realmA.count, is(0));
+            assertThat(realmB.count, is(1));
+        }
+
+        @Test
+        public void recordsRealmStats() throws Exception {
+
+            // when
+            authenticate("fred", "pass");
+
+            // then
+            assertThat(strategy.getRealmStats().get("a").getCount(), is(1L));
+            assertThat(strategy.getRealmStats().get("a").getSuccessCount(), is(0L));
+            assertThat(strategy.getRealmStats().get("b").getCount(), is(1L));
+            assertThat(strategy.getRealmStats().get("b").getSuccessCount(), is(1L));
+        }
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+package org.isisaddons.module.security.shiro;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.isisaddons.module.security.dom.password.PasswordEncryptionService;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class PasswordVerificationExecutorTest {
+
+    /**
+     * Blocks each verification until released (ignoring any interrupt).
+     */
+    static class BlockingPasswordEncryptionService implements PasswordEncryptionService {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public String encrypt(final String password) {
+            return password;
+        }
+
+        @Override
+        public boolean matches(final String candidate, final String encrypted) {
+            started.countDown();
+            Uninterruptibles.awaitUninterruptibly(release, 10, TimeUnit.SECONDS);
+            return candidate.equals(encrypted);
+        }
+    }
+
+    BlockingPasswordEncryptionService passwordEncryptionService;
+    LatencyStats hashStats;
+    PasswordVerificationExecutor executor;
+
+    @Before
+    public void setUp() throws Exception {
+        passwordEncryptionService = new BlockingPasswordEncryptionService();
+        hashStats = new LatencyStats("passwordHash");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        passwordEncryptionService.release.countDown();
+        executor.shutdown();
+    }
+
+    public static class Matches extends PasswordVerificationExecutorTest {
+
+        @Test
+        public void happyCase() throws Exception {
+
+            // given
+            executor = new PasswordVerificationExecutor(1, 1, 5000, hashStats);
+            passwordEncryptionService.release.countDown();
+
+            // then
+            assertThat(executor.matches(passwordEncryptionService, "pass", "pass"), is(true));
+            assertThat(executor.matches(passwordEncryptionService, "pass", "other"), is(false));
+            assertThat(hashStats.getCount(), is(2L));
+        }
+
+        @Test
+        public void whenTimedOut() throws Exception {
+
+            // given
+            executor = new PasswordVerificationExecutor(1, 1, 10, hashStats);
+
+            // when
+            final Boolean matches = executor.matches(passwordEncryptionService, "pass", "pass");
+
+            // then
+            assertThat(matches, is(nullValue()));
+            assertThat(executor.getTimedOutCount(), is(1L));
+        }
+
+        @Test
+        public void whenSaturated() throws Exception {
+
+            // given
+            executor = new PasswordVerificationExecutor(1, 0, 10, hashStats);
+            executor.matches(passwordEncryptionService, "pass", "pass"); // times out, but keeps the only thread busy
+            passwordEncryptionService.started.await(5, TimeUnit.SECONDS);
+
+            // when
+            final Boolean matches = executor.matches(passwordEncryptionService, "pass", "pass");
+
+            // then
+            assertThat(matches, is(nullValue()));
+            assertThat(executor.getRejectedCount(), is(1L));
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.isisaddons.module.security.dom.feature.ApplicationFeatureId;
+import org.isisaddons.module.security.dom.permission.ApplicationPermissionMode;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class PermissionResolverForIsisShiroAuthorizorTest {
+
+    PermissionResolverForIsisShiroAuthorizor resolver;
+
+    @Before
+    public void setUp() throws Exception {
+        resolver = new PermissionResolverForIsisShiroAuthorizor();
+    }
+
+    public static class ResolvePermission extends PermissionResolverForIsisShiroAuthorizorTest {
+
+        @Test
+        public void viewing() throws Exception {
+
+            // when
+            final PermissionForMember permission = (PermissionForMember) resolver.resolvePermission("com.foo:Bar:bip:r");
+
+            // then
+            assertThat(permission.getFeatureId(), is(ApplicationFeatureId.newMember("com.foo.Bar", "bip")));
+            assertThat(permission.getMode(), is(ApplicationPermissionMode.VIEWING));
+        }
+
+        @Test
+        public void changing() throws Exception {
+
+            // when
+            final PermissionForMember permission = (PermissionForMember) resolver.resolvePermission("com.foo:Bar:bip:w");
+
+            // then
+            assertThat(permission.getFeatureId(), is(ApplicationFeatureId.newMember("com.foo.Bar", "bip")));
+            assertThat(permission.getMode(), is(ApplicationPermissionMode.CHANGING));
+        }
+
+        @Test
+        public void invalid() throws Exception {
+            for (final String permissionString : new String[] {
+                    "", "com.foo", "com.foo:Bar", "com.foo:Bar:bip", "com.foo:Bar:bip:", "com.foo:Bar:bip:x",
+                    "com.foo:Bar:bip:rw", "com.foo:Bar:bip:r:r" }) {
+                try {
+                    resolver.resolvePermission(permissionString);
+                    fail("expected '" + permissionString + "' to be rejected");
+                } catch(final IllegalArgumentException ex) {
+                    // expected
+                }
+            }
+            assertThat(resolver.size(), is(0L));
+        }
+
+        @Test
+        public void whenCached() throws Exception {
+
+            // given
+            final PermissionForMember first = (PermissionForMember) resolver.resolvePermission("com.foo:Bar:bip:r");
+
+            // when
+            final PermissionForMember second = (PermissionForMember) resolver.resolvePermission("com.foo:Bar:bip:r");
+
+            // then
+            assertThat(second, is(sameInstance(first)));
+            assertThat(resolver.size(), is(1L));
+        }
+
+        @Test
+        public void whenDisabled() throws Exception {
+
+            // given
+            resolver.configure(0);
+            final PermissionForMember first = (PermissionForMember) resolver.resolvePermission("com.foo:Bar:bip:r");
+
+            // when
+            final PermissionForMember second = (PermissionForMember) resolver.resolvePermission("com.foo:Bar:bip:r");
+
+            // then
+            assertThat(second, is(not(sameInstance(first))));
+            assertThat(second.getFeatureId(), is(first.getFeatureId()));
+            assertThat(resolver.size(), is(0L));
+        }
+    }
+
+}
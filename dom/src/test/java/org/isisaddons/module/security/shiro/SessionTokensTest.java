@@ -0,0 +1,194 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.security.KeyStore;
+import javax.crypto.KeyGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class SessionTokensTest {
+
+    static final String PASSWORD = "changeit";
+
+    File keyStoreFile;
+
+    @Before
+    public void setUp() throws Exception {
+        keyStoreFile = newKeyStoreFile("key1", "key2");
+    }
+
+    /**
+     * A (temporary) keystore holding a new key for each of the aliases, protected by {@link #PASSWORD}.
+     */
+    static File newKeyStoreFile(final String... aliases) throws Exception {
+        final File keyStoreFile = File.createTempFile("session-tokens", ".jceks");
+
+        final KeyStore keyStore = KeyStore.getInstance("JCEKS");
+        keyStore.load(null, PASSWORD.toCharArray());
+        final KeyGenerator keyGenerator = KeyGenerator.getInstance("HmacSHA256");
+        for (final String alias : aliases) {
+            keyStore.setEntry(alias, new KeyStore.SecretKeyEntry(keyGenerator.generateKey()), new KeyStore.PasswordProtection(PASSWORD.toCharArray()));
+        }
+        try (OutputStream outputStream = new FileOutputStream(keyStoreFile)) {
+            keyStore.store(outputStream, PASSWORD.toCharArray());
+        }
+        return keyStoreFile;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        keyStoreFile.delete();
+    }
+
+    SessionTokens newSessionTokens(final String activeAlias, final long timeToLiveMillis) {
+        return new SessionTokens(new SessionTokenKeys(keyStoreFile.getPath(), PASSWORD, activeAlias), timeToLiveMillis);
+    }
+
+    public static class Verify extends SessionTokensTest {
+
+        @Test
+        public void happyCase() throws Exception {
+
+            // given
+            final SessionTokens sessionTokens = newSessionTokens("key1", 60000);
+            final String token = sessionTokens.issue("fred", 1234L);
+
+            // when
+            final SessionTokens.SessionToken sessionToken = sessionTokens.verify(token);
+
+            // then
+            assertThat(SessionTokens.isToken(token.toCharArray()), is(true));
+            assertThat(sessionToken, is(notNullValue()));
+            assertThat(sessionToken.getUsername(), is("fred"));
+            assertThat(sessionToken.getPermissionStamp(), is(1234L));
+        }
+
+        @Test
+        public void whenSignedByPreviousKey() throws Exception {
+
+            // given
+            final String token = newSessionTokens("key1", 60000).issue("fred", 1234L);
+
+            // when
+            final SessionTokens.SessionToken sessionToken = newSessionTokens("key2", 60000).verify(token);
+
+            // then
+            assertThat(sessionToken, is(notNullValue()));
+        }
+
+        @Test
+        public void whenTampered() throws Exception {
+
+            // given
+            final SessionTokens sessionTokens = newSessionTokens("key1", 60000);
+            final String token = sessionTokens.issue("fred", 1234L);
+            final String otherToken = sessionTokens.issue("bill", 1234L);
+
+            // when
+            final String tampered = otherToken.substring(0, otherToken.indexOf('.')) + token.substring(token.indexOf('.'));
+
+            // then
+            assertThat(sessionTokens.verify(tampered), is(nullValue()));
+            assertThat(sessionTokens.verify(token + "x"), is(nullValue()));
+            assertThat(sessionTokens.verify("fred"), is(nullValue()));
+        }
+
+        @Test
+        public void whenExpired() throws Exception {
+
+            // given
+            final SessionTokens sessionTokens = newSessionTokens("key1", 0);
+
+            // when
+            final String token = sessionTokens.issue("fred", 1234L);
+
+            // then
+            assertThat(sessionTokens.verify(token), is(nullValue()));
+        }
+    }
+
+    public static class WhenKeyStoreUnavailable extends SessionTokensTest {
+
+        @Test
+        public void verify() throws Exception {
+
+            // given
+            final String token = newSessionTokens("key1", 60000).issue("fred", 1234L);
+            keyStoreFile.delete();
+
+            // when
+            final SessionTokens.SessionToken sessionToken = newSessionTokens("key1", 60000).verify(token);
+
+            // then treated as invalid, rather than failing
+            assertThat(sessionToken, is(nullValue()));
+        }
+
+        @Test(expected = IllegalStateException.class)
+        public void validate() throws Exception {
+
+            // given
+            keyStoreFile.delete();
+
+            // when
+            newSessionTokens("key1", 60000).validate();
+        }
+    }
+
+    public static class Validate extends SessionTokensTest {
+
+        @Test
+        public void happyCase() throws Exception {
+
+            // when, then does not throw
+            newSessionTokens("key2", 60000).validate();
+        }
+
+        @Test(expected = IllegalStateException.class)
+        public void whenNoKeyForActiveAlias() throws Exception {
+
+            // when
+            newSessionTokens("key3", 60000).validate();
+        }
+
+        @Test(expected = IllegalStateException.class)
+        public void whenWrongPassword() throws Exception {
+
+            // when
+            new SessionTokens(new SessionTokenKeys(keyStoreFile.getPath(), "wrong", "key1"), 60000).validate();
+        }
+    }
+
+    public static class IsToken extends SessionTokensTest {
+
+        @Test
+        public void whenPassword() throws Exception {
+            assertThat(SessionTokens.isToken("secret".toCharArray()), is(false));
+            assertThat(SessionTokens.isToken(null), is(false));
+        }
+    }
+
+}
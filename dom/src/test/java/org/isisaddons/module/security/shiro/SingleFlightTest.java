@@ -0,0 +1,121 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SingleFlightTest {
+
+    SingleFlight<String, Integer> singleFlight;
+    AtomicInteger calls;
+
+    @Before
+    public void setUp() throws Exception {
+        singleFlight = new SingleFlight<String, Integer>();
+        calls = new AtomicInteger();
+    }
+
+    public static class Execute extends SingleFlightTest {
+
+        @Test
+        public void whenSequential() throws Exception {
+
+            // given
+            final Callable<Integer> callable = new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    return calls.incrementAndGet();
+                }
+            };
+
+            // when, then
+            assertThat(singleFlight.execute("fred", callable), is(1));
+            assertThat(singleFlight.execute("fred", callable), is(2));
+            assertThat(singleFlight.getSharedCount(), is(0L));
+        }
+
+        @Test
+        public void whenConcurrent() throws Exception {
+
+            // given
+            final CountDownLatch started = new CountDownLatch(1);
+            final CountDownLatch release = new CountDownLatch(1);
+            final Callable<Integer> slowCallable = new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    started.countDown();
+                    Uninterruptibles.awaitUninterruptibly(release, 10, TimeUnit.SECONDS);
+                    return calls.incrementAndGet();
+                }
+            };
+            final ExecutorService executorService = Executors.newFixedThreadPool(2);
+            try {
+                final Future<Integer> first = executorService.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return singleFlight.execute("fred", slowCallable);
+                    }
+                });
+                started.await(10, TimeUnit.SECONDS);
+                final Future<Integer> second = executorService.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return singleFlight.execute("fred", slowCallable);
+                    }
+                });
+                while (singleFlight.getSharedCount() == 0) {
+                    Thread.sleep(1);
+                }
+
+                // when
+                release.countDown();
+
+                // then
+                assertThat(first.get(10, TimeUnit.SECONDS), is(1));
+                assertThat(second.get(10, TimeUnit.SECONDS), is(1));
+                assertThat(calls.get(), is(1));
+            } finally {
+                executorService.shutdownNow();
+            }
+        }
+
+        @Test(expected = IllegalStateException.class)
+        public void whenThrows() throws Exception {
+
+            // when
+            singleFlight.execute("fred", new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    throw new IllegalStateException();
+                }
+            });
+        }
+    }
+
+}
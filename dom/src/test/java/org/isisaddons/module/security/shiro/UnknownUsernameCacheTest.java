@@ -0,0 +1,97 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class UnknownUsernameCacheTest {
+
+    UnknownUsernameCache unknownUsernameCache;
+
+    @Before
+    public void setUp() throws Exception {
+        unknownUsernameCache = new UnknownUsernameCache();
+    }
+
+    public static class IsUnknown extends UnknownUsernameCacheTest {
+
+        @Test
+        public void whenNotConfigured() throws Exception {
+
+            // when
+            unknownUsernameCache.unknown("fred");
+
+            // then
+            assertThat(unknownUsernameCache.isEnabled(), is(false));
+            assertThat(unknownUsernameCache.isUnknown("fred"), is(false));
+        }
+
+        @Test
+        public void whenConfigured() throws Exception {
+
+            // given
+            unknownUsernameCache.configure(10, 60000);
+
+            // when
+            unknownUsernameCache.unknown("fred");
+
+            // then
+            assertThat(unknownUsernameCache.isUnknown("fred"), is(true));
+            assertThat(unknownUsernameCache.isUnknown("bill"), is(false));
+        }
+    }
+
+    public static class Invalidate extends UnknownUsernameCacheTest {
+
+        @Test
+        public void happyCase() throws Exception {
+
+            // given
+            unknownUsernameCache.configure(10, 60000);
+            unknownUsernameCache.unknown("fred");
+
+            // when
+            unknownUsernameCache.invalidate("fred");
+
+            // then
+            assertThat(unknownUsernameCache.isUnknown("fred"), is(false));
+        }
+
+        @Test
+        public void throughAuthenticationCaches() throws Exception {
+
+            // given
+            AuthenticationCaches.UNKNOWN_USERNAMES.configure(10, 60000);
+            try {
+                AuthenticationCaches.UNKNOWN_USERNAMES.unknown("fred");
+
+                // when
+                AuthenticationCaches.invalidate("fred");
+
+                // then
+                assertThat(AuthenticationCaches.UNKNOWN_USERNAMES.isUnknown("fred"), is(false));
+            } finally {
+                AuthenticationCaches.UNKNOWN_USERNAMES.configure(0, 0);
+            }
+        }
+    }
+
+}
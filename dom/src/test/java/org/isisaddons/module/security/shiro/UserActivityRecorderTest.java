@@ -0,0 +1,222 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class UserActivityRecorderTest {
+
+    UserActivityRecorder recorder;
+
+    @Before
+    public void setUp() throws Exception {
+        recorder = new UserActivityRecorder(2, 60000);
+    }
+
+    public static class RecordLogin extends UserActivityRecorderTest {
+
+        @Test
+        public void happyCase() throws Exception {
+
+            // when
+            recorder.recordLogin("fred", 1000);
+            recorder.recordLogin("fred", 2000);
+
+            // then
+            final Map<String, UserActivityRecorder.Activity> drained = recorder.drain();
+            assertThat(drained.size(), is(1));
+            assertThat(drained.get("fred").getLastLoginAt(), is(2000L));
+            assertThat(drained.get("fred").getLastActivityAt(), is(2000L));
+        }
+
+        @Test
+        public void whenFull() throws Exception {
+
+            // given
+            recorder.recordLogin("fred", 1000);
+            recorder.recordLogin("bill", 1000);
+
+            // when
+            recorder.recordLogin("mary", 1000);
+            recorder.recordLogin("fred", 2000);
+
+            // then
+            assertThat(recorder.isFull(), is(true));
+            assertThat(recorder.getDroppedCount(), is(1L));
+            final Map<String, UserActivityRecorder.Activity> drained = recorder.drain();
+            assertThat(drained.get("mary"), is(nullValue()));
+            assertThat(drained.get("fred").getLastLoginAt(), is(2000L));
+        }
+    }
+
+    public static class RecordActivity extends UserActivityRecorderTest {
+
+        @Test
+        public void happyCase() throws Exception {
+
+            // when
+            recorder.recordActivity("fred", 1000);
+
+            // then
+            final Map<String, UserActivityRecorder.Activity> drained = recorder.drain();
+            assertThat(drained.get("fred").getLastLoginAt(), is(0L));
+            assertThat(drained.get("fred").getLastActivityAt(), is(1000L));
+        }
+
+        @Test
+        public void withinResolution() throws Exception {
+
+            // given
+            recorder.recordActivity("fred", 1000);
+
+            // when
+            recorder.recordActivity("fred", 2000);
+
+            // then
+            assertThat(recorder.drain().get("fred").getLastActivityAt(), is(1000L));
+        }
+
+        @Test
+        public void beyondResolution() throws Exception {
+
+            // given
+            recorder.recordActivity("fred", 1000);
+
+            // when
+            recorder.recordActivity("fred", 70000);
+
+            // then
+            assertThat(recorder.drain().get("fred").getLastActivityAt(), is(70000L));
+        }
+    }
+
+    public static class Drain extends UserActivityRecorderTest {
+
+        @Test
+        public void empties() throws Exception {
+
+            // given
+            recorder.recordLogin("fred", 1000);
+
+            // when
+            recorder.drain();
+
+            // then
+            assertThat(recorder.getPendingCount(), is(0));
+            assertThat(recorder.drain().isEmpty(), is(true));
+        }
+    }
+
+    public static class Restore extends UserActivityRecorderTest {
+
+        @Test
+        public void mergesWithLaterActivity() throws Exception {
+
+            // given
+            recorder.recordLogin("fred", 1000);
+            final Map<String, UserActivityRecorder.Activity> drained = recorder.drain();
+            recorder.recordActivity("fred", 5000);
+
+            // when
+            recorder.restore(drained);
+
+            // then
+            final Map<String, UserActivityRecorder.Activity> redrained = recorder.drain();
+            assertThat(redrained.get("fred").getLastLoginAt(), is(1000L));
+            assertThat(redrained.get("fred").getLastActivityAt(), is(5000L));
+        }
+    }
+
+    public static class Concurrently extends UserActivityRecorderTest {
+
+        final Map<String, Long> lastLoginAt = Maps.newHashMap();
+        final Map<String, Long> lastActivityAt = Maps.newHashMap();
+
+        @Test
+        public void whenDrainedWhileRecording() throws Exception {
+
+            // given
+            recorder = new UserActivityRecorder(10000, 60000);
+            final int threads = 4;
+            final int usersPerThread = 500;
+            final CountDownLatch start = new CountDownLatch(1);
+            final List<Thread> recorders = Lists.newArrayList();
+            for (int t = 0; t < threads; t++) {
+                final int thread = t;
+                final Thread recorderThread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (final InterruptedException ex) {
+                            return;
+                        }
+                        for (int i = 1; i <= usersPerThread; i++) {
+                            recorder.recordLogin("user-" + thread + "-" + i, i);
+                            recorder.recordActivity("user-" + thread + "-" + i, 100000 + i);
+                        }
+                    }
+                });
+                recorderThread.start();
+                recorders.add(recorderThread);
+            }
+
+            // when
+            start.countDown();
+            for (final Thread recorderThread : recorders) {
+                while(recorderThread.isAlive()) {
+                    drain();
+                    recorderThread.join(1);
+                }
+            }
+            drain();
+
+            // then none lost
+            assertThat(lastLoginAt.size(), is(threads * usersPerThread));
+            assertThat(lastLoginAt.get("user-3-500"), is(500L));
+            assertThat(lastActivityAt.get("user-3-500"), is(100500L));
+            assertThat(recorder.getPendingCount(), is(0));
+            assertThat(recorder.getDroppedCount(), is(0L));
+        }
+
+        /**
+         * Merges the drained activity, as writing it to the database does.
+         */
+        private void drain() {
+            for (final Map.Entry<String, UserActivityRecorder.Activity> entry : recorder.drain().entrySet()) {
+                merge(lastLoginAt, entry.getKey(), entry.getValue().getLastLoginAt());
+                merge(lastActivityAt, entry.getKey(), entry.getValue().getLastActivityAt());
+            }
+        }
+
+        private static void merge(final Map<String, Long> map, final String username, final long at) {
+            final Long previous = map.get(username);
+            map.put(username, previous != null ? Math.max(previous, at) : at);
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ *  Copyright 2014 Dan Haywood
+ *
+ *  Licensed under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ */
+package org.isisaddons.module.security.shiro;
+package org.isisaddons.module.security.shiro;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class VerifiedCredentialsCacheTest {
+
+    VerifiedCredentialsCache verifiedCredentialsCache;
+
+    @Before
+    public void setUp() throws Exception {
+        verifiedCredentialsCache = new VerifiedCredentialsCache();
+    }
+
+    public static class IsVerified extends VerifiedCredentialsCacheTest {
+
+        @Test
+        public void whenNotConfigured() throws Exception {
+
+            // when
+            verifiedCredentialsCache.verified("fred", "pass".toCharArray(), "encrypted");
+
+            // then
+            assertThat(verifiedCredentialsCache.isEnabled(), is(false));
+            assertThat(verifiedCredentialsCache.isVerified("fred", "pass".toCharArray(), "encrypted"), is(false));
+        }
+
+        @Test
+        public void whenConfigured() throws Exception {
+
+            // given
+            verifiedCredentialsCache.configure(10, 60000);
+
+            // when
+            verifiedCredentialsCache.verified("fred", "pass".toCharArray(), "encrypted");
+
+            // then
+            assertThat(verifiedCredentialsCache.isVerified("fred", "pass".toCharArray(), "encrypted"), is(true));
+        }
+
+        @Test
+        public void whenDifferentPassword() throws Exception {
+
+            // given
+            verifiedCredentialsCache.configure(10, 60000);
+
+            // when
+            verifiedCredentialsCache.verified("fred", "pass".toCharArray(), "encrypted");
+
+            // then
+            assertThat(verifiedCredentialsCache.isVerified("fred", "other".toCharArray(), "encrypted"), is(false));
+            assertThat(verifiedCredentialsCache.isVerified("bill", "pass".toCharArray(), "encrypted"), is(false));
+        }
+
+        @Test
+        public void whenEncryptedPasswordChanged() throws Exception {
+
+            // given
+            verifiedCredentialsCache.configure(10, 60000);
+
+            // when
+            verifiedCredentialsCache.verified("fred", "pass".toCharArray(), "encrypted");
+
+            // then
+            assertThat(verifiedCredentialsCache.isVerified("fred", "pass".toCharArray(), "reencrypted"), is(false));
+        }
+
+        @Test
+        public void whenExpired() throws Exception {
+
+            // given
+            verifiedCredentialsCache.configure(10, 1);
+            verifiedCredentialsCache.verified("fred", "pass".toCharArray(), "encrypted");
+
+            // when
+            Thread.sleep(20);
+
+            // then
+            assertThat(verifiedCredentialsCache.isVerified("fred", "pass".toCharArray(), "encrypted"), is(false));
+        }
+    }
+
+    public static class Invalidate extends VerifiedCredentialsCacheTest {
+
+        @Test
+        public void happyCase() throws Exception {
+
+            // given
+            verifiedCredentialsCache.configure(10, 60000);
+            verifiedCredentialsCache.verified("fred", "pass".toCharArray(), "encrypted");
+
+            // when
+            verifiedCredentialsCache.invalidate("fred");
+
+            // then
+            assertThat(verifiedCredentialsCache.isVerified("fred", "pass".toCharArray(), "encrypted"), is(false));
+        }
+    }
+
+}
@@ -26,6 +26,7 @@ protected void execute(ExecutionContext executionContext) {
         isisJdoSupport.executeUpdate("delete from isissecurity.\"ApplicationPermission\"");
         isisJdoSupport.executeUpdate("delete from isissecurity.\"ApplicationUserRoles\"");
         isisJdoSupport.executeUpdate("delete from isissecurity.\"ApplicationRole\"");
+        isisJdoSupport.executeUpdate("delete from isissecurity.\"ApplicationUserActivity\"");
         isisJdoSupport.executeUpdate("delete from isissecurity.\"ApplicationUser\"");
         isisJdoSupport.executeUpdate("delete from isissecurity.\"ApplicationTenancy\"");
 